@@ -0,0 +1,253 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Counts the samples of every label tuple against latency thresholds, so Apdex
+ * and the share of samples under a threshold are exact ratios of counters
+ * instead of estimates from quantiles.
+ *
+ * The Apdex threshold T, 4T and every SLO threshold are compiled into one
+ * sorted array. A sample is classified with a binary search into the bucket
+ * of the first threshold it doesn't exceed and only that bucket's
+ * {@link LongAdder} is incremented. Failed samples have a bucket of their own,
+ * they are frustrated and never good. The cumulative counts are summed up at
+ * scrape time into:
+ * <ul>
+ * <li><code>jmeter_samples_apdex_total</code> with a zone label of satisfied
+ * (at most T), tolerating (at most 4T) or frustrated.</li>
+ * <li><code>jmeter_samples_good_total</code> with an le label for every SLO
+ * threshold in seconds, the successful samples at most that slow.</li>
+ * </ul>
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ApdexCollector extends Collector implements StreamingCollector, SamplerCollector {
+
+	private static final Logger log = LoggerFactory.getLogger(ApdexCollector.class);
+
+	public static final String APDEX_FAMILY = "jmeter_samples_apdex_total";
+	public static final String GOOD_FAMILY = "jmeter_samples_good_total";
+
+	private final List<String> labelNames;
+	private final List<String> zoneLabelNames;
+	private final List<String> leLabelNames;
+
+	// every threshold in milliseconds, sorted and distinct
+	private final long[] bounds;
+	private final int satisfied, tolerating;
+	private final long[] thresholds;
+	private final int[] thresholdBuckets;
+
+	private final ConcurrentMap<List<String>, Series> series = new ConcurrentHashMap<>();
+
+	/**
+	 * @param labelNames
+	 *            - the label names of the sampler series
+	 * @param apdexThreshold
+	 *            - the Apdex threshold T in milliseconds, or 0 for no Apdex
+	 * @param thresholds
+	 *            - the SLO thresholds in milliseconds
+	 */
+	public ApdexCollector(String[] labelNames, long apdexThreshold, long[] thresholds) {
+		this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+		this.zoneLabelNames = with(this.labelNames, "zone");
+		this.leLabelNames = with(this.labelNames, "le");
+
+		this.thresholds = sorted(thresholds);
+
+		long[] all = Arrays.copyOf(this.thresholds, this.thresholds.length + 2);
+		all[all.length - 2] = apdexThreshold;
+		all[all.length - 1] = apdexThreshold * 4;
+		this.bounds = sorted(all);
+
+		this.satisfied = apdexThreshold > 0 ? bucket(this.bounds, apdexThreshold) : -1;
+		this.tolerating = apdexThreshold > 0 ? bucket(this.bounds, apdexThreshold * 4) : -1;
+		this.thresholdBuckets = new int[this.thresholds.length];
+		for (int i = 0; i < this.thresholds.length; i++) {
+			this.thresholdBuckets[i] = bucket(this.bounds, this.thresholds[i]);
+		}
+	}
+
+	/**
+	 * Parse a list of thresholds in milliseconds, separated by commas or
+	 * whitespace. Values that aren't positive numbers are skipped with an
+	 * error logged.
+	 *
+	 * @param thresholds
+	 *            - the thresholds. May be null.
+	 * @return the thresholds, sorted and distinct
+	 */
+	public static long[] parseThresholds(String thresholds) {
+		List<Long> parsed = new ArrayList<>();
+		if (thresholds != null) {
+			for (String threshold : thresholds.split("[,\\s]+")) {
+				if (threshold.isEmpty()) {
+					continue;
+				}
+
+				try {
+					long value = Long.parseLong(threshold);
+					if (value > 0) {
+						parsed.add(value);
+						continue;
+					}
+				} catch (NumberFormatException e) {
+					// logged below
+				}
+				log.error("Skipping threshold '{}' because it isn't a positive number of milliseconds.", threshold);
+			}
+		}
+
+		long[] values = new long[parsed.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = parsed.get(i);
+		}
+		return sorted(values);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SamplerCollector#observe(java.lang.
+	 * String[], org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		Series s = this.series.get(Arrays.asList(labelValues));
+		if (s == null) {
+			Series created = new Series(labelValues, this.bounds.length + 2);
+			s = this.series.putIfAbsent(created.labelValues, created);
+			s = (s == null) ? created : s;
+		}
+
+		// the last bucket holds the failures, the one before the samples
+		// slower than every threshold
+		int bucket = result.isSuccessful() ? bucket(this.bounds, result.getTime()) : this.bounds.length + 1;
+		s.buckets[bucket].increment();
+	}
+
+	/**
+	 * @return the index of the first bound that isn't less than the value, or
+	 *         the number of bounds if there is none
+	 */
+	static int bucket(long[] bounds, long millis) {
+		int i = Arrays.binarySearch(bounds, millis);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see io.prometheus.client.Collector#collect()
+	 */
+	@Override
+	public List<MetricFamilySamples> collect() {
+		SamplesWriter writer = new SamplesWriter();
+		try {
+			this.write(writer, ExemplarSource.NONE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.getFamilies();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.github.johrstrom.collector.StreamingCollector#write(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource)
+	 */
+	@Override
+	public void write(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		List<Series> all = new ArrayList<>(this.series.values());
+		List<long[]> cumulative = new ArrayList<>(all.size());
+		for (Series s : all) {
+			cumulative.add(s.cumulative());
+		}
+
+		if (this.satisfied >= 0) {
+			writer.startFamily(APDEX_FAMILY, Type.COUNTER, "Counter for samples per Apdex zone");
+			for (int i = 0; i < all.size(); i++) {
+				long[] counts = cumulative.get(i);
+				long total = counts[counts.length - 1];
+				writer.counter(this.zoneLabelNames, with(all.get(i).labelValues, "satisfied"), counts[this.satisfied]);
+				writer.counter(this.zoneLabelNames, with(all.get(i).labelValues, "tolerating"),
+						counts[this.tolerating] - counts[this.satisfied]);
+				writer.counter(this.zoneLabelNames, with(all.get(i).labelValues, "frustrated"),
+						total - counts[this.tolerating]);
+			}
+			writer.endFamily();
+		}
+
+		if (this.thresholds.length > 0) {
+			writer.startFamily(GOOD_FAMILY, Type.COUNTER, "Counter for successful samples under a threshold");
+			for (int i = 0; i < all.size(); i++) {
+				long[] counts = cumulative.get(i);
+				for (int t = 0; t < this.thresholds.length; t++) {
+					writer.counter(this.leLabelNames,
+							with(all.get(i).labelValues, Collector.doubleToGoString(this.thresholds[t] / 1000.0)),
+							counts[this.thresholdBuckets[t]]);
+				}
+			}
+			writer.endFamily();
+		}
+	}
+
+	private static long[] sorted(long[] values) {
+		return Arrays.stream(values).filter(v -> v > 0).sorted().distinct().toArray();
+	}
+
+	private static List<String> with(List<String> list, String element) {
+		List<String> copy = new ArrayList<>(list.size() + 1);
+		copy.addAll(list);
+		copy.add(element);
+		return copy;
+	}
+
+	private static class Series {
+
+		final List<String> labelValues;
+		final LongAdder[] buckets;
+
+		Series(String[] labelValues, int buckets) {
+			this.labelValues = Collections.unmodifiableList(Arrays.asList(labelValues.clone()));
+			this.buckets = new LongAdder[buckets];
+			for (int i = 0; i < buckets; i++) {
+				this.buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * @return the cumulative count of every bucket
+		 */
+		long[] cumulative() {
+			long[] counts = new long[this.buckets.length];
+			long sum = 0;
+			for (int i = 0; i < counts.length; i++) {
+				sum += this.buckets[i].sum();
+				counts[i] = sum;
+			}
+			return counts;
+		}
+
+	}
+
+}
@@ -0,0 +1,284 @@
+package com.github.johrstrom.collector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The sampler series of a finished run, reduced to what a later run is
+ * compared with: per label tuple the sample and error counters and the
+ * {@link LogHistogram} counts of the durations, which merge and yield
+ * quantiles like the live ones. Along with the length of the run this is
+ * enough for quantile, error rate and throughput comparisons without any JTL.
+ *
+ * The file is gzipped binary: a header with the histogram schema, the length
+ * of the run and the label names, then every series with its label values,
+ * counters and only the buckets that aren't empty. Files are written to a
+ * temporary file first and moved over the target, so a run can compare with
+ * and save to the same path.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class Baseline {
+
+	private static final int MAGIC = 0x4a4d424c; // JMBL
+	private static final int VERSION = 1;
+
+	private final List<String> labelNames;
+	private final long runMillis;
+	private final Map<List<String>, Series> series;
+
+	private Baseline(List<String> labelNames, long runMillis, Map<List<String>, Series> series) {
+		this.labelNames = Collections.unmodifiableList(labelNames);
+		this.runMillis = runMillis;
+		this.series = Collections.unmodifiableMap(series);
+	}
+
+	/**
+	 * Take a baseline of the sampler series of a run.
+	 *
+	 * @param labelNames
+	 *            - the label names of the series
+	 * @param views
+	 *            - the series, see {@link SeriesStore#snapshot()}
+	 * @param runMillis
+	 *            - how long the run took, in milliseconds
+	 * @return the baseline
+	 */
+	public static Baseline of(String[] labelNames, Collection<? extends SeriesView> views, long runMillis) {
+		Map<List<String>, Series> series = new HashMap<>();
+		for (SeriesView view : views) {
+			long[] counts = LogHistogram.newCounts();
+			view.addTo(Timing.DURATION, counts);
+			series.put(view.getLabelValues(), new Series(view.getLabelValues(), view.getCount(), view.getErrors(),
+					view.getSumMillis(Timing.DURATION), counts));
+		}
+		return new Baseline(Arrays.asList(labelNames.clone()), Math.max(1, runMillis), series);
+	}
+
+	/**
+	 * Read a baseline file.
+	 *
+	 * @param path
+	 *            - the file
+	 * @return the baseline
+	 * @throws IOException
+	 *             if the file can't be read or isn't a baseline of this
+	 *             version and histogram schema
+	 */
+	public static Baseline load(Path path) throws IOException {
+		try (InputStream file = Files.newInputStream(path);
+				DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(path + " isn't a baseline file");
+			}
+			int version = in.readInt();
+			int schema = in.readInt();
+			if (version != VERSION || schema != LogHistogram.SCHEMA) {
+				throw new IOException(String.format("%s has version %d and schema %d, expected %d and %d", path,
+						version, schema, VERSION, LogHistogram.SCHEMA));
+			}
+
+			long runMillis = in.readLong();
+			List<String> labelNames = readStrings(in);
+
+			int size = in.readInt();
+			Map<List<String>, Series> series = new HashMap<>(size * 2);
+			for (int s = 0; s < size; s++) {
+				List<String> labelValues = Collections.unmodifiableList(readStrings(in));
+				long count = in.readLong();
+				long errors = in.readLong();
+				long sumMillis = in.readLong();
+
+				long[] counts = LogHistogram.newCounts();
+				int buckets = in.readInt();
+				for (int b = 0; b < buckets; b++) {
+					int index = in.readInt();
+					if (index < 0 || index >= counts.length) {
+						throw new IOException(path + " has a bucket out of range: " + index);
+					}
+					counts[index] = in.readLong();
+				}
+
+				series.put(labelValues, new Series(labelValues, count, errors, sumMillis, counts));
+			}
+
+			return new Baseline(labelNames, Math.max(1, runMillis), series);
+		}
+	}
+
+	/**
+	 * Write this baseline to a file, replacing it if it exists.
+	 *
+	 * @param path
+	 *            - the file
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void save(Path path) throws IOException {
+		Path absolute = path.toAbsolutePath();
+		Path tmp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+
+		try {
+			try (OutputStream file = Files.newOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(
+							new BufferedOutputStream(new GZIPOutputStream(file)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(LogHistogram.SCHEMA);
+				out.writeLong(this.runMillis);
+				writeStrings(out, this.labelNames);
+
+				out.writeInt(this.series.size());
+				for (Series s : this.series.values()) {
+					writeStrings(out, s.labelValues);
+					out.writeLong(s.count);
+					out.writeLong(s.errors);
+					out.writeLong(s.sumMillis);
+
+					int buckets = 0;
+					for (long c : s.counts) {
+						buckets += c != 0 ? 1 : 0;
+					}
+					out.writeInt(buckets);
+					for (int i = 0; i < s.counts.length; i++) {
+						if (s.counts[i] != 0) {
+							out.writeInt(i);
+							out.writeLong(s.counts[i]);
+						}
+					}
+				}
+			}
+
+			try {
+				Files.move(tmp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<String> strings = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			strings.add(in.readUTF());
+		}
+		return strings;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+	}
+
+	/**
+	 * @return the label names of the series
+	 */
+	public List<String> getLabelNames() {
+		return this.labelNames;
+	}
+
+	/**
+	 * @return how long the run took, in milliseconds
+	 */
+	public long getRunMillis() {
+		return this.runMillis;
+	}
+
+	/**
+	 * @param labelValues
+	 *            - the label values of a series
+	 * @return the series of the run, or null if it had none with these values
+	 */
+	public Series get(List<String> labelValues) {
+		return this.series.get(labelValues);
+	}
+
+	/**
+	 * @return every series of the run
+	 */
+	public Collection<Series> getSeries() {
+		return this.series.values();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{labels: " + this.labelNames + ", series: " + this.series.size() + ", run: " + this.runMillis + "ms}";
+	}
+
+	/**
+	 * One series of a baseline.
+	 */
+	public static class Series {
+
+		private final List<String> labelValues;
+		private final long count;
+		private final long errors;
+		private final long sumMillis;
+		private final long[] counts;
+
+		Series(List<String> labelValues, long count, long errors, long sumMillis, long[] counts) {
+			this.labelValues = labelValues;
+			this.count = count;
+			this.errors = errors;
+			this.sumMillis = sumMillis;
+			this.counts = counts;
+		}
+
+		public List<String> getLabelValues() {
+			return this.labelValues;
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getErrors() {
+			return this.errors;
+		}
+
+		public long getSumMillis() {
+			return this.sumMillis;
+		}
+
+		/**
+		 * @param q
+		 *            - the quantile, between 0 and 1
+		 * @return the quantile of the durations in seconds, NaN without
+		 *         samples
+		 */
+		public double quantile(double q) {
+			return LogHistogram.quantile(this.counts, q);
+		}
+
+	}
+
+}
@@ -0,0 +1,241 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Compares the sampler series of the running test with a {@link Baseline} of
+ * an earlier run, so a regression shows up while the test runs and a bad run
+ * can be stopped early. For every series that the baseline has too it exposes
+ * gauges of:
+ * <ul>
+ * <li><code>jmeter_samples_baseline_p95_delta_seconds</code>, the 95th
+ * percentile of the durations minus the one of the baseline.</li>
+ * <li><code>jmeter_samples_baseline_error_ratio_delta</code>, the ratio of
+ * errors to samples minus the one of the baseline.</li>
+ * <li><code>jmeter_samples_baseline_throughput_ratio</code>, the samples per
+ * second since the test started divided by the ones of the baseline.</li>
+ * </ul>
+ *
+ * Samples are never touched: a timer merges the histograms of the series
+ * store once per interval and computes the gauges, scrapes only write the
+ * result of the last pass. The baseline is read when the test starts, so a
+ * run can compare with the baseline the previous run saved to the same file.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class BaselineCollector extends Collector implements StreamingCollector {
+
+	private static final Logger log = LoggerFactory.getLogger(BaselineCollector.class);
+
+	public static final String P95_DELTA_FAMILY = "jmeter_samples_baseline_p95_delta_seconds";
+	public static final String ERROR_RATIO_DELTA_FAMILY = "jmeter_samples_baseline_error_ratio_delta";
+	public static final String THROUGHPUT_RATIO_FAMILY = "jmeter_samples_baseline_throughput_ratio";
+
+	private static final double QUANTILE = 0.95;
+
+	private final Path path;
+	private final SeriesStore store;
+	private final List<String> labelNames;
+	private final long intervalMillis;
+
+	// only touched by the comparing thread once started
+	private final long[] counts = LogHistogram.newCounts();
+	private Baseline baseline;
+	private long startMillis;
+
+	// the result of the last comparison
+	private volatile List<Comparison> comparisons = Collections.emptyList();
+
+	private ScheduledExecutorService comparer;
+
+	/**
+	 * @param path
+	 *            - the baseline file to compare with
+	 * @param store
+	 *            - the series of the running test
+	 * @param labelNames
+	 *            - the label names of the series
+	 * @param intervalMillis
+	 *            - how often to compare, in milliseconds
+	 */
+	public BaselineCollector(Path path, SeriesStore store, String[] labelNames, long intervalMillis) {
+		this.path = path;
+		this.store = store;
+		this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+		this.intervalMillis = Math.max(1, intervalMillis);
+	}
+
+	/**
+	 * Read the baseline and start comparing with it. Nothing is compared if
+	 * the baseline can't be read or has other label names.
+	 *
+	 * @param startMillis
+	 *            - when the test started, the throughput is the one since
+	 */
+	public synchronized void start(long startMillis) {
+		if (this.comparer != null) {
+			return;
+		}
+
+		try {
+			this.baseline = Baseline.load(this.path);
+		} catch (NoSuchFileException e) {
+			// e.g. the first of runs that compare with and save to one file
+			log.warn("There's no baseline {} yet, not comparing.", this.path);
+			return;
+		} catch (IOException e) {
+			log.error("Couldn't read the baseline " + this.path + ", not comparing.", e);
+			return;
+		}
+		if (!this.baseline.getLabelNames().equals(this.labelNames)) {
+			log.error("The baseline {} has the labels {}, not {}, not comparing.", this.path,
+					this.baseline.getLabelNames(), this.labelNames);
+			return;
+		}
+		log.info("Comparing with the baseline {}: {}", this.path, this.baseline);
+
+		this.startMillis = startMillis;
+		this.comparer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-baseline");
+			t.setDaemon(true);
+			return t;
+		});
+		this.comparer.scheduleWithFixedDelay(() -> {
+			try {
+				this.compare(System.currentTimeMillis());
+			} catch (Exception e) {
+				log.error("Couldn't compare with the baseline " + this.path, e);
+			}
+		}, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop comparing, the last comparison is kept.
+	 */
+	public synchronized void stop() {
+		if (this.comparer != null) {
+			this.comparer.shutdownNow();
+			this.comparer = null;
+		}
+	}
+
+	/**
+	 * Compare every series with the baseline. Called by the timer, exposed for
+	 * a comparison on demand.
+	 *
+	 * @param nowMillis
+	 *            - the current time, the throughput is the one up to it
+	 */
+	public synchronized void compare(long nowMillis) {
+		if (this.baseline == null) {
+			return;
+		}
+
+		double seconds = Math.max(1, nowMillis - this.startMillis) / 1000.0;
+		double baselineSeconds = this.baseline.getRunMillis() / 1000.0;
+
+		List<? extends SeriesView> views = this.store.snapshot();
+		List<Comparison> compared = new ArrayList<>(views.size());
+		for (SeriesView view : views) {
+			Baseline.Series before = this.baseline.get(view.getLabelValues());
+			long count = view.getCount();
+			if (before == null || before.getCount() == 0 || count == 0) {
+				continue;
+			}
+
+			Arrays.fill(this.counts, 0);
+			view.addTo(Timing.DURATION, this.counts);
+
+			double p95Delta = LogHistogram.quantile(this.counts, QUANTILE) - before.quantile(QUANTILE);
+			double errorDelta = (double) view.getErrors() / count - (double) before.getErrors() / before.getCount();
+			double throughputRatio = (count / seconds) / (before.getCount() / baselineSeconds);
+
+			compared.add(new Comparison(view.getLabelValues(), p95Delta, errorDelta, throughputRatio));
+		}
+
+		this.comparisons = Collections.unmodifiableList(compared);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see io.prometheus.client.Collector#collect()
+	 */
+	@Override
+	public List<MetricFamilySamples> collect() {
+		SamplesWriter writer = new SamplesWriter();
+		try {
+			this.write(writer, ExemplarSource.NONE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.getFamilies();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.github.johrstrom.collector.StreamingCollector#write(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource)
+	 */
+	@Override
+	public void write(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		List<Comparison> compared = this.comparisons;
+
+		writer.startFamily(P95_DELTA_FAMILY, Type.GAUGE,
+				"Gauge for the 95th percentile of the sample duration minus the baseline's, in seconds");
+		for (Comparison c : compared) {
+			writer.gauge(this.labelNames, c.labelValues, c.p95Delta);
+		}
+		writer.endFamily();
+
+		writer.startFamily(ERROR_RATIO_DELTA_FAMILY, Type.GAUGE,
+				"Gauge for the ratio of failed samples minus the baseline's");
+		for (Comparison c : compared) {
+			writer.gauge(this.labelNames, c.labelValues, c.errorDelta);
+		}
+		writer.endFamily();
+
+		writer.startFamily(THROUGHPUT_RATIO_FAMILY, Type.GAUGE,
+				"Gauge for the samples per second divided by the baseline's");
+		for (Comparison c : compared) {
+			writer.gauge(this.labelNames, c.labelValues, c.throughputRatio);
+		}
+		writer.endFamily();
+	}
+
+	private static class Comparison {
+
+		final List<String> labelValues;
+		final double p95Delta;
+		final double errorDelta;
+		final double throughputRatio;
+
+		Comparison(List<String> labelValues, double p95Delta, double errorDelta, double throughputRatio) {
+			this.labelValues = labelValues;
+			this.p95Delta = p95Delta;
+			this.errorDelta = errorDelta;
+			this.throughputRatio = throughputRatio;
+		}
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.github.johrstrom.collector;
+
+/**
+ * The engines the sampler and assertion collectors can be built on.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public enum Engine {
+
+	/**
+	 * Summaries with their quantiles computed from one {@link TimingRecord} per
+	 * label tuple, see {@link SeriesSummaryCollector}. The default of new
+	 * listeners.
+	 */
+	SUMMARY("Summaries"),
+
+	/**
+	 * One native histogram per timing and label tuple, see
+	 * {@link SeriesHistogramCollector}.
+	 */
+	NATIVE_HISTOGRAM("Native histograms"),
+
+	/**
+	 * A simpleclient Summary per timing, with their quantiles computed from a
+	 * sliding window of observations. What older versions exposed, and what
+	 * plans saved by them keep.
+	 */
+	SIMPLECLIENT("simpleclient Summaries");
+
+	private final String displayName;
+
+	private Engine(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Enum#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.displayName;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.github.johrstrom.collector;
+
+/**
+ * The details of one sample kept to explain a latency distribution, e.g. the
+ * slowest requests of an interval.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class Exemplar {
+
+	public static final Exemplar[] NONE = new Exemplar[] {};
+
+	private final long elapsed;
+	private final long timestamp;
+	private final String threadName;
+	private final String traceId;
+
+	/**
+	 * @param elapsed
+	 *            - the duration of the sample in milliseconds
+	 * @param timestamp
+	 *            - when the sample ended, in milliseconds since the epoch
+	 * @param threadName
+	 *            - the name of the JMeter thread that ran the sample
+	 * @param traceId
+	 *            - the value of the configured trace variable, may be null
+	 */
+	public Exemplar(long elapsed, long timestamp, String threadName, String traceId) {
+		this.elapsed = elapsed;
+		this.timestamp = timestamp;
+		this.threadName = threadName == null ? "" : threadName;
+		this.traceId = traceId == null ? "" : traceId;
+	}
+
+	public long getElapsed() {
+		return this.elapsed;
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public String getThreadName() {
+		return this.threadName;
+	}
+
+	public String getTraceId() {
+		return this.traceId;
+	}
+
+	/**
+	 * Pick the exemplar to expose along with a histogram bucket: the slowest
+	 * one that falls into the bucket, since OpenMetrics requires an exemplar
+	 * to lie within the bounds of its bucket.
+	 *
+	 * @param slowestFirst
+	 *            - the exemplars of a series, slowest first
+	 * @param lowerBound
+	 *            - the exclusive lower bound of the bucket in seconds
+	 * @param upperBound
+	 *            - the inclusive upper bound of the bucket in seconds
+	 * @return the exemplar or null if none falls into the bucket
+	 */
+	public static Exemplar forBucket(Exemplar[] slowestFirst, double lowerBound, double upperBound) {
+		for (Exemplar exemplar : slowestFirst) {
+			double seconds = exemplar.getElapsed() / 1000.0;
+			if (seconds <= lowerBound) {
+				break;
+			}
+			if (seconds <= upperBound) {
+				return exemplar;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("{elapsed: %d, timestamp: %d, thread: %s, trace: %s}", this.elapsed, this.timestamp,
+				this.threadName, this.traceId);
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.github.johrstrom.collector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the K slowest samples of a series for the current and the previous
+ * interval.
+ *
+ * The current interval is a min-heap of at most K exemplars that is replaced
+ * as a whole with a compare and set, so it is lock free and readers always see
+ * a consistent heap. The root is the fastest of the slowest samples, so
+ * rejecting a sample that is not among them, which is by far the most common
+ * case, is a single read and comparison. Only samples that make it into the
+ * heap pay for a copy of its (small) array.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ExemplarReservoir {
+
+	private static final Comparator<Exemplar> SLOWEST_FIRST = (a, b) -> Long.compare(b.getElapsed(),
+			a.getElapsed());
+
+	private final int size;
+	private final AtomicReference<Exemplar[]> current = new AtomicReference<>(Exemplar.NONE);
+	private volatile Exemplar[] previous = Exemplar.NONE;
+
+	/**
+	 * @param size
+	 *            - the number of exemplars to keep per interval
+	 */
+	public ExemplarReservoir(int size) {
+		this.size = Math.max(1, size);
+	}
+
+	/**
+	 * Cheap check whether a sample would be kept, so the details of the sample
+	 * only need to be gathered if it is.
+	 *
+	 * @param elapsed
+	 *            - the duration of the sample
+	 * @return true if the sample is among the slowest of the interval so far
+	 */
+	public boolean accepts(long elapsed) {
+		Exemplar[] heap = this.current.get();
+		return heap.length < this.size || elapsed > heap[0].getElapsed();
+	}
+
+	/**
+	 * Offer an exemplar to the current interval. It is dropped if the interval
+	 * already holds K slower samples.
+	 *
+	 * @param exemplar
+	 *            - the exemplar to offer
+	 */
+	public void add(Exemplar exemplar) {
+		while (true) {
+			Exemplar[] heap = this.current.get();
+			Exemplar[] next;
+
+			if (heap.length < this.size) {
+				next = Arrays.copyOf(heap, heap.length + 1);
+				next[heap.length] = exemplar;
+				siftUp(next, heap.length);
+			} else if (exemplar.getElapsed() > heap[0].getElapsed()) {
+				next = heap.clone();
+				next[0] = exemplar;
+				siftDown(next, 0);
+			} else {
+				return;
+			}
+
+			if (this.current.compareAndSet(heap, next)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Start a new interval, the current one becomes the previous one.
+	 */
+	public void rotate() {
+		this.previous = this.current.getAndSet(Exemplar.NONE);
+	}
+
+	/**
+	 * @return the K slowest exemplars of the previous and current interval,
+	 *         slowest first
+	 */
+	public Exemplar[] snapshot() {
+		Exemplar[] prev = this.previous;
+		Exemplar[] curr = this.current.get();
+
+		Exemplar[] all = Arrays.copyOf(prev, prev.length + curr.length);
+		System.arraycopy(curr, 0, all, prev.length, curr.length);
+		Arrays.sort(all, SLOWEST_FIRST);
+
+		return all.length > this.size ? Arrays.copyOf(all, this.size) : all;
+	}
+
+	private static void siftUp(Exemplar[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent].getElapsed() <= heap[i].getElapsed()) {
+				return;
+			}
+			swap(heap, parent, i);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(Exemplar[] heap, int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+
+			if (left < heap.length && heap[left].getElapsed() < heap[smallest].getElapsed()) {
+				smallest = left;
+			}
+			if (right < heap.length && heap[right].getElapsed() < heap[smallest].getElapsed()) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(heap, smallest, i);
+			i = smallest;
+		}
+	}
+
+	private static void swap(Exemplar[] heap, int a, int b) {
+		Exemplar tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+
+}
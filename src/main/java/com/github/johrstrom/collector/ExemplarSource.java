@@ -0,0 +1,25 @@
+package com.github.johrstrom.collector;
+
+import java.util.List;
+
+/**
+ * Looks up the exemplars, if any, to expose along with a series.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface ExemplarSource {
+
+	/** a source without any exemplars */
+	ExemplarSource NONE = (familyName, labelValues) -> Exemplar.NONE;
+
+	/**
+	 * @param familyName
+	 *            - the name of the family the series belongs to
+	 * @param labelValues
+	 *            - the label values of the series
+	 * @return the exemplars of the series, slowest first. Never null.
+	 */
+	Exemplar[] exemplars(String familyName, List<String> labelValues);
+
+}
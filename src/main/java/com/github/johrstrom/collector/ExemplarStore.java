@@ -0,0 +1,150 @@
+package com.github.johrstrom.collector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps an {@link ExemplarReservoir} of the slowest samples for every label
+ * tuple of the sampler collector and starts a new interval for all of them on
+ * a timer.
+ *
+ * The exemplars are exposed on the buckets of the duration family when it's
+ * a histogram, see {@link Exemplar#forBucket(Exemplar[], double, double)}.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ExemplarStore implements ExemplarSource {
+
+	private static final Logger log = LoggerFactory.getLogger(ExemplarStore.class);
+
+	private final int size;
+	private final String traceVariable;
+	private final long intervalMillis;
+	private final ConcurrentMap<List<String>, ExemplarReservoir> reservoirs = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService rotator;
+
+	/**
+	 * @param size
+	 *            - the number of exemplars to keep per label tuple and
+	 *            interval
+	 * @param traceVariable
+	 *            - the JMeter variable to record with every exemplar, may be
+	 *            empty
+	 * @param intervalMillis
+	 *            - the length of an interval
+	 */
+	public ExemplarStore(int size, String traceVariable, long intervalMillis) {
+		this.size = size;
+		this.traceVariable = traceVariable == null ? "" : traceVariable.trim();
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Offer a sample to the reservoir of its label tuple. This has to be called
+	 * from the thread that ran the sample for the trace variable to be read.
+	 *
+	 * @param labelValues
+	 *            - the label values of the sample
+	 * @param result
+	 *            - the result of the sample
+	 */
+	public void offer(String[] labelValues, SampleResult result) {
+		ExemplarReservoir reservoir = this.reservoirs.get(Arrays.asList(labelValues));
+		if (reservoir == null) {
+			ExemplarReservoir created = new ExemplarReservoir(this.size);
+			reservoir = this.reservoirs.putIfAbsent(Arrays.asList(labelValues.clone()), created);
+			reservoir = (reservoir == null) ? created : reservoir;
+		}
+
+		long elapsed = result.getTime();
+		if (reservoir.accepts(elapsed)) {
+			reservoir.add(new Exemplar(elapsed, result.getEndTime(), result.getThreadName(), this.traceId()));
+		}
+	}
+
+	/**
+	 * @param labelValues
+	 *            - the label values of a series
+	 * @return the slowest exemplars of the series, slowest first
+	 */
+	public Exemplar[] exemplars(List<String> labelValues) {
+		ExemplarReservoir reservoir = this.reservoirs.get(labelValues);
+		return reservoir == null ? Exemplar.NONE : reservoir.snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.johrstrom.collector.ExemplarSource#exemplars(java.lang.
+	 * String, java.util.List)
+	 */
+	@Override
+	public Exemplar[] exemplars(String familyName, List<String> labelValues) {
+		return familyName.equals(Timing.DURATION.getFamilyName()) ? this.exemplars(labelValues) : Exemplar.NONE;
+	}
+
+	/**
+	 * Start a new interval in every reservoir.
+	 */
+	public void rotate() {
+		for (ExemplarReservoir reservoir : this.reservoirs.values()) {
+			reservoir.rotate();
+		}
+	}
+
+	/**
+	 * Start rotating the intervals.
+	 */
+	public synchronized void start() {
+		if (this.rotator != null) {
+			return;
+		}
+
+		this.rotator = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-exemplars");
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.rotator.scheduleAtFixedRate(() -> {
+			try {
+				this.rotate();
+			} catch (Exception e) {
+				log.error("Couldn't rotate exemplars.", e);
+			}
+		}, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop rotating the intervals, the exemplars are kept.
+	 */
+	public synchronized void stop() {
+		if (this.rotator != null) {
+			this.rotator.shutdownNow();
+			this.rotator = null;
+		}
+	}
+
+	private String traceId() {
+		if (this.traceVariable.isEmpty()) {
+			return "";
+		}
+
+		JMeterVariables variables = JMeterContextService.getContext().getVariables();
+		return variables == null ? "" : variables.get(this.traceVariable);
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.github.johrstrom.collector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.johrstrom.util.BoundedCache;
+
+/**
+ * The interval every sampler is expected to be issued at by each thread, used
+ * to correct its durations for coordinated omission.
+ *
+ * Intervals are configured per sampler label with rules in the same format as
+ * the normalization rules, one per line:
+ *
+ * <pre>
+ * regex =&gt; interval in milliseconds
+ * </pre>
+ *
+ * Samplers that no rule matches can have their interval learned instead: the
+ * pace a Constant Throughput Timer (or any other timer) imposes shows as the
+ * time between two starts of the sampler on the same thread. Only the
+ * intervals after a sample that finished within the current estimate are
+ * learned from, so the stalls the correction is for don't stretch the
+ * estimate. Until a sampler has been seen {@link #WARM_UP} times, it isn't
+ * corrected.
+ *
+ * Everything kept per sample label is bounded to {@link #DEFAULT_CACHE_SIZE}
+ * labels, like the label normalizer's cache, since raw labels can have a high
+ * cardinality. Labels that keep being sampled stay, a learned interval that
+ * was evicted is learned again.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ExpectedIntervals {
+
+	private static final Logger log = LoggerFactory.getLogger(ExpectedIntervals.class);
+
+	public static final String RULE_SEPARATOR = "=>";
+	public static final int WARM_UP = 8;
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private final Pattern[] patterns;
+	private final long[] intervals;
+	private final boolean learn;
+
+	// the configured interval of every label, 0 if no rule matches
+	private final BoundedCache<String, Long> configured;
+	private final BoundedCache<String, Learned> learned;
+
+	// the last start and duration of every label on the current thread
+	private final ThreadLocal<Map<String, long[]>> lastSamples;
+
+	private ExpectedIntervals(Pattern[] patterns, long[] intervals, boolean learn, int cacheSize) {
+		this.patterns = patterns;
+		this.intervals = intervals;
+		this.learn = learn;
+		this.configured = new BoundedCache<>(cacheSize);
+		this.learned = new BoundedCache<>(cacheSize);
+		this.lastSamples = ThreadLocal.withInitial(() -> new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -1416853325018735237L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+				return this.size() > cacheSize;
+			}
+
+		});
+	}
+
+	/**
+	 * Compile a set of rules. Lines that are empty, start with '#' or can't be
+	 * compiled are skipped, the latter with an error logged.
+	 *
+	 * @param rules
+	 *            - the rules, one per line. May be null.
+	 * @param learn
+	 *            - whether to learn the interval of samplers no rule matches
+	 * @return the compiled intervals
+	 */
+	public static ExpectedIntervals compile(String rules, boolean learn) {
+		List<Pattern> patterns = new ArrayList<>();
+		List<Long> intervals = new ArrayList<>();
+
+		if (rules != null) {
+			for (String line : rules.split("\\r?\\n")) {
+				String rule = line.trim();
+				int separator = rule.lastIndexOf(RULE_SEPARATOR);
+
+				if (rule.isEmpty() || rule.startsWith("#")) {
+					continue;
+				} else if (separator < 0) {
+					log.error("Skipping interval rule '{}' because it has no '{}'.", rule, RULE_SEPARATOR);
+					continue;
+				}
+
+				try {
+					Pattern pattern = Pattern.compile(rule.substring(0, separator).trim());
+					long interval = Long.parseLong(rule.substring(separator + RULE_SEPARATOR.length()).trim());
+					patterns.add(pattern);
+					intervals.add(interval);
+				} catch (PatternSyntaxException | NumberFormatException e) {
+					log.error("Skipping interval rule '{}' because it doesn't compile: {}", rule, e.getMessage());
+				}
+			}
+		}
+
+		long[] values = new long[intervals.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = intervals.get(i);
+		}
+
+		return new ExpectedIntervals(patterns.toArray(new Pattern[patterns.size()]), values, learn,
+				DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Get the interval a sample was expected at. Called once per sample, from
+	 * the thread that sampled it.
+	 *
+	 * @param result
+	 *            - the result of the sample
+	 * @return the interval in milliseconds, or 0 if unknown
+	 */
+	public long expected(SampleResult result) {
+		String label = result.getSampleLabel();
+
+		Long interval = this.configured.get(label);
+		if (interval == null) {
+			interval = this.evaluate(label);
+			this.configured.put(label, interval);
+		}
+
+		if (interval > 0 || !this.learn) {
+			return interval;
+		}
+
+		Learned l = this.learned.get(label);
+		if (l == null) {
+			Learned created = new Learned();
+			l = this.learned.putIfAbsent(label, created);
+			l = (l == null) ? created : l;
+		}
+
+		long[] last = this.lastSamples.get().computeIfAbsent(label, k -> new long[] { -1, 0 });
+		long estimate = l.estimate();
+		if (last[0] >= 0 && (estimate == 0 || last[1] <= estimate)) {
+			l.learn(result.getStartTime() - last[0]);
+		}
+		last[0] = result.getStartTime();
+		last[1] = result.getTime();
+
+		return l.seen.get() < WARM_UP ? 0 : l.estimate();
+	}
+
+	private long evaluate(String label) {
+		for (int i = 0; i < this.patterns.length; i++) {
+			if (this.patterns[i].matcher(label).matches()) {
+				return this.intervals[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * A moving average of the interval of one sampler, over all threads.
+	 */
+	private static class Learned {
+
+		final AtomicLong interval = new AtomicLong();
+		final AtomicLong seen = new AtomicLong();
+
+		long estimate() {
+			return this.interval.get();
+		}
+
+		void learn(long observed) {
+			if (observed <= 0) {
+				return;
+			}
+			this.seen.incrementAndGet();
+			this.interval.updateAndGet(current -> current == 0 ? observed : current + (observed - current) / 8);
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.github.johrstrom.collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Keeps a {@link SamplerSeries} per label tuple on the heap. The default store,
+ * and the only one that supports adaptive sampling.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class HeapSeriesStore implements SeriesStore {
+
+	private final ConcurrentMap<List<String>, SamplerSeries> series = new ConcurrentHashMap<>();
+	private final ExpectedIntervals intervals;
+	private final TimingRecord.Layout layout;
+
+	public HeapSeriesStore() {
+		this(null, Collections.<String> emptySet());
+	}
+
+	/**
+	 * @param intervals
+	 *            - the expected intervals to correct the durations with, or
+	 *            null to not correct them
+	 * @param hiddenFamilies
+	 *            - the families that aren't exposed, their histograms aren't
+	 *            kept, see {@link TimingRecord.Layout#of(Set, boolean)}
+	 */
+	public HeapSeriesStore(ExpectedIntervals intervals, Set<String> hiddenFamilies) {
+		this.intervals = intervals;
+		this.layout = TimingRecord.Layout.of(hiddenFamilies, intervals != null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#observe(java.lang.String[],
+	 * org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		SamplerSeries s = this.series.get(Arrays.asList(labelValues));
+		if (s == null) {
+			// key by the series' own copy of the values, not the caller's array
+			SamplerSeries created = new SamplerSeries(labelValues, this.layout);
+			s = this.series.putIfAbsent(created.getLabelValues(), created);
+			s = (s == null) ? created : s;
+		}
+
+		s.observe(result, this.intervals == null ? 0 : this.intervals.expected(result));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#isCorrected()
+	 */
+	@Override
+	public boolean isCorrected() {
+		return this.intervals != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#snapshot()
+	 */
+	@Override
+	public List<SamplerSeries> snapshot() {
+		return new ArrayList<>(this.series.values());
+	}
+
+	/**
+	 * Tuples are visited from the least to the most busy one and each gets at
+	 * most an equal share of what's left, so quiet tuples record everything.
+	 */
+	@Override
+	public void adjust(double observations) {
+		List<SamplerSeries> all = this.snapshot();
+		for (SamplerSeries s : all) {
+			long count = s.getCount();
+			s.lastArrivals = count - s.lastCount;
+			s.lastCount = count;
+		}
+
+		all.sort(Comparator.comparingLong(s -> s.lastArrivals));
+
+		double remaining = observations;
+		for (int i = 0; i < all.size(); i++) {
+			SamplerSeries s = all.get(i);
+			double allowed = Math.min(s.lastArrivals, remaining / (all.size() - i));
+			remaining -= allowed;
+			s.setShift(shiftFor(s.lastArrivals, allowed));
+		}
+	}
+
+	/**
+	 * @return the smallest shift such that arrivals / 2^shift stays within
+	 *         what's allowed
+	 */
+	static int shiftFor(long arrivals, double allowed) {
+		int shift = 0;
+		while (shift < SamplerSeries.MAX_SHIFT && arrivals / (double) (1L << shift) > allowed) {
+			shift++;
+		}
+		return shift;
+	}
+
+}
@@ -0,0 +1,239 @@
+package com.github.johrstrom.collector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, mergeable histogram with exponentially growing buckets. Bucket
+ * boundaries follow the Prometheus native histogram layout for schema
+ * {@link #SCHEMA}: bucket <code>i</code> holds the values in
+ * <code>(2^((i-1)/8), 2^(i/8)]</code>, which bounds the relative error of a
+ * quantile to about 4%. Values at or below {@link #ZERO_THRESHOLD} are counted
+ * in a separate zero bucket and values above the largest bucket are clamped
+ * into it.
+ *
+ * Observations can carry a weight so that a histogram that only sees a
+ * fraction of the samples still estimates the distribution of all of them.
+ * Updates are lock free, reads are not atomic with respect to concurrent
+ * updates which is fine for a metric that is scraped periodically.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class LogHistogram {
+
+	public static final int SCHEMA = 3;
+	public static final int SUB_BUCKETS = 1 << SCHEMA;
+
+	/** the index of the smallest bucket, 2^-10 (~1ms) is its lower bound */
+	public static final int MIN_INDEX = -10 * SUB_BUCKETS + 1;
+
+	/** the index of the largest bucket, 2^12 (~68 minutes) is its upper bound */
+	public static final int MAX_INDEX = 12 * SUB_BUCKETS;
+
+	public static final int BUCKETS = MAX_INDEX - MIN_INDEX + 1;
+	public static final double ZERO_THRESHOLD = Math.pow(2, (MIN_INDEX - 1) / (double) SUB_BUCKETS);
+
+	/**
+	 * the classic bucket bounds for formats without native histograms: every
+	 * power of two from 2^-7 (~8ms) to 2^5 (32s), which are bucket bounds of
+	 * this histogram too so the classic counts are exact.
+	 */
+	public static final double[] CLASSIC_BOUNDS;
+
+	/** the upper bound of the mantissa of every sub bucket in an octave */
+	private static final double[] MANTISSA_BOUNDS = new double[SUB_BUCKETS];
+
+	static {
+		for (int i = 0; i < SUB_BUCKETS; i++) {
+			MANTISSA_BOUNDS[i] = Math.pow(2, i / (double) SUB_BUCKETS);
+		}
+
+		CLASSIC_BOUNDS = new double[5 + 7 + 2];
+		for (int i = 0; i < CLASSIC_BOUNDS.length - 1; i++) {
+			CLASSIC_BOUNDS[i] = Math.scalb(1.0, i - 7);
+		}
+		CLASSIC_BOUNDS[CLASSIC_BOUNDS.length - 1] = Double.POSITIVE_INFINITY;
+	}
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray zero = new AtomicLongArray(1);
+
+	/**
+	 * Record a value once.
+	 *
+	 * @param value
+	 *            - the value to record
+	 */
+	public void record(double value) {
+		this.record(value, 1);
+	}
+
+	/**
+	 * Record a value that stands for <code>weight</code> observations.
+	 *
+	 * @param value
+	 *            - the value to record
+	 * @param weight
+	 *            - the number of observations the value stands for
+	 */
+	public void record(double value, long weight) {
+		if (value <= ZERO_THRESHOLD) {
+			this.zero.addAndGet(0, weight);
+		} else {
+			this.buckets.addAndGet(index(value) - MIN_INDEX, weight);
+		}
+	}
+
+	/**
+	 * Add the counts of this histogram to <code>counts</code>, the zero bucket
+	 * first followed by every bucket from {@link #MIN_INDEX} to
+	 * {@link #MAX_INDEX}. This is how histograms are merged.
+	 *
+	 * @param counts
+	 *            - an array of at least {@link #BUCKETS} + 1 elements
+	 */
+	public void addTo(long[] counts) {
+		counts[0] += this.zero.get(0);
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i + 1] += this.buckets.get(i);
+		}
+	}
+
+	/**
+	 * Reset every bucket to zero.
+	 */
+	public void reset() {
+		this.zero.set(0, 0);
+		for (int i = 0; i < BUCKETS; i++) {
+			this.buckets.set(i, 0);
+		}
+	}
+
+	/**
+	 * @return a new, zeroed array that {@link #addTo(long[])} can merge into
+	 */
+	public static long[] newCounts() {
+		return new long[BUCKETS + 1];
+	}
+
+	/**
+	 * Get the index of the bucket a positive value falls into, clamped to the
+	 * range of this histogram. Uses the binary exponent of the value and a
+	 * short scan of the mantissa bounds instead of a logarithm.
+	 *
+	 * @param value
+	 *            - a value larger than {@link #ZERO_THRESHOLD}
+	 * @return the bucket index
+	 */
+	public static int index(double value) {
+		int exponent = Math.getExponent(value);
+		double mantissa = value / Math.scalb(1.0, exponent);
+
+		int sub = 0;
+		while (sub < SUB_BUCKETS && mantissa > MANTISSA_BOUNDS[sub]) {
+			sub++;
+		}
+
+		int index = exponent * SUB_BUCKETS + sub;
+		return Math.max(MIN_INDEX, Math.min(MAX_INDEX, index));
+	}
+
+	/**
+	 * Get the position a value is counted at in the layout of
+	 * {@link #addTo(long[])}, for stores that keep merged counts themselves.
+	 *
+	 * @param value
+	 *            - the value to record
+	 * @return 0 for the zero bucket, else the bucket index offset by one
+	 */
+	public static int countsIndex(double value) {
+		return value <= ZERO_THRESHOLD ? 0 : index(value) - MIN_INDEX + 1;
+	}
+
+	/**
+	 * @param index
+	 *            - a bucket index
+	 * @return the inclusive upper bound of the bucket
+	 */
+	public static double upperBound(int index) {
+		return Math.pow(2, index / (double) SUB_BUCKETS);
+	}
+
+	/**
+	 * @param counts
+	 *            - merged counts as filled by {@link #addTo(long[])}
+	 * @return the total number of observations
+	 */
+	public static long count(long[] counts) {
+		long count = 0;
+		for (long c : counts) {
+			count += c;
+		}
+		return count;
+	}
+
+	/**
+	 * Fold merged counts into the cumulative counts of
+	 * {@link #CLASSIC_BOUNDS}.
+	 *
+	 * @param counts
+	 *            - merged counts as filled by {@link #addTo(long[])}
+	 * @return the cumulative count of every classic bucket
+	 */
+	public static double[] classicCounts(long[] counts) {
+		double[] cumulative = new double[CLASSIC_BOUNDS.length];
+		long seen = counts[0];
+		int i = 1;
+
+		for (int b = 0; b < CLASSIC_BOUNDS.length; b++) {
+			// the last bound is +Inf and takes whatever is left
+			int last = b == CLASSIC_BOUNDS.length - 1 ? MAX_INDEX : Math.getExponent(CLASSIC_BOUNDS[b]) * SUB_BUCKETS;
+			for (; i < counts.length && i - 1 + MIN_INDEX <= last; i++) {
+				seen += counts[i];
+			}
+			cumulative[b] = seen;
+		}
+
+		return cumulative;
+	}
+
+	/**
+	 * Estimate a quantile from merged counts by interpolating linearly within
+	 * the bucket the rank falls into.
+	 *
+	 * @param counts
+	 *            - merged counts as filled by {@link #addTo(long[])}
+	 * @param q
+	 *            - the quantile, between 0 and 1
+	 * @return the estimated value or NaN if there were no observations
+	 */
+	public static double quantile(long[] counts, double q) {
+		long total = count(counts);
+		if (total == 0) {
+			return Double.NaN;
+		}
+
+		double rank = q * total;
+		long seen = counts[0];
+		if (rank <= seen) {
+			return 0.0;
+		}
+
+		for (int i = 1; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+
+			if (seen + counts[i] >= rank) {
+				int index = i - 1 + MIN_INDEX;
+				double lower = upperBound(index - 1);
+				double upper = upperBound(index);
+				return lower + (upper - lower) * ((rank - seen) / counts[i]);
+			}
+			seen += counts[i];
+		}
+
+		return upperBound(MAX_INDEX);
+	}
+
+}
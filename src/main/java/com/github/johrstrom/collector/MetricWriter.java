@@ -0,0 +1,88 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.prometheus.client.Collector;
+
+/**
+ * A sink collectors write their metric families into, one series at a time,
+ * so an exposition format can be produced without first building lists of
+ * {@link Collector.MetricFamilySamples}.
+ *
+ * Every family starts with {@link #startFamily(String, Collector.Type, String)}
+ * and ends with {@link #endFamily()}. In between, only series of the family's
+ * type are written. Counter families are named the way their samples are,
+ * i.e. usually with a _total suffix.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface MetricWriter {
+
+	void startFamily(String name, Collector.Type type, String help) throws IOException;
+
+	void counter(List<String> labelNames, List<String> labelValues, double value) throws IOException;
+
+	void gauge(List<String> labelNames, List<String> labelValues, double value) throws IOException;
+
+	void untyped(List<String> labelNames, List<String> labelValues, double value) throws IOException;
+
+	/**
+	 * Summaries carry no exemplars, OpenMetrics only allows them on counters
+	 * and histogram buckets.
+	 *
+	 * @param quantiles
+	 *            - the quantiles, in ascending order
+	 * @param values
+	 *            - the value of every quantile
+	 */
+	void summary(List<String> labelNames, List<String> labelValues, double[] quantiles, double[] values, double count,
+			double sum) throws IOException;
+
+	/**
+	 * @param upperBounds
+	 *            - the upper bounds of the buckets in ascending order, the
+	 *            last one being +Inf
+	 * @param cumulativeCounts
+	 *            - the cumulative count of every bucket
+	 * @param exemplars
+	 *            - exemplars of the series, slowest first. May be empty.
+	 */
+	void histogram(List<String> labelNames, List<String> labelValues, double[] upperBounds, double[] cumulativeCounts,
+			double sum, Exemplar[] exemplars) throws IOException;
+
+	/**
+	 * Write a native histogram of schema {@link LogHistogram#SCHEMA}. Formats
+	 * that can't carry native histograms write the classic buckets of
+	 * {@link LogHistogram#CLASSIC_BOUNDS} instead, which is what this default
+	 * does.
+	 *
+	 * @param counts
+	 *            - merged counts as filled by {@link LogHistogram#addTo(long[])}
+	 * @param sum
+	 *            - the sum of all observations
+	 * @param exemplars
+	 *            - exemplars of the series, slowest first. May be empty.
+	 */
+	default void nativeHistogram(List<String> labelNames, List<String> labelValues, long[] counts, double sum,
+			Exemplar[] exemplars) throws IOException {
+		this.histogram(labelNames, labelValues, LogHistogram.CLASSIC_BOUNDS, LogHistogram.classicCounts(counts), sum,
+				exemplars);
+	}
+
+	void endFamily() throws IOException;
+
+	/**
+	 * Flush what was written so far, without anything the format needs after
+	 * the last family. Used when families are encoded in separate buffers and
+	 * stitched together.
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Write whatever the format needs after the last family and flush.
+	 */
+	void finish() throws IOException;
+
+}
@@ -0,0 +1,424 @@
+package com.github.johrstrom.collector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Keeps the series outside of the Java heap, so the heap and GC pauses of the
+ * load generator don't grow with the number of label tuples.
+ *
+ * Every series is a fixed layout slot in an arena of direct buffers: the ids
+ * of its label values followed by the fields of a {@link TimingRecord}, about
+ * 1.4KB per kept histogram, so up to 8.5KB per series. The arena grows
+ * {@link #SLOTS_PER_CHUNK} slots at a time, so size -XX:MaxDirectMemorySize to
+ * the expected number of series, see {@link #bytesPerSeries()}. Slots are found
+ * through an open addressing table of slot numbers, also off heap, hashed on
+ * the label ids. Only the distinct label values themselves are on the heap.
+ *
+ * Lookups of existing series are optimistic reads of the table and take no
+ * lock, new series are added under a write lock. Updates to a slot are
+ * guarded by one of {@link #STRIPES} locks so writers to different series
+ * rarely contend. Samples are never sampled, every one is recorded.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class OffHeapSeriesStore implements SeriesStore {
+
+	public static final int SLOTS_PER_CHUNK = 256;
+	public static final int STRIPES = 64;
+
+	private static final int INITIAL_TABLE_SIZE = 1024;
+
+	private final int labelCount;
+	private final ExpectedIntervals intervals;
+	private final TimingRecord.Layout layout;
+	private final int keyBytes;
+	private final int slotBytes;
+	private final Dictionary[] dictionaries;
+	private final Object[] stripes = new Object[STRIPES];
+
+	private final StampedLock lock = new StampedLock();
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+	private volatile Table table = new Table(INITIAL_TABLE_SIZE);
+	private volatile int size = 0;
+
+	/**
+	 * @param labelCount
+	 *            - the number of label values of every series
+	 * @param intervals
+	 *            - the expected intervals to correct the durations with, or
+	 *            null to not correct them
+	 * @param hiddenFamilies
+	 *            - the families that aren't exposed, their histograms aren't
+	 *            kept, see {@link TimingRecord.Layout#of(Set, boolean)}
+	 */
+	public OffHeapSeriesStore(int labelCount, ExpectedIntervals intervals, Set<String> hiddenFamilies) {
+		this.labelCount = labelCount;
+		this.intervals = intervals;
+		this.layout = TimingRecord.Layout.of(hiddenFamilies, intervals != null);
+		// keep the longs 8 byte aligned
+		this.keyBytes = ((labelCount * 4) + 7) & ~7;
+		this.slotBytes = this.keyBytes + this.layout.longs() * 8;
+
+		this.dictionaries = new Dictionary[labelCount];
+		for (int i = 0; i < labelCount; i++) {
+			this.dictionaries[i] = new Dictionary();
+		}
+		for (int i = 0; i < STRIPES; i++) {
+			this.stripes[i] = new Object();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#observe(java.lang.String[],
+	 * org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		int[] ids = new int[this.labelCount];
+		for (int i = 0; i < this.labelCount; i++) {
+			ids[i] = this.dictionaries[i].id(labelValues[i]);
+		}
+
+		long interval = this.intervals == null ? 0 : this.intervals.expected(result);
+		int slot = this.slotFor(ids);
+		ByteBuffer chunk = this.chunks[slot / SLOTS_PER_CHUNK];
+		int base = this.offset(slot);
+
+		synchronized (this.stripes[slot & (STRIPES - 1)]) {
+			TimingRecord.record((field, value) -> add(chunk, base, field, value), this.layout, result, 1, interval);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#isCorrected()
+	 */
+	@Override
+	public boolean isCorrected() {
+		return this.intervals != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesStore#snapshot()
+	 */
+	@Override
+	public List<Series> snapshot() {
+		int n = this.size;
+		List<Series> all = new ArrayList<>(n);
+		for (int slot = 0; slot < n; slot++) {
+			all.add(new Series(slot));
+		}
+		return all;
+	}
+
+	/**
+	 * @return the direct memory every series takes
+	 */
+	public int bytesPerSeries() {
+		return this.slotBytes;
+	}
+
+	/**
+	 * @return the number of series in the store
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Find the slot of a label tuple, adding it if it's new.
+	 */
+	private int slotFor(int[] ids) {
+		int hash = hash(ids);
+
+		long stamp = this.lock.tryOptimisticRead();
+		int slot;
+		try {
+			slot = this.find(ids, hash);
+		} catch (IndexOutOfBoundsException e) {
+			// raced with an insert, the stamp won't validate
+			slot = -1;
+		}
+		if (!this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				slot = this.find(ids, hash);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		if (slot >= 0) {
+			return slot;
+		}
+
+		stamp = this.lock.writeLock();
+		try {
+			slot = this.find(ids, hash);
+			return slot >= 0 ? slot : this.insert(ids, hash);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	private int find(int[] ids, int hash) {
+		Table t = this.table;
+		for (int pos = hash & t.mask;; pos = (pos + 1) & t.mask) {
+			int entry = t.entries.get(pos);
+			if (entry == 0) {
+				return -1;
+			} else if (this.keyEquals(entry - 1, ids)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	/**
+	 * Add a new slot, only called with the write lock held.
+	 */
+	private int insert(int[] ids, int hash) {
+		int slot = this.size;
+
+		if (slot / SLOTS_PER_CHUNK == this.chunks.length) {
+			ByteBuffer[] grown = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+			grown[grown.length - 1] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * this.slotBytes)
+					.order(ByteOrder.nativeOrder());
+			this.chunks = grown;
+		}
+
+		ByteBuffer chunk = this.chunks[slot / SLOTS_PER_CHUNK];
+		int keyOffset = (slot % SLOTS_PER_CHUNK) * this.slotBytes;
+		for (int i = 0; i < ids.length; i++) {
+			chunk.putInt(keyOffset + i * 4, ids[i]);
+		}
+
+		// keep the table at most half full so probes stay short
+		Table t = this.table;
+		if ((slot + 1) * 2 > t.entries.capacity()) {
+			t = new Table(t.entries.capacity() * 2);
+			for (int s = 0; s < slot; s++) {
+				t.put(hash(this.key(s)), s);
+			}
+			t.put(hash, slot);
+			this.table = t;
+		} else {
+			t.put(hash, slot);
+		}
+
+		this.size = slot + 1;
+		return slot;
+	}
+
+	private boolean keyEquals(int slot, int[] ids) {
+		ByteBuffer chunk = this.chunks[slot / SLOTS_PER_CHUNK];
+		int keyOffset = (slot % SLOTS_PER_CHUNK) * this.slotBytes;
+		for (int i = 0; i < ids.length; i++) {
+			if (chunk.getInt(keyOffset + i * 4) != ids[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int[] key(int slot) {
+		ByteBuffer chunk = this.chunks[slot / SLOTS_PER_CHUNK];
+		int keyOffset = (slot % SLOTS_PER_CHUNK) * this.slotBytes;
+		int[] ids = new int[this.labelCount];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = chunk.getInt(keyOffset + i * 4);
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the byte offset of the counters of a slot in its chunk
+	 */
+	private int offset(int slot) {
+		return (slot % SLOTS_PER_CHUNK) * this.slotBytes + this.keyBytes;
+	}
+
+	private long read(int slot, int field) {
+		ByteBuffer chunk = this.chunks[slot / SLOTS_PER_CHUNK];
+		synchronized (this.stripes[slot & (STRIPES - 1)]) {
+			return chunk.getLong(this.offset(slot) + field * 8);
+		}
+	}
+
+	private static void add(ByteBuffer chunk, int base, int field, long value) {
+		int at = base + field * 8;
+		chunk.putLong(at, chunk.getLong(at) + value);
+	}
+
+	private static int hash(int[] ids) {
+		int h = 1;
+		for (int id : ids) {
+			h = h * 31 + id;
+		}
+		// spread the bits, the low ones pick the bucket
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	/**
+	 * A view of one slot, read at the time of every call.
+	 */
+	public class Series implements SeriesView {
+
+		private final int slot;
+
+		private Series(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public List<String> getLabelValues() {
+			int[] ids = key(this.slot);
+			String[] values = new String[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				values[i] = dictionaries[i].value(ids[i]);
+			}
+			return Collections.unmodifiableList(Arrays.asList(values));
+		}
+
+		@Override
+		public long getCount() {
+			return read(this.slot, TimingRecord.COUNT);
+		}
+
+		@Override
+		public long getErrors() {
+			return read(this.slot, TimingRecord.ERRORS);
+		}
+
+		@Override
+		public long getBytes() {
+			return read(this.slot, TimingRecord.BYTES);
+		}
+
+		@Override
+		public long getSumMillis(Timing timing) {
+			return read(this.slot, TimingRecord.sum(timing));
+		}
+
+		@Override
+		public void addTo(Timing timing, long[] counts) {
+			this.addTo(layout.histogram(timing), counts);
+		}
+
+		@Override
+		public long getCorrectedCount() {
+			return isCorrected() ? read(this.slot, TimingRecord.CORRECTED_COUNT) : 0;
+		}
+
+		@Override
+		public long getCorrectedSumMillis() {
+			return isCorrected() ? read(this.slot, TimingRecord.CORRECTED_SUM) : 0;
+		}
+
+		@Override
+		public void addCorrectedTo(long[] counts) {
+			this.addTo(layout.corrected(), counts);
+		}
+
+		private void addTo(int position, long[] counts) {
+			if (position < 0) {
+				return;
+			}
+			ByteBuffer chunk = chunks[this.slot / SLOTS_PER_CHUNK];
+			int at = offset(this.slot) + position * 8;
+			synchronized (stripes[this.slot & (STRIPES - 1)]) {
+				for (int i = 0; i < TimingRecord.HISTOGRAM_LONGS; i++) {
+					counts[i] += chunk.getLong(at + i * 8);
+				}
+			}
+		}
+
+		@Override
+		public double getSamplingRatio() {
+			return 1.0;
+		}
+
+	}
+
+	/**
+	 * The open addressing table, slot numbers offset by one so zero marks an
+	 * empty entry.
+	 */
+	private static class Table {
+
+		final IntBuffer entries;
+		final int mask;
+
+		Table(int capacity) {
+			this.entries = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			this.mask = capacity - 1;
+		}
+
+		void put(int hash, int slot) {
+			int pos = hash & this.mask;
+			while (this.entries.get(pos) != 0) {
+				pos = (pos + 1) & this.mask;
+			}
+			this.entries.put(pos, slot + 1);
+		}
+
+	}
+
+	/**
+	 * Interns the values of one label into dense ids.
+	 */
+	private static class Dictionary {
+
+		private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+		private volatile String[] values = new String[16];
+
+		int id(String value) {
+			Integer id = this.ids.get(value);
+			if (id != null) {
+				return id;
+			}
+
+			synchronized (this) {
+				id = this.ids.get(value);
+				if (id == null) {
+					id = this.ids.size();
+					String[] v = this.values;
+					if (id == v.length) {
+						v = Arrays.copyOf(v, v.length * 2);
+					}
+					v[id] = value;
+					// publish the value before its id
+					this.values = v;
+					this.ids.put(value, id);
+				}
+				return id;
+			}
+		}
+
+		String value(int id) {
+			return this.values[id];
+		}
+
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.github.johrstrom.collector;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * What the listener feeds every sample into, whatever the engine behind it.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface SamplerCollector {
+
+	/**
+	 * Account for one sample.
+	 *
+	 * @param labelValues
+	 *            - the label values of the sample
+	 * @param result
+	 *            - the result of the sample
+	 */
+	void observe(String[] labelValues, SampleResult result);
+
+	/**
+	 * Start any background work, called when the test starts.
+	 */
+	default void start() {
+	}
+
+	/**
+	 * Stop any background work, called when the test ends.
+	 */
+	default void stop() {
+	}
+
+}
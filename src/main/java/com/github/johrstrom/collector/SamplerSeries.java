@@ -0,0 +1,121 @@
+package com.github.johrstrom.collector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Everything kept for one label tuple of the sampler collector, in a single
+ * {@link TimingRecord}. Counts, errors,
+ * bytes and timing sums are exact while the timing histograms may only see a
+ * fraction of the samples, as decided by the sampling shift. Every recorded
+ * observation is weighted by the inverse of that fraction so the histograms
+ * still estimate the distribution of all samples.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SamplerSeries implements SeriesView {
+
+	/** never sample less than 1 in 2^MAX_SHIFT observations */
+	public static final int MAX_SHIFT = 20;
+
+	private final List<String> labelValues;
+
+	private final TimingRecord record;
+
+	// only 1 in 2^shift observations is recorded in the histograms
+	private volatile int shift = 0;
+
+	// bookkeeping of the sampling controller, only accessed by its thread
+	long lastCount = 0;
+	long lastArrivals = 0;
+
+	/**
+	 * @param labelValues
+	 *            - the label values of the series
+	 * @param layout
+	 *            - which histograms to keep
+	 */
+	public SamplerSeries(String[] labelValues, TimingRecord.Layout layout) {
+		this.labelValues = Collections.unmodifiableList(Arrays.asList(labelValues.clone()));
+		this.record = new TimingRecord(layout);
+	}
+
+	/**
+	 * Account for one sample.
+	 *
+	 * @param result
+	 *            - the result of the sample
+	 * @param expectedInterval
+	 *            - the interval in milliseconds the sample was expected at,
+	 *            or 0 if unknown
+	 */
+	public void observe(SampleResult result, long expectedInterval) {
+		int s = this.shift;
+		boolean sampled = s == 0 || (ThreadLocalRandom.current().nextInt() & ((1 << s) - 1)) == 0;
+		this.record.record(result, sampled ? 1L << s : 0, expectedInterval);
+	}
+
+	@Override
+	public List<String> getLabelValues() {
+		return this.labelValues;
+	}
+
+	@Override
+	public long getCount() {
+		return this.record.get(TimingRecord.COUNT);
+	}
+
+	@Override
+	public long getErrors() {
+		return this.record.get(TimingRecord.ERRORS);
+	}
+
+	@Override
+	public long getBytes() {
+		return this.record.get(TimingRecord.BYTES);
+	}
+
+	@Override
+	public long getSumMillis(Timing timing) {
+		return this.record.get(TimingRecord.sum(timing));
+	}
+
+	@Override
+	public void addTo(Timing timing, long[] counts) {
+		this.record.addTo(timing, counts);
+	}
+
+	@Override
+	public long getCorrectedCount() {
+		return this.record.isCorrected() ? this.record.get(TimingRecord.CORRECTED_COUNT) : 0;
+	}
+
+	@Override
+	public long getCorrectedSumMillis() {
+		return this.record.isCorrected() ? this.record.get(TimingRecord.CORRECTED_SUM) : 0;
+	}
+
+	@Override
+	public void addCorrectedTo(long[] counts) {
+		this.record.addTo(this.record.getLayout().corrected(), counts);
+	}
+
+	@Override
+	public double getSamplingRatio() {
+		return 1.0 / (1L << this.shift);
+	}
+
+	public int getShift() {
+		return this.shift;
+	}
+
+	public void setShift(int shift) {
+		this.shift = Math.max(0, Math.min(MAX_SHIFT, shift));
+	}
+
+}
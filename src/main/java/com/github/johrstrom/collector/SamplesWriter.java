@@ -0,0 +1,101 @@
+package com.github.johrstrom.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+/**
+ * A {@link MetricWriter} that builds the {@link MetricFamilySamples} a plain
+ * {@link Collector#collect()} returns, so streaming collectors can still be
+ * collected the usual way.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SamplesWriter implements MetricWriter {
+
+	private final List<MetricFamilySamples> families = new ArrayList<>();
+
+	private String name;
+	private Collector.Type type;
+	private String help;
+	private List<Sample> samples;
+
+	public List<MetricFamilySamples> getFamilies() {
+		return this.families;
+	}
+
+	@Override
+	public void startFamily(String name, Collector.Type type, String help) {
+		this.name = name;
+		this.type = type;
+		this.help = help;
+		this.samples = new ArrayList<>();
+	}
+
+	@Override
+	public void counter(List<String> labelNames, List<String> labelValues, double value) {
+		this.samples.add(new Sample(this.name, labelNames, labelValues, value));
+	}
+
+	@Override
+	public void gauge(List<String> labelNames, List<String> labelValues, double value) {
+		this.samples.add(new Sample(this.name, labelNames, labelValues, value));
+	}
+
+	@Override
+	public void untyped(List<String> labelNames, List<String> labelValues, double value) {
+		this.samples.add(new Sample(this.name, labelNames, labelValues, value));
+	}
+
+	@Override
+	public void summary(List<String> labelNames, List<String> labelValues, double[] quantiles, double[] values,
+			double count, double sum) {
+		List<String> quantileNames = with(labelNames, "quantile");
+		for (int i = 0; i < quantiles.length; i++) {
+			this.samples.add(new Sample(this.name, quantileNames,
+					with(labelValues, Collector.doubleToGoString(quantiles[i])), values[i]));
+		}
+		this.samples.add(new Sample(this.name + "_count", labelNames, labelValues, count));
+		this.samples.add(new Sample(this.name + "_sum", labelNames, labelValues, sum));
+	}
+
+	@Override
+	public void histogram(List<String> labelNames, List<String> labelValues, double[] upperBounds,
+			double[] cumulativeCounts, double sum, Exemplar[] exemplars) {
+		List<String> leNames = with(labelNames, "le");
+		for (int i = 0; i < upperBounds.length; i++) {
+			this.samples.add(new Sample(this.name + "_bucket", leNames,
+					with(labelValues, Collector.doubleToGoString(upperBounds[i])), cumulativeCounts[i]));
+		}
+		double count = cumulativeCounts.length == 0 ? 0 : cumulativeCounts[cumulativeCounts.length - 1];
+		this.samples.add(new Sample(this.name + "_count", labelNames, labelValues, count));
+		this.samples.add(new Sample(this.name + "_sum", labelNames, labelValues, sum));
+	}
+
+	@Override
+	public void endFamily() {
+		this.families.add(new MetricFamilySamples(this.name, this.type, this.help, this.samples));
+	}
+
+	@Override
+	public void flush() {
+		// nothing to flush
+	}
+
+	@Override
+	public void finish() {
+		// nothing to flush
+	}
+
+	private static List<String> with(List<String> list, String element) {
+		List<String> copy = new ArrayList<>(list.size() + 1);
+		copy.addAll(list);
+		copy.add(element);
+		return copy;
+	}
+
+}
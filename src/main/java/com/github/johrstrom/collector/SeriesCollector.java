@@ -0,0 +1,266 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Collector;
+
+/**
+ * A sampler collector that keeps the counters and histograms of every label
+ * tuple in a {@link SeriesStore} and writes its families straight into a
+ * {@link MetricWriter}. Subclasses decide how the timing distributions are
+ * exposed.
+ *
+ * With a positive budget, it also bounds the cost of the timing distributions
+ * at very high sample rates. Counts, errors, bytes and timing sums are always
+ * exact, but only a fraction of the samples of every label tuple is recorded
+ * in the timing histograms. Once a second a controller divides the budget of
+ * histogram observations per second fairly among all label tuples: tuples that
+ * see less traffic than their share record every sample and their leftover
+ * share goes to the busier ones. The fraction of every tuple is a power of two
+ * and recorded samples are weighted accordingly so the distributions stay
+ * unbiased. The current fraction is exposed as
+ * <code>jmeter_samples_sampling_ratio</code>. Only the {@link HeapSeriesStore}
+ * supports sampling.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public abstract class SeriesCollector extends Collector implements StreamingCollector, SamplerCollector {
+
+	private static final Logger log = LoggerFactory.getLogger(SeriesCollector.class);
+
+	public static final String LATENCY_FAMILY = "jmeter_samples_latency";
+	public static final String CORRECTED_FAMILY = "jmeter_samples_duration_corrected_seconds";
+	public static final String CORRECTED_HELP = "Summary for sample duration corrected for coordinated omission in seconds";
+	public static final String BYTES_FAMILY = "jmeter_samples_bytes_total";
+	public static final String ERRORS_FAMILY = "jmeter_samples_errors_total";
+	public static final String RATIO_FAMILY = "jmeter_samples_sampling_ratio";
+
+	/** the families that can be hidden, see {@link #setHiddenFamilies(Set)} */
+	public static final List<String> FAMILIES;
+
+	static {
+		List<String> families = new ArrayList<>();
+		families.add(LATENCY_FAMILY);
+		for (Timing timing : Timing.ALL) {
+			families.add(timing.getFamilyName());
+		}
+		families.add(CORRECTED_FAMILY);
+		families.add(BYTES_FAMILY);
+		families.add(ERRORS_FAMILY);
+		FAMILIES = Collections.unmodifiableList(families);
+	}
+
+	public static final long PERIOD_MILLIS = 1000;
+
+	protected final List<String> labelNames;
+	private final long budget;
+	private final SeriesStore store;
+	private volatile Set<String> hiddenFamilies = Collections.emptySet();
+
+	private ScheduledExecutorService controller;
+
+	/**
+	 * @param labelNames
+	 *            - the label names, in the order of the label values passed to
+	 *            {@link #observe(String[], SampleResult)}
+	 * @param budget
+	 *            - the number of histogram observations per second to aim for,
+	 *            or 0 to record every sample
+	 * @param store
+	 *            - where to keep the series
+	 */
+	protected SeriesCollector(String[] labelNames, long budget, SeriesStore store) {
+		this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+		this.budget = budget;
+		this.store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SamplerCollector#observe(java.lang.
+	 * String[], org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		this.store.observe(labelValues, result);
+	}
+
+	/**
+	 * Choose which families are left out when writing. Stores only keep the
+	 * histograms of exposed families, so this has to match the hidden
+	 * families the store was created with.
+	 *
+	 * @param hiddenFamilies
+	 *            - the names of the families to leave out
+	 */
+	public void setHiddenFamilies(Set<String> hiddenFamilies) {
+		this.hiddenFamilies = Collections.unmodifiableSet(hiddenFamilies);
+	}
+
+	/**
+	 * @return true if the family should be written
+	 */
+	protected boolean isExposed(String family) {
+		return !this.hiddenFamilies.contains(family);
+	}
+
+	/**
+	 * @return where the series are kept
+	 */
+	public SeriesStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * @return true if the durations corrected for coordinated omission are
+	 *         written as well
+	 */
+	protected boolean isCorrected() {
+		return this.store.isCorrected();
+	}
+
+	/**
+	 * Start the controller that adjusts the sampling ratios, if there's a
+	 * budget. Until it runs, every sample is recorded.
+	 */
+	@Override
+	public synchronized void start() {
+		if (this.controller != null || this.budget <= 0) {
+			return;
+		}
+
+		this.controller = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-adaptive-sampling");
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.controller.scheduleAtFixedRate(() -> {
+			try {
+				this.store.adjust(this.budget * (PERIOD_MILLIS / 1000.0));
+			} catch (Exception e) {
+				log.error("Couldn't adjust sampling ratios.", e);
+			}
+		}, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the controller, the current sampling ratios are kept.
+	 */
+	@Override
+	public synchronized void stop() {
+		if (this.controller != null) {
+			this.controller.shutdownNow();
+			this.controller = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see io.prometheus.client.Collector#collect()
+	 */
+	@Override
+	public List<MetricFamilySamples> collect() {
+		SamplesWriter writer = new SamplesWriter();
+		try {
+			this.write(writer, ExemplarSource.NONE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.getFamilies();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.github.johrstrom.collector.StreamingCollector#write(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource)
+	 */
+	@Override
+	public void write(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		List<? extends SeriesView> all = this.store.snapshot();
+
+		for (String family : this.timingFamilies()) {
+			this.writeTiming(writer, exemplars, family, all);
+		}
+		this.writeCounters(writer, all);
+	}
+
+	/**
+	 * Every timing family is a part of its own and the counters are one more.
+	 * Every part takes its own snapshot of the series.
+	 *
+	 * @see com.github.johrstrom.collector.StreamingCollector#parts()
+	 */
+	@Override
+	public List<StreamingCollector> parts() {
+		List<StreamingCollector> parts = new ArrayList<>();
+		for (String family : this.timingFamilies()) {
+			parts.add((writer, exemplars) -> this.writeTiming(writer, exemplars, family, this.store.snapshot()));
+		}
+		parts.add((writer, exemplars) -> this.writeCounters(writer, this.store.snapshot()));
+		return parts;
+	}
+
+	private void writeCounters(MetricWriter writer, List<? extends SeriesView> all) throws IOException {
+		if (this.isExposed(BYTES_FAMILY)) {
+			writer.startFamily(BYTES_FAMILY, Type.COUNTER, "Counter for received bytes");
+			for (SeriesView s : all) {
+				writer.counter(this.labelNames, s.getLabelValues(), s.getBytes());
+			}
+			writer.endFamily();
+		}
+
+		if (this.isExposed(ERRORS_FAMILY)) {
+			writer.startFamily(ERRORS_FAMILY, Type.COUNTER, "Counter for failed samples");
+			for (SeriesView s : all) {
+				writer.counter(this.labelNames, s.getLabelValues(), s.getErrors());
+			}
+			writer.endFamily();
+		}
+
+		if (this.budget > 0) {
+			writer.startFamily(RATIO_FAMILY, Type.GAUGE, "Fraction of samples recorded in the timing distributions");
+			for (SeriesView s : all) {
+				writer.gauge(this.labelNames, s.getLabelValues(), s.getSamplingRatio());
+			}
+			writer.endFamily();
+		}
+	}
+
+	/**
+	 * @return the names of the exposed families of the timing distributions,
+	 *         in the order they are written
+	 */
+	protected abstract List<String> timingFamilies();
+
+	/**
+	 * Write one of the {@link #timingFamilies()}.
+	 *
+	 * @param family
+	 *            - the name of the family
+	 * @param all
+	 *            - a snapshot of every series
+	 */
+	protected abstract void writeTiming(MetricWriter writer, ExemplarSource exemplars, String family,
+			List<? extends SeriesView> all) throws IOException;
+
+}
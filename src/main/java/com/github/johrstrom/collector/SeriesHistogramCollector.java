@@ -0,0 +1,100 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exposes the timing distributions as Prometheus native histograms: a single
+ * series per label tuple carries every bucket of its {@link LogHistogram}, so
+ * quantiles can be computed at query time with ~4% relative error, aggregated
+ * across label tuples and JMeter instances, and nothing is computed at scrape
+ * time.
+ *
+ * Only the protobuf format can carry native histograms. Text formats get the
+ * classic buckets of {@link LogHistogram#CLASSIC_BOUNDS} instead, see
+ * {@link MetricWriter#nativeHistogram(List, List, long[], double)}. The
+ * families are the ones of {@link Timing}, without the millisecond
+ * <code>jmeter_samples_latency</code>.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SeriesHistogramCollector extends SeriesCollector {
+
+	/**
+	 * @param labelNames
+	 *            - the label names of the sampler series
+	 * @param budget
+	 *            - the number of histogram observations per second to aim for,
+	 *            or 0 to record every sample
+	 * @param store
+	 *            - where to keep the series
+	 */
+	public SeriesHistogramCollector(String[] labelNames, long budget, SeriesStore store) {
+		super(labelNames, budget, store);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesCollector#timingFamilies()
+	 */
+	@Override
+	protected List<String> timingFamilies() {
+		List<String> families = new ArrayList<>();
+		for (Timing timing : Timing.ALL) {
+			if (this.isExposed(timing.getFamilyName())) {
+				families.add(timing.getFamilyName());
+			}
+		}
+
+		if (this.isCorrected() && this.isExposed(CORRECTED_FAMILY)) {
+			families.add(CORRECTED_FAMILY);
+		}
+		return families;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.johrstrom.collector.SeriesCollector#writeTiming(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource, java.lang.String,
+	 * java.util.List)
+	 */
+	@Override
+	protected void writeTiming(MetricWriter writer, ExemplarSource exemplars, String family,
+			List<? extends SeriesView> all) throws IOException {
+		long[] counts = LogHistogram.newCounts();
+
+		if (family.equals(CORRECTED_FAMILY)) {
+			writer.startFamily(CORRECTED_FAMILY, Type.HISTOGRAM, CORRECTED_HELP.replace("Summary", "Histogram"));
+
+			for (SeriesView s : all) {
+				Arrays.fill(counts, 0);
+				s.addCorrectedTo(counts);
+				writer.nativeHistogram(this.labelNames, s.getLabelValues(), counts, s.getCorrectedSumMillis() / 1000.0,
+						exemplars.exemplars(CORRECTED_FAMILY, s.getLabelValues()));
+			}
+
+			writer.endFamily();
+			return;
+		}
+
+		Timing timing = Timing.forFamilyName(family);
+		writer.startFamily(timing.getFamilyName(), Type.HISTOGRAM, timing.getHelp().replace("Summary", "Histogram"));
+
+		for (SeriesView s : all) {
+			Arrays.fill(counts, 0);
+			s.addTo(timing, counts);
+			writer.nativeHistogram(this.labelNames, s.getLabelValues(), counts, s.getSumMillis(timing) / 1000.0,
+					exemplars.exemplars(timing.getFamilyName(), s.getLabelValues()));
+		}
+
+		writer.endFamily();
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.johrstrom.collector;
+
+import java.util.List;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Where a {@link SeriesCollector} keeps the counters and histograms of every
+ * label tuple.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface SeriesStore {
+
+	/**
+	 * Account for one sample.
+	 *
+	 * @param labelValues
+	 *            - the label values of the sample
+	 * @param result
+	 *            - the result of the sample
+	 */
+	void observe(String[] labelValues, SampleResult result);
+
+	/**
+	 * @return a view of every series at the time of the call
+	 */
+	List<? extends SeriesView> snapshot();
+
+	/**
+	 * @return true if the series keep durations corrected for coordinated
+	 *         omission, see {@link TimingRecord}
+	 */
+	boolean isCorrected();
+
+	/**
+	 * Divide a budget of histogram observations among the series, see
+	 * {@link SeriesCollector}. Stores that can't sample record every sample
+	 * and ignore this.
+	 *
+	 * @param observations
+	 *            - the number of observations to aim for until the next call
+	 */
+	default void adjust(double observations) {
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exposes the timing distributions as the same Summary families the
+ * simpleclient engine registers, with the quantiles computed from the
+ * histograms since the beginning of the test. Every sample updates a single
+ * {@link TimingRecord} instead of five Summaries, and
+ * <code>jmeter_samples_latency</code> is derived from the duration instead of
+ * being recorded a second time.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SeriesSummaryCollector extends SeriesCollector {
+
+	public static final double[] QUANTILES = new double[] { 0.5, 0.99 };
+
+	/**
+	 * @param labelNames
+	 *            - the label names of the sampler series
+	 * @param budget
+	 *            - the number of histogram observations per second to aim for,
+	 *            or 0 to record every sample
+	 * @param store
+	 *            - where to keep the series
+	 */
+	public SeriesSummaryCollector(String[] labelNames, long budget, SeriesStore store) {
+		super(labelNames, budget, store);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SeriesCollector#timingFamilies()
+	 */
+	@Override
+	protected List<String> timingFamilies() {
+		List<String> families = new ArrayList<>();
+		families.add(LATENCY_FAMILY);
+		for (Timing timing : Timing.ALL) {
+			families.add(timing.getFamilyName());
+		}
+
+		if (this.isCorrected()) {
+			families.add(CORRECTED_FAMILY);
+		}
+
+		families.removeIf(family -> !this.isExposed(family));
+		return families;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.github.johrstrom.collector.SeriesCollector#writeTiming(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource, java.lang.String,
+	 * java.util.List)
+	 */
+	@Override
+	protected void writeTiming(MetricWriter writer, ExemplarSource exemplars, String family,
+			List<? extends SeriesView> all) throws IOException {
+		if (family.equals(LATENCY_FAMILY)) {
+			// jmeter_samples_latency is the duration in milliseconds
+			this.summary(writer, LATENCY_FAMILY, "Summary for Sample Latency", Timing.DURATION, false,
+					1000.0, all);
+		} else if (family.equals(CORRECTED_FAMILY)) {
+			this.summary(writer, CORRECTED_FAMILY, CORRECTED_HELP, Timing.DURATION, true, 1.0, all);
+		} else {
+			Timing timing = Timing.forFamilyName(family);
+			this.summary(writer, timing.getFamilyName(), timing.getHelp(), timing, false, 1.0, all);
+		}
+	}
+
+	/**
+	 * @param corrected
+	 *            - whether to write the duration corrected for coordinated
+	 *            omission instead of the timing
+	 */
+	private void summary(MetricWriter writer, String name, String help, Timing timing, boolean corrected,
+			double unitsPerSecond, List<? extends SeriesView> all) throws IOException {
+		long[] counts = LogHistogram.newCounts();
+		double[] values = new double[QUANTILES.length];
+
+		writer.startFamily(name, Type.SUMMARY, help);
+
+		for (SeriesView s : all) {
+			Arrays.fill(counts, 0);
+			if (corrected) {
+				s.addCorrectedTo(counts);
+			} else {
+				s.addTo(timing, counts);
+			}
+
+			for (int i = 0; i < QUANTILES.length; i++) {
+				values[i] = LogHistogram.quantile(counts, QUANTILES[i]) * unitsPerSecond;
+			}
+
+			long count = corrected ? s.getCorrectedCount() : s.getCount();
+			long sumMillis = corrected ? s.getCorrectedSumMillis() : s.getSumMillis(timing);
+			writer.summary(this.labelNames, s.getLabelValues(), QUANTILES, values, count,
+					sumMillis * unitsPerSecond / 1000.0);
+		}
+
+		writer.endFamily();
+	}
+
+}
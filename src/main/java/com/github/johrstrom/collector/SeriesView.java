@@ -0,0 +1,66 @@
+package com.github.johrstrom.collector;
+
+import java.util.List;
+
+/**
+ * What the series collectors read of one label tuple when they write their
+ * families, independent of where its counters are stored.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface SeriesView {
+
+	List<String> getLabelValues();
+
+	long getCount();
+
+	long getErrors();
+
+	long getBytes();
+
+	/**
+	 * @param timing
+	 *            - the timing dimension
+	 * @return the exact sum of the timing in milliseconds
+	 */
+	long getSumMillis(Timing timing);
+
+	/**
+	 * Merge the histogram of a timing into <code>counts</code>, laid out like
+	 * {@link LogHistogram#addTo(long[])}.
+	 *
+	 * @param timing
+	 *            - the timing dimension
+	 * @param counts
+	 *            - the counts to add to
+	 */
+	void addTo(Timing timing, long[] counts);
+
+	/**
+	 * @return the number of samples corrected for coordinated omission,
+	 *         including the ones that were missed, or 0 if not corrected
+	 */
+	long getCorrectedCount();
+
+	/**
+	 * @return the sum of the corrected durations in milliseconds
+	 */
+	long getCorrectedSumMillis();
+
+	/**
+	 * Merge the histogram of the corrected durations into <code>counts</code>,
+	 * laid out like {@link LogHistogram#addTo(long[])}. Adds nothing if not
+	 * corrected.
+	 *
+	 * @param counts
+	 *            - the counts to add to
+	 */
+	void addCorrectedTo(long[] counts);
+
+	/**
+	 * @return the fraction of samples that are recorded in the histograms
+	 */
+	double getSamplingRatio();
+
+}
@@ -0,0 +1,36 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A collector that can write its families straight into a
+ * {@link MetricWriter} instead of returning them as lists.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface StreamingCollector {
+
+	/**
+	 * @param writer
+	 *            - where to write the families to
+	 * @param exemplars
+	 *            - where to look exemplars of a series up
+	 * @throws IOException
+	 */
+	void write(MetricWriter writer, ExemplarSource exemplars) throws IOException;
+
+	/**
+	 * Split this collector into parts that write whole families and can be
+	 * written concurrently. Writing every part in order writes the same
+	 * families as {@link #write(MetricWriter, ExemplarSource)}.
+	 *
+	 * @return the parts in order, just this collector by default
+	 */
+	default List<StreamingCollector> parts() {
+		return Collections.singletonList(this);
+	}
+
+}
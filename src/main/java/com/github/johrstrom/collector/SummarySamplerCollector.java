@@ -0,0 +1,111 @@
+package com.github.johrstrom.collector;
+
+import java.util.Set;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Summary;
+
+/**
+ * The original sampler collector: one simpleclient {@link Summary} per timing,
+ * plus jmeter_samples_latency which is the duration in milliseconds. Derived
+ * timings and hidden families aren't created at all, so they cost nothing per
+ * sample.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SummarySamplerCollector implements SamplerCollector {
+
+	private final Summary samplerCollector;
+	private final Summary[] timingCollectors = new Summary[Timing.ALL.length];
+
+	/**
+	 * @param labelNames
+	 *            - the label names of the sampler series
+	 * @param hiddenFamilies
+	 *            - the names of the families to leave out
+	 */
+	public SummarySamplerCollector(String[] labelNames, Set<String> hiddenFamilies) {
+		this.samplerCollector = hiddenFamilies.contains(SeriesCollector.LATENCY_FAMILY) ? null
+				: Summary.build()
+						.name(SeriesCollector.LATENCY_FAMILY)
+						.help("Summary for Sample Latency")
+						.labelNames(labelNames)
+						.quantile(0.5, 0.1)
+						.quantile(0.99, 0.1)
+						.create();
+
+		// @TODO: This metrics is not same as 'jmeter_samples_latency', need to discuss this.
+		// Metric name is confusing, current 'jmeter_samples_latency' metrics is returning 'elapsed time' instead of actual 'latency' value
+		// In jmeter terms 'latency' is time to first byte(TTFB)
+		for (Timing timing : Timing.ALL) {
+			if (!timing.isDerived() && !hiddenFamilies.contains(timing.getFamilyName())) {
+				this.timingCollectors[timing.ordinal()] = Summary.build()
+						.name(timing.getFamilyName())
+						.help(timing.getHelp())
+						.labelNames(labelNames)
+						.quantile(0.5, 0.1)
+						.quantile(0.99, 0.1)
+						.create();
+			}
+		}
+	}
+
+	/**
+	 * Add the Summaries to a registry, only once the collector it replaces, if
+	 * any, is unregistered since they have the same names.
+	 * 
+	 * @param registry
+	 *            - the registry to register the Summaries with
+	 */
+	public void register(CollectorRegistry registry) {
+		if (this.samplerCollector != null) {
+			registry.register(this.samplerCollector);
+		}
+		for (Summary summary : this.timingCollectors) {
+			if (summary != null) {
+				registry.register(summary);
+			}
+		}
+	}
+
+	/**
+	 * Remove the Summaries from the registry they were registered with.
+	 * 
+	 * @param registry
+	 *            - the registry passed to {@link #register(CollectorRegistry)}
+	 */
+	public void unregister(CollectorRegistry registry) {
+		if (this.samplerCollector != null) {
+			registry.unregister(this.samplerCollector);
+		}
+		for (Summary summary : this.timingCollectors) {
+			if (summary != null) {
+				registry.unregister(summary);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.SamplerCollector#observe(java.lang.
+	 * String[], org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		if (this.samplerCollector != null) {
+			this.samplerCollector.labels(labelValues).observe(result.getTime());
+		}
+
+		// Prometheus metrics naming, base unit is Seconds
+		for (int i = 0; i < this.timingCollectors.length; i++) {
+			if (this.timingCollectors[i] != null) {
+				this.timingCollectors[i].labels(labelValues).observe(Timing.ALL[i].millis(result) / 1000.0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.github.johrstrom.collector;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * The timing dimensions JMeter reports for every sample, along with the metric
+ * family each one is exposed as. Derived timings are computed per sample from
+ * the ones JMeter reports, so their distributions are exact instead of being
+ * approximated from the quantiles of others at query time.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public enum Timing {
+
+	DURATION("jmeter_samples_duration_seconds", "Summary for sample duration in seconds") {
+		@Override
+		public long millis(SampleResult result) {
+			return result.getTime();
+		}
+	},
+
+	TTFB("jmeter_samples_ttfb_seconds", "Summary for sample latency(TTFB) in seconds") {
+		@Override
+		public long millis(SampleResult result) {
+			return result.getLatency();
+		}
+	},
+
+	IDLE_TIME("jmeter_samples_idle_time_seconds", "Summary for sample idle time in seconds") {
+		@Override
+		public long millis(SampleResult result) {
+			return result.getIdleTime();
+		}
+	},
+
+	CONNECT_TIME("jmeter_samples_connect_time_seconds", "Summary for sample connect time in seconds") {
+		@Override
+		public long millis(SampleResult result) {
+			return result.getConnectTime();
+		}
+	},
+
+	SERVER_TIME("jmeter_samples_server_time_seconds",
+			"Summary for sample server time (TTFB minus connect time) in seconds", true) {
+		@Override
+		public long millis(SampleResult result) {
+			// samplers that don't measure latency report 0
+			return Math.max(0, result.getLatency() - result.getConnectTime());
+		}
+	},
+
+	DOWNLOAD_TIME("jmeter_samples_download_time_seconds",
+			"Summary for sample download time (duration minus TTFB) in seconds", true) {
+		@Override
+		public long millis(SampleResult result) {
+			return Math.max(0, result.getTime() - result.getLatency());
+		}
+	};
+
+	/** cached because {@link #values()} copies the array on every call */
+	public static final Timing[] ALL = values();
+
+	private final String familyName;
+	private final String help;
+	private final boolean derived;
+
+	private Timing(String familyName, String help) {
+		this(familyName, help, false);
+	}
+
+	private Timing(String familyName, String help, boolean derived) {
+		this.familyName = familyName;
+		this.help = help;
+		this.derived = derived;
+	}
+
+	/**
+	 * Read this timing from a sample result.
+	 *
+	 * @param result
+	 *            - the sample result
+	 * @return the timing in milliseconds
+	 */
+	public abstract long millis(SampleResult result);
+
+	/**
+	 * @param familyName
+	 *            - the name of a family
+	 * @return the timing exposed as the family, or null if there is none
+	 */
+	public static Timing forFamilyName(String familyName) {
+		for (Timing timing : ALL) {
+			if (timing.familyName.equals(familyName)) {
+				return timing;
+			}
+		}
+		return null;
+	}
+
+	public String getFamilyName() {
+		return this.familyName;
+	}
+
+	public String getHelp() {
+		return this.help;
+	}
+
+	/**
+	 * @return true if JMeter doesn't report this timing itself
+	 */
+	public boolean isDerived() {
+		return this.derived;
+	}
+
+}
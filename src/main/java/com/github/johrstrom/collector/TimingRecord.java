@@ -0,0 +1,283 @@
+package com.github.johrstrom.collector;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Every timing dimension of one label tuple, side by side in a single array:
+ * the count, errors and bytes, then the sum of every {@link Timing}, then the
+ * merged {@link LogHistogram} counts of the timings whose distribution is
+ * kept, as decided by the record's {@link Layout}. A sample is recorded with
+ * one call that adds to the array without locks or any lookup per dimension,
+ * and the count is added last.
+ *
+ * A histogram takes {@link #HISTOGRAM_BYTES} (about 1.4KB), the rest of a
+ * record {@link #SCALAR_LONGS} longs. Only the duration's histogram is always
+ * kept since the other outputs read it, the others only if their family is
+ * exposed, so hiding families also saves their memory in every series.
+ *
+ * A corrected record also keeps the duration corrected for coordinated
+ * omission: when a sample took longer than the interval it was expected at,
+ * the samples a steady client would have issued meanwhile are recorded too,
+ * each one interval faster than the last, like HdrHistogram's
+ * <code>recordValueWithExpectedInterval</code>. They are added to the
+ * histogram a bucket at a time instead of one by one.
+ *
+ * The layout is public so stores that keep their series elsewhere, like
+ * {@link OffHeapSeriesStore}, use the same one.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class TimingRecord {
+
+	public static final int COUNT = 0, ERRORS = 1, BYTES = 2;
+
+	/** the corrected count and sum, always there so the layout stays simple */
+	public static final int CORRECTED_COUNT = 3, CORRECTED_SUM = 4;
+
+	public static final int SUMS = 5;
+
+	/** the number of longs before the first histogram */
+	public static final int SCALAR_LONGS = SUMS + Timing.ALL.length;
+
+	public static final int HISTOGRAM_LONGS = LogHistogram.BUCKETS + 1;
+	public static final int HISTOGRAM_BYTES = HISTOGRAM_LONGS * 8;
+
+	/**
+	 * Which histograms a record keeps and where they are.
+	 */
+	public static class Layout {
+
+		/** every histogram, uncorrected */
+		public static final Layout ALL = new Layout(EnumSet.allOf(Timing.class), false);
+
+		private final int[] histograms = new int[Timing.ALL.length];
+		private final int corrected;
+		private final int longs;
+
+		/**
+		 * @param timings
+		 *            - the timings to keep the histograms of
+		 * @param corrected
+		 *            - whether to keep the histogram of the corrected
+		 *            duration as well
+		 */
+		public Layout(Set<Timing> timings, boolean corrected) {
+			int position = SCALAR_LONGS;
+			for (Timing timing : Timing.ALL) {
+				this.histograms[timing.ordinal()] = timings.contains(timing) ? position : -1;
+				position += timings.contains(timing) ? HISTOGRAM_LONGS : 0;
+			}
+			this.corrected = corrected ? position : -1;
+			this.longs = position + (corrected ? HISTOGRAM_LONGS : 0);
+		}
+
+		/**
+		 * Keep the histograms of the duration and of every timing whose
+		 * family isn't hidden.
+		 *
+		 * @param hiddenFamilies
+		 *            - the names of the families that aren't exposed
+		 * @param corrected
+		 *            - whether to keep the corrected duration as well
+		 * @return the layout
+		 */
+		public static Layout of(Set<String> hiddenFamilies, boolean corrected) {
+			Set<Timing> timings = EnumSet.of(Timing.DURATION);
+			for (Timing timing : Timing.ALL) {
+				if (!hiddenFamilies.contains(timing.getFamilyName())) {
+					timings.add(timing);
+				}
+			}
+			return new Layout(timings, corrected);
+		}
+
+		/**
+		 * @return the position of the histogram of a timing, or -1 if it
+		 *         isn't kept
+		 */
+		public int histogram(Timing timing) {
+			return this.histograms[timing.ordinal()];
+		}
+
+		/**
+		 * @return the position of the corrected histogram, or -1 if it isn't
+		 *         kept
+		 */
+		public int corrected() {
+			return this.corrected;
+		}
+
+		public boolean isCorrected() {
+			return this.corrected >= 0;
+		}
+
+		/**
+		 * @return the number of longs of a record
+		 */
+		public int longs() {
+			return this.longs;
+		}
+
+	}
+
+	/**
+	 * Adds to one field of a record, wherever it's stored.
+	 */
+	public interface Fields {
+		void add(int field, long value);
+	}
+
+	private final Layout layout;
+	private final AtomicLongArray fields;
+	private final Fields adder;
+
+	public TimingRecord() {
+		this(Layout.ALL);
+	}
+
+	/**
+	 * @param layout
+	 *            - which histograms to keep
+	 */
+	public TimingRecord(Layout layout) {
+		this.layout = layout;
+		this.fields = new AtomicLongArray(layout.longs());
+		this.adder = this.fields::addAndGet;
+	}
+
+	/**
+	 * Record one sample.
+	 *
+	 * @param result
+	 *            - the result of the sample
+	 * @param weight
+	 *            - the number of samples this one stands for in the
+	 *            histograms, or 0 to only count it and add its sums
+	 * @param expectedInterval
+	 *            - the interval in milliseconds the sample was expected at,
+	 *            or 0 if unknown. Ignored unless the record is corrected.
+	 */
+	public void record(SampleResult result, long weight, long expectedInterval) {
+		record(this.adder, this.layout, result, weight, expectedInterval);
+	}
+
+	/**
+	 * Record one sample into fields laid out like a record.
+	 *
+	 * @param layout
+	 *            - the layout of the fields
+	 * @see #record(SampleResult, long, long)
+	 */
+	public static void record(Fields fields, Layout layout, SampleResult result, long weight,
+			long expectedInterval) {
+		fields.add(BYTES, result.getBytesAsLong());
+		if (!result.isSuccessful()) {
+			fields.add(ERRORS, 1);
+		}
+
+		for (int t = 0; t < Timing.ALL.length; t++) {
+			long millis = Timing.ALL[t].millis(result);
+			fields.add(SUMS + t, millis);
+			int histogram = layout.histograms[t];
+			if (weight > 0 && histogram >= 0) {
+				fields.add(histogram + LogHistogram.countsIndex(millis / 1000.0), weight);
+			}
+		}
+
+		if (layout.isCorrected()) {
+			correct(fields, layout.corrected(), result.getTime(), weight, expectedInterval);
+		}
+
+		fields.add(COUNT, 1);
+	}
+
+	/**
+	 * Record a duration and the samples coordinated omission hid behind it:
+	 * value - interval, value - 2 * interval, ... down to the interval.
+	 */
+	static void correct(Fields fields, int histogram, long value, long weight, long interval) {
+		long missing = interval > 0 ? Math.max(0, value / interval - 1) : 0;
+
+		// the sums are exact whether the sample is recorded or not
+		fields.add(CORRECTED_COUNT, 1 + missing);
+		fields.add(CORRECTED_SUM, value + missing * value - interval * missing * (missing + 1) / 2);
+
+		if (weight == 0) {
+			return;
+		}
+
+		fields.add(histogram + LogHistogram.countsIndex(value / 1000.0), weight);
+
+		// walk down the buckets, adding every missing value of a bucket at once
+		long k = 1;
+		while (k <= missing) {
+			int countsIndex = LogHistogram.countsIndex((value - k * interval) / 1000.0);
+			long last = missing;
+			if (countsIndex > 0) {
+				double lowerMillis = LogHistogram.upperBound(countsIndex - 2 + LogHistogram.MIN_INDEX) * 1000.0;
+				last = Math.max(k, Math.min(missing, (long) Math.ceil((value - lowerMillis) / interval) - 1));
+			}
+
+			fields.add(histogram + countsIndex, (last - k + 1) * weight);
+			k = last + 1;
+		}
+	}
+
+	/**
+	 * @param field
+	 *            - the position of the field, like {@link #COUNT}
+	 * @return the value of the field
+	 */
+	public long get(int field) {
+		return this.fields.get(field);
+	}
+
+	/**
+	 * Merge the histogram of a timing into <code>counts</code>, laid out like
+	 * {@link LogHistogram#addTo(long[])}. Adds nothing if it isn't kept.
+	 */
+	public void addTo(Timing timing, long[] counts) {
+		this.addTo(this.layout.histogram(timing), counts);
+	}
+
+	/**
+	 * Merge the histogram that starts at a position, like
+	 * {@link Layout#corrected()}, into <code>counts</code>. Adds nothing for
+	 * a negative position.
+	 */
+	public void addTo(int position, long[] counts) {
+		if (position < 0) {
+			return;
+		}
+		for (int i = 0; i < HISTOGRAM_LONGS; i++) {
+			counts[i] += this.fields.get(position + i);
+		}
+	}
+
+	/**
+	 * @return which histograms the record keeps
+	 */
+	public Layout getLayout() {
+		return this.layout;
+	}
+
+	/**
+	 * @return true if the record keeps the corrected duration
+	 */
+	public boolean isCorrected() {
+		return this.layout.isCorrected();
+	}
+
+	/**
+	 * @return the position of the sum of a timing
+	 */
+	public static int sum(Timing timing) {
+		return SUMS + timing.ordinal();
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.github.johrstrom.collector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Exposes the quantiles of the durations of a recent window only, so they
+ * follow a step in latency within the window instead of blending it with the
+ * last several minutes.
+ *
+ * Every label tuple keeps a ring of {@link LogHistogram}s, each covering a
+ * window divided by the number of buckets. A timer rotates all rings at once
+ * by resetting the oldest histogram and moving the shared write position to
+ * it, so samples only read that position and record into one histogram.
+ * Quantiles merge the whole ring: the histogram being filled and the ones of
+ * the buckets before it, so they cover between the window minus one bucket and
+ * the whole window. Count and sum are cumulative like the ones of every
+ * summary.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class WindowedDurationCollector extends Collector implements StreamingCollector, SamplerCollector {
+
+	private static final Logger log = LoggerFactory.getLogger(WindowedDurationCollector.class);
+
+	public static final String WINDOW_FAMILY = "jmeter_samples_duration_window_seconds";
+
+	private final List<String> labelNames;
+	private final long windowMillis;
+	private final int buckets;
+	private final ConcurrentMap<List<String>, Ring> rings = new ConcurrentHashMap<>();
+
+	// the position of the ring every sample records into
+	private volatile int position = 0;
+
+	private ScheduledExecutorService rotator;
+
+	/**
+	 * @param labelNames
+	 *            - the label names of the sampler series
+	 * @param windowMillis
+	 *            - the length of the window
+	 * @param buckets
+	 *            - the number of histograms the window is divided into
+	 */
+	public WindowedDurationCollector(String[] labelNames, long windowMillis, int buckets) {
+		this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+		this.windowMillis = windowMillis;
+		this.buckets = Math.max(2, buckets);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.johrstrom.collector.SamplerCollector#observe(java.lang.
+	 * String[], org.apache.jmeter.samplers.SampleResult)
+	 */
+	@Override
+	public void observe(String[] labelValues, SampleResult result) {
+		Ring ring = this.rings.get(Arrays.asList(labelValues));
+		if (ring == null) {
+			Ring created = new Ring(labelValues, this.buckets);
+			ring = this.rings.putIfAbsent(created.labelValues, created);
+			ring = (ring == null) ? created : ring;
+		}
+
+		long millis = result.getTime();
+		ring.histograms[this.position].record(millis / 1000.0);
+		ring.count.increment();
+		ring.sumMillis.add(millis);
+	}
+
+	/**
+	 * Reset the oldest histogram of every ring and record into it from now on.
+	 */
+	public void rotate() {
+		int next = (this.position + 1) % this.buckets;
+		for (Ring ring : this.rings.values()) {
+			ring.histograms[next].reset();
+		}
+		this.position = next;
+	}
+
+	/**
+	 * Start rotating the rings.
+	 */
+	@Override
+	public synchronized void start() {
+		if (this.rotator != null) {
+			return;
+		}
+
+		this.rotator = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-window");
+			t.setDaemon(true);
+			return t;
+		});
+
+		long period = Math.max(1, this.windowMillis / this.buckets);
+		this.rotator.scheduleAtFixedRate(() -> {
+			try {
+				this.rotate();
+			} catch (Exception e) {
+				log.error("Couldn't rotate the duration windows.", e);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop rotating the rings, the current window is kept.
+	 */
+	@Override
+	public synchronized void stop() {
+		if (this.rotator != null) {
+			this.rotator.shutdownNow();
+			this.rotator = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see io.prometheus.client.Collector#collect()
+	 */
+	@Override
+	public List<MetricFamilySamples> collect() {
+		SamplesWriter writer = new SamplesWriter();
+		try {
+			this.write(writer, ExemplarSource.NONE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.getFamilies();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.github.johrstrom.collector.StreamingCollector#write(com.github.
+	 * johrstrom.collector.MetricWriter,
+	 * com.github.johrstrom.collector.ExemplarSource)
+	 */
+	@Override
+	public void write(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		long[] counts = LogHistogram.newCounts();
+		double[] values = new double[SeriesSummaryCollector.QUANTILES.length];
+
+		writer.startFamily(WINDOW_FAMILY, Type.SUMMARY, String.format(
+				"Summary for sample duration in seconds, quantiles of the last %ds", this.windowMillis / 1000));
+
+		for (Ring ring : this.rings.values()) {
+			Arrays.fill(counts, 0);
+			for (LogHistogram histogram : ring.histograms) {
+				histogram.addTo(counts);
+			}
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] = LogHistogram.quantile(counts, SeriesSummaryCollector.QUANTILES[i]);
+			}
+
+			writer.summary(this.labelNames, ring.labelValues, SeriesSummaryCollector.QUANTILES, values,
+					ring.count.sum(), ring.sumMillis.sum() / 1000.0);
+		}
+
+		writer.endFamily();
+	}
+
+	private static class Ring {
+
+		final List<String> labelValues;
+		final LogHistogram[] histograms;
+		final LongAdder count = new LongAdder();
+		final LongAdder sumMillis = new LongAdder();
+
+		Ring(String[] labelValues, int buckets) {
+			this.labelValues = Collections.unmodifiableList(Arrays.asList(labelValues.clone()));
+			this.histograms = new LogHistogram[buckets];
+			for (int i = 0; i < buckets; i++) {
+				this.histograms[i] = new LogHistogram();
+			}
+		}
+
+	}
+
+}
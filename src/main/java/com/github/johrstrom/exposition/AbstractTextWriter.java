@@ -0,0 +1,218 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.github.johrstrom.collector.Exemplar;
+import com.github.johrstrom.collector.MetricWriter;
+
+import io.prometheus.client.Collector;
+
+/**
+ * The parts the text based exposition formats have in common: one line per
+ * sample, labels in braces and the same escaping of label values.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public abstract class AbstractTextWriter implements MetricWriter {
+
+	protected final Writer writer;
+	protected String familyName;
+
+	protected AbstractTextWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#counter(java.util.List,
+	 * java.util.List, double)
+	 */
+	@Override
+	public void counter(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.sample(this.familyName, labelNames, labelValues, null, null, value, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#gauge(java.util.List,
+	 * java.util.List, double)
+	 */
+	@Override
+	public void gauge(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.sample(this.familyName, labelNames, labelValues, null, null, value, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#untyped(java.util.List,
+	 * java.util.List, double)
+	 */
+	@Override
+	public void untyped(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.sample(this.familyName, labelNames, labelValues, null, null, value, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#summary(java.util.List,
+	 * java.util.List, double[], double[], double, double)
+	 */
+	@Override
+	public void summary(List<String> labelNames, List<String> labelValues, double[] quantiles, double[] values,
+			double count, double sum) throws IOException {
+		for (int i = 0; i < quantiles.length; i++) {
+			this.sample(this.familyName, labelNames, labelValues, "quantile", Collector.doubleToGoString(quantiles[i]),
+					values[i], null);
+		}
+		this.sample(this.familyName + "_count", labelNames, labelValues, null, null, count, null);
+		this.sample(this.familyName + "_sum", labelNames, labelValues, null, null, sum, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#histogram(java.util.List,
+	 * java.util.List, double[], double[], double,
+	 * com.github.johrstrom.collector.Exemplar[])
+	 */
+	@Override
+	public void histogram(List<String> labelNames, List<String> labelValues, double[] upperBounds,
+			double[] cumulativeCounts, double sum, Exemplar[] exemplars) throws IOException {
+		double lowerBound = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < upperBounds.length; i++) {
+			this.sample(this.familyName + "_bucket", labelNames, labelValues, "le",
+					Collector.doubleToGoString(upperBounds[i]), cumulativeCounts[i],
+					Exemplar.forBucket(exemplars, lowerBound, upperBounds[i]));
+			lowerBound = upperBounds[i];
+		}
+		double count = cumulativeCounts.length == 0 ? 0 : cumulativeCounts[cumulativeCounts.length - 1];
+		this.sample(this.familyName + "_count", labelNames, labelValues, null, null, count, null);
+		this.sample(this.familyName + "_sum", labelNames, labelValues, null, null, sum, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#endFamily()
+	 */
+	@Override
+	public void endFamily() throws IOException {
+		this.familyName = null;
+	}
+
+	/**
+	 * Write one sample line.
+	 *
+	 * @param extraLabelName
+	 *            - a label to add, like quantile or le. May be null.
+	 * @param exemplar
+	 *            - an exemplar for formats that support it. May be null.
+	 */
+	protected void sample(String name, List<String> labelNames, List<String> labelValues, String extraLabelName,
+			String extraLabelValue, double value, Exemplar exemplar) throws IOException {
+		this.writer.write(name);
+
+		if (!labelNames.isEmpty() || extraLabelName != null) {
+			this.writer.write('{');
+			for (int i = 0; i < labelNames.size(); i++) {
+				if (i > 0) {
+					this.writer.write(',');
+				}
+				this.label(labelNames.get(i), labelValues.get(i));
+			}
+			if (extraLabelName != null) {
+				if (!labelNames.isEmpty()) {
+					this.writer.write(',');
+				}
+				this.label(extraLabelName, extraLabelValue);
+			}
+			this.writer.write('}');
+		}
+
+		this.writer.write(' ');
+		this.writer.write(Collector.doubleToGoString(value));
+		if (exemplar != null) {
+			this.exemplar(exemplar);
+		}
+		this.writer.write('\n');
+	}
+
+	/**
+	 * Write an exemplar at the end of a sample line, formats that can't
+	 * carry exemplars ignore them.
+	 */
+	protected void exemplar(Exemplar exemplar) throws IOException {
+	}
+
+	protected void label(String name, String value) throws IOException {
+		this.writer.write(name);
+		this.writer.write("=\"");
+		this.escape(value, true);
+		this.writer.write('"');
+	}
+
+	/**
+	 * Escape backslashes and new lines and optionally double quotes.
+	 */
+	protected void escape(String s, boolean quotes) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				this.writer.write("\\\\");
+				break;
+			case '\n':
+				this.writer.write("\\n");
+				break;
+			case '\"':
+				this.writer.write(quotes ? "\\\"" : "\"");
+				break;
+			default:
+				this.writer.write(c);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.writer.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#finish()
+	 */
+	@Override
+	public void finish() throws IOException {
+		this.writer.flush();
+	}
+
+	protected static String typeName(Collector.Type type) {
+		switch (type) {
+		case COUNTER:
+			return "counter";
+		case GAUGE:
+			return "gauge";
+		case SUMMARY:
+			return "summary";
+		case HISTOGRAM:
+			return "histogram";
+		default:
+			return "untyped";
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.github.johrstrom.exposition;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.github.johrstrom.collector.MetricWriter;
+
+/**
+ * The exposition formats /metrics can be served in and the negotiation of the
+ * format from an Accept header.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public enum ExpositionFormat {
+
+	TEXT(TextFormatWriter.CONTENT_TYPE) {
+		@Override
+		public MetricWriter newWriter(OutputStream out) {
+			return new TextFormatWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+		}
+	},
+
+	OPENMETRICS(OpenMetricsWriter.CONTENT_TYPE) {
+		@Override
+		public MetricWriter newWriter(OutputStream out) {
+			return new OpenMetricsWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+		}
+	},
+
+	PROTOBUF(ProtobufWriter.CONTENT_TYPE) {
+		@Override
+		public MetricWriter newWriter(OutputStream out) {
+			return new ProtobufWriter(out);
+		}
+	};
+
+	private final String contentType;
+
+	private ExpositionFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return this.contentType;
+	}
+
+	/**
+	 * @param out
+	 *            - the stream to write to
+	 * @return a new writer of this format, {@link MetricWriter#finish()} has to
+	 *         be called for everything to be written.
+	 */
+	public abstract MetricWriter newWriter(OutputStream out);
+
+	/**
+	 * Pick the format the client prefers, i.e. the supported media range with
+	 * the highest q value (the first one if there is a tie). Falls back to the
+	 * 0.0.4 text format.
+	 *
+	 * @param accept
+	 *            - the Accept header, may be null
+	 * @return the format to respond with
+	 */
+	public static ExpositionFormat negotiate(String accept) {
+		if (accept == null) {
+			return TEXT;
+		}
+
+		ExpositionFormat best = TEXT;
+		double bestQ = -1;
+
+		for (String range : accept.split(",")) {
+			String[] parts = range.split(";");
+			String mediaType = parts[0].trim().toLowerCase();
+			double q = 1.0;
+			String proto = null, encoding = null;
+
+			for (int i = 1; i < parts.length; i++) {
+				String[] param = parts[i].split("=", 2);
+				if (param.length != 2) {
+					continue;
+				}
+				String name = param[0].trim().toLowerCase();
+				String value = param[1].trim();
+				if (name.equals("q")) {
+					q = parseQ(value);
+				} else if (name.equals("proto")) {
+					proto = value;
+				} else if (name.equals("encoding")) {
+					encoding = value;
+				}
+			}
+
+			ExpositionFormat format = null;
+			if (mediaType.equals("application/vnd.google.protobuf")
+					&& "io.prometheus.client.MetricFamily".equals(proto) && "delimited".equals(encoding)) {
+				format = PROTOBUF;
+			} else if (mediaType.equals("application/openmetrics-text")) {
+				format = OPENMETRICS;
+			} else if (mediaType.equals("text/plain") || mediaType.equals("text/*") || mediaType.equals("*/*")) {
+				format = TEXT;
+			}
+
+			if (format != null && q > 0 && q > bestQ) {
+				best = format;
+				bestQ = q;
+			}
+		}
+
+		return best;
+	}
+
+	private static double parseQ(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
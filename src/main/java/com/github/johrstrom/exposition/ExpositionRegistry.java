@@ -0,0 +1,98 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.github.johrstrom.collector.ExemplarSource;
+import com.github.johrstrom.collector.MetricWriter;
+import com.github.johrstrom.collector.StreamingCollector;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+/**
+ * Everything that is exposed on /metrics: the {@link StreamingCollector}s
+ * registered here, which write straight into the exposition format, followed
+ * by the plain collectors of a {@link CollectorRegistry}.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ExpositionRegistry {
+
+	public static final ExpositionRegistry defaultRegistry = new ExpositionRegistry(
+			CollectorRegistry.defaultRegistry);
+
+	private final CollectorRegistry collectorRegistry;
+	private final List<StreamingCollector> collectors = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param collectorRegistry
+	 *            - the registry of the plain collectors
+	 */
+	public ExpositionRegistry(CollectorRegistry collectorRegistry) {
+		this.collectorRegistry = collectorRegistry;
+	}
+
+	public <T extends StreamingCollector> T register(T collector) {
+		this.collectors.add(collector);
+		return collector;
+	}
+
+	public void unregister(StreamingCollector collector) {
+		this.collectors.remove(collector);
+	}
+
+	/**
+	 * Unregister all streaming collectors. The plain collectors are left to
+	 * {@link CollectorRegistry#clear()}.
+	 */
+	public void clear() {
+		this.collectors.clear();
+	}
+
+	/**
+	 * Write every family, without finishing the writer.
+	 *
+	 * @param writer
+	 *            - where to write to
+	 * @param exemplars
+	 *            - where to look exemplars up
+	 * @throws IOException
+	 */
+	public void write(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		for (StreamingCollector collector : this.collectors) {
+			collector.write(writer, exemplars);
+		}
+
+		this.writePlain(writer, exemplars);
+	}
+
+	/**
+	 * Split the registry into parts that can be written concurrently, see
+	 * {@link StreamingCollector#parts()}. The plain collectors are a single
+	 * part, the last one.
+	 *
+	 * @return the parts in the order {@link #write(MetricWriter, ExemplarSource)}
+	 *         writes them
+	 */
+	public List<StreamingCollector> parts() {
+		List<StreamingCollector> parts = new ArrayList<>();
+		for (StreamingCollector collector : this.collectors) {
+			parts.addAll(collector.parts());
+		}
+		parts.add(this::writePlain);
+		return parts;
+	}
+
+	private void writePlain(MetricWriter writer, ExemplarSource exemplars) throws IOException {
+		Enumeration<MetricFamilySamples> families = this.collectorRegistry.metricFamilySamples();
+		while (families.hasMoreElements()) {
+			FamilySamplesAdapter.write(families.nextElement(), writer, exemplars);
+		}
+	}
+
+}
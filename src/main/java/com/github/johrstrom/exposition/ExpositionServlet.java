@@ -0,0 +1,117 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.johrstrom.collector.ExemplarSource;
+
+/**
+ * Serves the metrics of an {@link ExpositionRegistry} in the format the
+ * scraper asks for in its Accept header: delimited protocol buffers,
+ * OpenMetrics text (with exemplars) or the 0.0.4 text format. Scrapes go
+ * through a {@link ScrapeCache} and are compressed with gzip for scrapers that
+ * accept it.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ExpositionServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -3414592325683520745L;
+
+	private final transient ScrapeCache cache;
+
+	/**
+	 * @param registry
+	 *            - the registry to serve
+	 * @param exemplars
+	 *            - where to look exemplars up
+	 * @param cacheMillis
+	 *            - how long a scrape is served to other scrapers, in
+	 *            milliseconds
+	 * @param parallelism
+	 *            - the number of threads encoding a scrape
+	 */
+	public ExpositionServlet(ExpositionRegistry registry, ExemplarSource exemplars, long cacheMillis,
+			int parallelism) {
+		this.cache = new ScrapeCache(registry, exemplars, cacheMillis, parallelism);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.GenericServlet#destroy()
+	 */
+	@Override
+	public void destroy() {
+		this.cache.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.
+	 * HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		ExpositionFormat format = ExpositionFormat.negotiate(req.getHeader("Accept"));
+
+		ScrapeCache.Scrape scrape = this.cache.get(format);
+
+		byte[] body;
+		if (acceptsGzip(req.getHeader("Accept-Encoding"))) {
+			body = scrape.getGzipped();
+			resp.setHeader("Content-Encoding", "gzip");
+		} else {
+			body = scrape.getBytes();
+		}
+
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType(format.getContentType());
+		resp.setContentLength(body.length);
+		resp.getOutputStream().write(body);
+	}
+
+	/**
+	 * @param acceptEncoding
+	 *            - the Accept-Encoding header. May be null.
+	 * @return true if gzip is listed and not with a q value of 0
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				for (int i = 1; i < parts.length; i++) {
+					String param = parts[i].trim();
+					if (param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?")) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.
+	 * HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		this.doGet(req, resp);
+	}
+
+}
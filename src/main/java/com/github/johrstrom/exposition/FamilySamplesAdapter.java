@@ -0,0 +1,132 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.johrstrom.collector.ExemplarSource;
+import com.github.johrstrom.collector.MetricWriter;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+/**
+ * Writes a {@link MetricFamilySamples}, as collected from a plain collector,
+ * into a {@link MetricWriter}. The samples of summaries and histograms are
+ * grouped back into series for that.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class FamilySamplesAdapter {
+
+	private FamilySamplesAdapter() {
+	}
+
+	public static void write(MetricFamilySamples family, MetricWriter writer, ExemplarSource exemplars)
+			throws IOException {
+		writer.startFamily(family.name, family.type, family.help);
+
+		switch (family.type) {
+		case COUNTER:
+			for (Sample sample : family.samples) {
+				writer.counter(sample.labelNames, sample.labelValues, sample.value);
+			}
+			break;
+		case GAUGE:
+			for (Sample sample : family.samples) {
+				writer.gauge(sample.labelNames, sample.labelValues, sample.value);
+			}
+			break;
+		case SUMMARY:
+			for (Series series : group(family, "quantile")) {
+				writer.summary(series.labelNames, series.labelValues, series.bounds(), series.values(), series.count,
+						series.sum);
+			}
+			break;
+		case HISTOGRAM:
+			for (Series series : group(family, "le")) {
+				writer.histogram(series.labelNames, series.labelValues, series.bounds(), series.values(),
+						series.sum, exemplars.exemplars(family.name, series.labelValues));
+			}
+			break;
+		default:
+			for (Sample sample : family.samples) {
+				writer.untyped(sample.labelNames, sample.labelValues, sample.value);
+			}
+		}
+
+		writer.endFamily();
+	}
+
+	/**
+	 * Group the samples of a summary or histogram by their labels, without the
+	 * quantile or le label.
+	 */
+	private static Iterable<Series> group(MetricFamilySamples family, String boundLabel) {
+		Map<List<String>, Series> series = new LinkedHashMap<>();
+
+		for (Sample sample : family.samples) {
+			int last = sample.labelNames.size() - 1;
+			boolean bounded = last >= 0 && sample.labelNames.get(last).equals(boundLabel);
+			List<String> labelNames = bounded ? sample.labelNames.subList(0, last) : sample.labelNames;
+			List<String> labelValues = bounded ? sample.labelValues.subList(0, last) : sample.labelValues;
+
+			Series s = series.get(labelValues);
+			if (s == null) {
+				s = new Series(labelNames, labelValues);
+				series.put(labelValues, s);
+			}
+
+			if (bounded) {
+				s.bounds.add(parseBound(sample.labelValues.get(last)));
+				s.values.add(sample.value);
+			} else if (sample.name.endsWith("_count")) {
+				s.count = sample.value;
+			} else if (sample.name.endsWith("_sum")) {
+				s.sum = sample.value;
+			}
+		}
+
+		return series.values();
+	}
+
+	private static double parseBound(String value) {
+		if (value.equals("+Inf")) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Double.parseDouble(value);
+	}
+
+	private static class Series {
+		final List<String> labelNames;
+		final List<String> labelValues;
+		final List<Double> bounds = new ArrayList<>();
+		final List<Double> values = new ArrayList<>();
+		double count, sum;
+
+		Series(List<String> labelNames, List<String> labelValues) {
+			this.labelNames = labelNames;
+			this.labelValues = labelValues;
+		}
+
+		double[] bounds() {
+			return toArray(this.bounds);
+		}
+
+		double[] values() {
+			return toArray(this.values);
+		}
+
+		private static double[] toArray(List<Double> list) {
+			double[] array = new double[list.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = list.get(i);
+			}
+			return array;
+		}
+	}
+
+}
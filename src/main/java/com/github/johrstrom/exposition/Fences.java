@@ -0,0 +1,94 @@
+package com.github.johrstrom.exposition;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory fences for the seqlock of the mapped metrics file. Java 8 has no
+ * public fences, so these are the ones of <code>sun.misc.Unsafe</code>, which
+ * every JDK since 8 has, looked up once so no internal API is compiled
+ * against. If it isn't accessible, a volatile access stands in for the fence;
+ * HotSpot compiles those into fences too, but that is an implementation
+ * detail.
+ *
+ * The memory model says nothing about a reader in another process, what the
+ * seqlock relies on is that these emit the hardware fences that order the
+ * stores into and loads from the shared mapping. On TSO hardware like x86,
+ * stores and loads aren't reordered among themselves anyway and the fences
+ * only keep the JIT from reordering them; on weaker hardware like ARM they're
+ * required.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+final class Fences {
+
+	private static final Logger log = LoggerFactory.getLogger(Fences.class);
+
+	private static final MethodHandle STORE_FENCE;
+	private static final MethodHandle LOAD_FENCE;
+
+	// the stand in if Unsafe isn't accessible
+	private static volatile long fallback;
+
+	static {
+		MethodHandle storeFence = null, loadFence = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+
+			MethodType type = MethodType.methodType(void.class);
+			storeFence = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", type).bindTo(unsafe);
+			loadFence = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", type).bindTo(unsafe);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.warn("No Unsafe fences, the mapped file relies on volatile accesses instead: {}", e.toString());
+			storeFence = null;
+			loadFence = null;
+		}
+		STORE_FENCE = storeFence;
+		LOAD_FENCE = loadFence;
+	}
+
+	private Fences() {
+	}
+
+	/**
+	 * Keep the stores before this point from being reordered with the stores
+	 * after it.
+	 */
+	static void storeFence() {
+		if (STORE_FENCE == null) {
+			fallback++;
+			return;
+		}
+		try {
+			STORE_FENCE.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Unsafe.storeFence failed", e);
+		}
+	}
+
+	/**
+	 * Keep the loads before this point from being reordered with the loads
+	 * after it.
+	 */
+	static void loadFence() {
+		if (LOAD_FENCE == null) {
+			fallback++;
+			return;
+		}
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Unsafe.loadFence failed", e);
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+package com.github.johrstrom.exposition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.johrstrom.collector.ExemplarSource;
+import com.github.johrstrom.collector.MetricWriter;
+
+/**
+ * Publishes the metrics of an {@link ExpositionRegistry} into a memory mapped
+ * file for a node local agent to pick up, for environments where the listener
+ * can't open a port. Publishing is a copy into the mapping, no system call
+ * and no HTTP stack involved. {@link MappedFileReader} serves or prints the
+ * file on the other side.
+ *
+ * The file has a fixed layout: a header of {@link #HEADER_BYTES} followed by
+ * a payload region of a fixed capacity that holds the metrics in the 0.0.4
+ * text format.
+ *
+ * <pre>
+ * 0  int  magic
+ * 4  int  version
+ * 8  long sequence, odd while the payload is written
+ * 16 int  payload length
+ * 20 int  capacity
+ * 24 ...  payload
+ * </pre>
+ *
+ * The sequence makes it a seqlock: readers copy the payload and retry if the
+ * sequence was odd or changed meanwhile. The stores are ordered with
+ * {@link Fences}, see there for what that guarantees across processes.
+ *
+ * Every publication is encoded into the same buffer and copied from there
+ * into the mapping, so publishing allocates nothing per scrape of the size
+ * of the metrics once the buffer has grown to fit them.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class MappedFileExporter {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedFileExporter.class);
+
+	public static final int MAGIC = 0x4a4d5052; // JMPR
+	public static final int VERSION = 1;
+
+	public static final int MAGIC_OFFSET = 0;
+	public static final int VERSION_OFFSET = 4;
+	public static final int SEQUENCE_OFFSET = 8;
+	public static final int LENGTH_OFFSET = 16;
+	public static final int CAPACITY_OFFSET = 20;
+	public static final int HEADER_BYTES = 24;
+
+	public static final int DEFAULT_CAPACITY = 64 * 1024 * 1024;
+
+	private final Path path;
+	private final ExpositionRegistry registry;
+	private final long intervalMillis;
+	private final int capacity;
+
+	private final Object publishing = new Object();
+	private MappedByteBuffer buffer;
+	private ScheduledExecutorService publisher;
+
+	// reused by every publication, guarded by publishing
+	private final Payload payload = new Payload();
+
+	/**
+	 * @param path
+	 *            - the file to publish to, created or overwritten
+	 * @param registry
+	 *            - the registry to publish
+	 * @param intervalMillis
+	 *            - how often to publish, in milliseconds
+	 * @param capacity
+	 *            - the size of the payload region in bytes
+	 */
+	public MappedFileExporter(Path path, ExpositionRegistry registry, long intervalMillis, int capacity) {
+		this.path = path;
+		this.registry = registry;
+		this.intervalMillis = Math.max(1, intervalMillis);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Map the file and start publishing.
+	 *
+	 * @throws IOException
+	 *             if the file can't be mapped
+	 */
+	public synchronized void start() throws IOException {
+		if (this.publisher != null) {
+			return;
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(this.path.toFile(), "rw")) {
+			file.setLength(HEADER_BYTES + (long) this.capacity);
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) this.capacity);
+		}
+
+		this.buffer.putInt(VERSION_OFFSET, VERSION);
+		this.buffer.putLong(SEQUENCE_OFFSET, 0);
+		this.buffer.putInt(LENGTH_OFFSET, 0);
+		this.buffer.putInt(CAPACITY_OFFSET, this.capacity);
+		Fences.storeFence();
+		// readers only trust the file once the header is complete
+		this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+
+		this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-mapped-file");
+			t.setDaemon(true);
+			return t;
+		});
+		this.publisher.scheduleWithFixedDelay(() -> {
+			try {
+				this.publish();
+			} catch (Exception e) {
+				log.error("Couldn't publish metrics to " + this.path, e);
+			}
+		}, 0, this.intervalMillis, TimeUnit.MILLISECONDS);
+
+		log.info("Publishing metrics to {} every {}ms.", this.path, this.intervalMillis);
+	}
+
+	/**
+	 * Stop publishing after publishing the final values, the file is kept.
+	 */
+	public void stop() {
+		ScheduledExecutorService publisher;
+		synchronized (this) {
+			publisher = this.publisher;
+			this.publisher = null;
+		}
+		if (publisher == null) {
+			return;
+		}
+
+		publisher.shutdown();
+		try {
+			publisher.awaitTermination(this.intervalMillis + 1000, TimeUnit.MILLISECONDS);
+			this.publish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.error("Couldn't publish the final metrics to " + this.path, e);
+		}
+
+		this.buffer.force();
+	}
+
+	/**
+	 * Encode the registry and copy it into the payload region.
+	 */
+	void publish() throws IOException {
+		synchronized (this.publishing) {
+			Payload out = this.payload;
+			out.reset();
+			MetricWriter writer = ExpositionFormat.TEXT.newWriter(out);
+			this.registry.write(writer, ExemplarSource.NONE);
+			writer.finish();
+
+			if (out.size() > this.capacity) {
+				log.error("Metrics of {} bytes don't fit into the {} bytes of {}, keeping the previous ones.",
+						out.size(), this.capacity, this.path);
+				return;
+			}
+
+			long sequence = this.buffer.getLong(SEQUENCE_OFFSET);
+
+			this.buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+			Fences.storeFence();
+
+			this.buffer.putInt(LENGTH_OFFSET, out.size());
+			ByteBuffer region = this.buffer.duplicate();
+			region.position(HEADER_BYTES);
+			out.copyTo(region);
+
+			Fences.storeFence();
+			this.buffer.putLong(SEQUENCE_OFFSET, sequence + 2);
+		}
+	}
+
+	/**
+	 * A stream whose buffer is kept across resets and copied from directly.
+	 */
+	private static class Payload extends ByteArrayOutputStream {
+
+		Payload() {
+			super(8192);
+		}
+
+		void copyTo(ByteBuffer region) {
+			region.put(this.buf, 0, this.count);
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+/**
+ * Reads the metrics a {@link MappedFileExporter} publishes, for a sidecar
+ * that runs next to JMeter. Run it with the path of the file to print the
+ * metrics once, or with a port as well to serve them on /metrics:
+ *
+ * <pre>
+ * java -cp jmeter-prometheus-plugin.jar com.github.johrstrom.exposition.MappedFileReader metrics.map [port]
+ * </pre>
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class MappedFileReader {
+
+	private static final int MAX_RETRIES = 1000;
+
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * @param path
+	 *            - the file a {@link MappedFileExporter} publishes to
+	 * @throws IOException
+	 *             if the file can't be mapped or wasn't written by an exporter
+	 */
+	public MappedFileReader(Path path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+
+		if (this.buffer.capacity() < MappedFileExporter.HEADER_BYTES
+				|| this.buffer.getInt(MappedFileExporter.MAGIC_OFFSET) != MappedFileExporter.MAGIC) {
+			throw new IOException(path + " isn't a metrics file or isn't initialized yet");
+		} else if (this.buffer.getInt(MappedFileExporter.VERSION_OFFSET) != MappedFileExporter.VERSION) {
+			throw new IOException(path + " has an unsupported version "
+					+ this.buffer.getInt(MappedFileExporter.VERSION_OFFSET));
+		}
+	}
+
+	/**
+	 * Copy the latest published metrics, retrying while they're being
+	 * written.
+	 *
+	 * @return the metrics in the 0.0.4 text format
+	 * @throws IOException
+	 *             if the exporter kept writing for all retries
+	 */
+	public byte[] read() throws IOException {
+		for (int retry = 0; retry < MAX_RETRIES; retry++) {
+			long before = this.buffer.getLong(MappedFileExporter.SEQUENCE_OFFSET);
+			if ((before & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			Fences.loadFence();
+
+			int length = this.buffer.getInt(MappedFileExporter.LENGTH_OFFSET);
+			int capacity = this.buffer.getInt(MappedFileExporter.CAPACITY_OFFSET);
+			byte[] payload = new byte[Math.max(0, Math.min(length, capacity))];
+			ByteBuffer region = this.buffer.duplicate();
+			region.position(MappedFileExporter.HEADER_BYTES);
+			region.get(payload);
+
+			Fences.loadFence();
+			if (this.buffer.getLong(MappedFileExporter.SEQUENCE_OFFSET) == before) {
+				return payload;
+			}
+		}
+
+		throw new IOException("Metrics kept changing while reading them");
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: MappedFileReader <file> [port]");
+			System.exit(1);
+		}
+
+		MappedFileReader reader = new MappedFileReader(Paths.get(args[0]));
+		if (args.length == 1) {
+			System.out.print(new String(reader.read(), StandardCharsets.UTF_8));
+			return;
+		}
+
+		Server server = new Server(Integer.parseInt(args[1]));
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		server.setHandler(context);
+		context.addServlet(new ServletHolder(new HttpServlet() {
+
+			private static final long serialVersionUID = 6062011960398153528L;
+
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+					throws ServletException, IOException {
+				byte[] body = reader.read();
+				resp.setStatus(HttpServletResponse.SC_OK);
+				resp.setContentType(TextFormatWriter.CONTENT_TYPE);
+				resp.setContentLength(body.length);
+				resp.getOutputStream().write(body);
+			}
+
+		}), "/metrics");
+
+		server.start();
+		server.join();
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.github.johrstrom.collector.Exemplar;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Writes the OpenMetrics 1.0 text format, which unlike the 0.0.4 text format
+ * can carry exemplars.
+ *
+ * Counters whose name doesn't end in _total can't be expressed as OpenMetrics
+ * counters without renaming their samples, so they are exposed as unknown.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class OpenMetricsWriter extends AbstractTextWriter {
+
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	/** the limit OpenMetrics puts on the combined length of exemplar labels */
+	public static final int MAX_EXEMPLAR_LABELS_LENGTH = 128;
+
+	private static final String TRACE_ID_LABEL = "trace_id";
+	private static final String THREAD_LABEL = "thread";
+
+	public OpenMetricsWriter(Writer writer) {
+		super(writer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#startFamily(java.lang.
+	 * String, io.prometheus.client.Collector.Type, java.lang.String)
+	 */
+	@Override
+	public void startFamily(String name, Collector.Type type, String help) throws IOException {
+		this.familyName = name;
+
+		String metadataName = name;
+		String typeName = typeName(type);
+		if (type == Collector.Type.COUNTER) {
+			if (name.endsWith("_total")) {
+				metadataName = name.substring(0, name.length() - "_total".length());
+			} else {
+				typeName = "unknown";
+			}
+		} else if (type == Collector.Type.UNTYPED) {
+			typeName = "unknown";
+		}
+
+		this.writer.write("# TYPE ");
+		this.writer.write(metadataName);
+		this.writer.write(' ');
+		this.writer.write(typeName);
+		this.writer.write('\n');
+
+		this.writer.write("# HELP ");
+		this.writer.write(metadataName);
+		this.writer.write(' ');
+		this.escape(help, true);
+		this.writer.write('\n');
+	}
+
+	/**
+	 * Exemplar labels are limited in length so the trace id is kept whole if
+	 * possible and the thread name gets what is left.
+	 */
+	@Override
+	protected void exemplar(Exemplar exemplar) throws IOException {
+		int budget = MAX_EXEMPLAR_LABELS_LENGTH - THREAD_LABEL.length();
+		String traceId = exemplar.getTraceId();
+		if (!traceId.isEmpty()) {
+			budget -= TRACE_ID_LABEL.length();
+			traceId = truncate(traceId, budget);
+			budget -= traceId.length();
+		}
+		String thread = truncate(exemplar.getThreadName(), budget);
+
+		this.writer.write(" # {");
+		if (!traceId.isEmpty()) {
+			this.label(TRACE_ID_LABEL, traceId);
+			this.writer.write(',');
+		}
+		this.label(THREAD_LABEL, thread);
+		this.writer.write("} ");
+
+		this.writer.write(Collector.doubleToGoString(exemplar.getElapsed() / 1000.0));
+		this.writer.write(' ');
+		this.writer.write(Long.toString(exemplar.getTimestamp() / 1000));
+		this.writer.write('.');
+		this.writer.write(String.format("%03d", exemplar.getTimestamp() % 1000));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.exposition.AbstractTextWriter#finish()
+	 */
+	@Override
+	public void finish() throws IOException {
+		this.writer.write("# EOF\n");
+		super.finish();
+	}
+
+	private static String truncate(String value, int length) {
+		return value.length() > length ? value.substring(0, Math.max(0, length)) : value;
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal, reusable protocol buffers encoder for the handful of wire types
+ * the Prometheus client model needs. Nested messages are encoded into their
+ * own encoder and then appended with {@link #message(int, ProtoEncoder)}.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ProtoEncoder {
+
+	private static final int WIRE_VARINT = 0;
+	private static final int WIRE_FIXED64 = 1;
+	private static final int WIRE_LENGTH_DELIMITED = 2;
+
+	private byte[] buffer;
+	private int size = 0;
+
+	public ProtoEncoder() {
+		this(256);
+	}
+
+	public ProtoEncoder(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	public ProtoEncoder reset() {
+		this.size = 0;
+		return this;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public ProtoEncoder uint64(int field, long value) {
+		this.tag(field, WIRE_VARINT);
+		this.varint(value);
+		return this;
+	}
+
+	public ProtoEncoder enumeration(int field, int value) {
+		return this.uint64(field, value);
+	}
+
+	public ProtoEncoder sint(int field, long value) {
+		this.tag(field, WIRE_VARINT);
+		this.varint((value << 1) ^ (value >> 63));
+		return this;
+	}
+
+	public ProtoEncoder float64(int field, double value) {
+		this.tag(field, WIRE_FIXED64);
+		long bits = Double.doubleToRawLongBits(value);
+		this.ensure(8);
+		for (int i = 0; i < 8; i++) {
+			this.buffer[this.size++] = (byte) (bits >>> (8 * i));
+		}
+		return this;
+	}
+
+	public ProtoEncoder string(int field, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		this.tag(field, WIRE_LENGTH_DELIMITED);
+		this.varint(bytes.length);
+		this.raw(bytes, 0, bytes.length);
+		return this;
+	}
+
+	public ProtoEncoder message(int field, ProtoEncoder message) {
+		this.tag(field, WIRE_LENGTH_DELIMITED);
+		this.varint(message.size);
+		this.raw(message.buffer, 0, message.size);
+		return this;
+	}
+
+	/**
+	 * Write the encoded message prefixed with its length, the way delimited
+	 * protocol buffer streams are framed.
+	 */
+	public void writeDelimitedTo(OutputStream out) throws IOException {
+		ProtoEncoder prefix = new ProtoEncoder(5);
+		prefix.varint(this.size);
+		out.write(prefix.buffer, 0, prefix.size);
+		out.write(this.buffer, 0, this.size);
+	}
+
+	private void tag(int field, int wireType) {
+		this.varint((field << 3) | wireType);
+	}
+
+	private void varint(long value) {
+		this.ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			this.buffer[this.size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.size++] = (byte) value;
+	}
+
+	private void raw(byte[] bytes, int offset, int length) {
+		this.ensure(length);
+		System.arraycopy(bytes, offset, this.buffer, this.size, length);
+		this.size += length;
+	}
+
+	private void ensure(int extra) {
+		if (this.size + extra > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + extra));
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.github.johrstrom.collector.Exemplar;
+import com.github.johrstrom.collector.LogHistogram;
+import com.github.johrstrom.collector.MetricWriter;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Writes the delimited protocol buffer format of the
+ * <code>io.prometheus.client.MetricFamily</code> message, which is cheaper
+ * for Prometheus to parse than the text formats.
+ *
+ * Every family is encoded into a reused buffer and written to the stream once
+ * complete, so no more than one family is held in memory.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ProtobufWriter implements MetricWriter {
+
+	public static final String CONTENT_TYPE = "application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; encoding=delimited";
+
+	// MetricFamily
+	private static final int FAMILY_NAME = 1, FAMILY_HELP = 2, FAMILY_TYPE = 3, FAMILY_METRIC = 4;
+	// MetricType
+	private static final int TYPE_COUNTER = 0, TYPE_GAUGE = 1, TYPE_SUMMARY = 2, TYPE_UNTYPED = 3,
+			TYPE_HISTOGRAM = 4;
+	// Metric
+	private static final int METRIC_LABEL = 1, METRIC_GAUGE = 2, METRIC_COUNTER = 3, METRIC_SUMMARY = 4,
+			METRIC_UNTYPED = 5, METRIC_HISTOGRAM = 7;
+	// LabelPair
+	private static final int LABEL_NAME = 1, LABEL_VALUE = 2;
+	// Gauge, Counter, Untyped
+	private static final int VALUE = 1;
+	// Summary
+	private static final int SUMMARY_COUNT = 1, SUMMARY_SUM = 2, SUMMARY_QUANTILE = 3;
+	// Quantile
+	private static final int QUANTILE_QUANTILE = 1, QUANTILE_VALUE = 2;
+	// Histogram
+	private static final int HISTOGRAM_COUNT = 1, HISTOGRAM_SUM = 2, HISTOGRAM_BUCKET = 3, HISTOGRAM_SCHEMA = 5,
+			HISTOGRAM_ZERO_THRESHOLD = 6, HISTOGRAM_ZERO_COUNT = 7, HISTOGRAM_POSITIVE_SPAN = 12,
+			HISTOGRAM_POSITIVE_DELTA = 13;
+	// BucketSpan
+	private static final int SPAN_OFFSET = 1, SPAN_LENGTH = 2;
+	// Bucket
+	private static final int BUCKET_COUNT = 1, BUCKET_UPPER_BOUND = 2;
+
+	private final OutputStream out;
+
+	private final ProtoEncoder family = new ProtoEncoder(4096);
+	private final ProtoEncoder metric = new ProtoEncoder();
+	private final ProtoEncoder value = new ProtoEncoder();
+	private final ProtoEncoder element = new ProtoEncoder();
+
+	public ProtobufWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#startFamily(java.lang.
+	 * String, io.prometheus.client.Collector.Type, java.lang.String)
+	 */
+	@Override
+	public void startFamily(String name, Collector.Type type, String help) throws IOException {
+		this.family.reset();
+		this.family.string(FAMILY_NAME, name);
+		this.family.string(FAMILY_HELP, help);
+		this.family.enumeration(FAMILY_TYPE, typeNumber(type));
+	}
+
+	@Override
+	public void counter(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.value.reset().float64(VALUE, value);
+		this.metric(labelNames, labelValues, METRIC_COUNTER);
+	}
+
+	@Override
+	public void gauge(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.value.reset().float64(VALUE, value);
+		this.metric(labelNames, labelValues, METRIC_GAUGE);
+	}
+
+	@Override
+	public void untyped(List<String> labelNames, List<String> labelValues, double value) throws IOException {
+		this.value.reset().float64(VALUE, value);
+		this.metric(labelNames, labelValues, METRIC_UNTYPED);
+	}
+
+	@Override
+	public void summary(List<String> labelNames, List<String> labelValues, double[] quantiles, double[] values,
+			double count, double sum) throws IOException {
+		this.value.reset();
+		this.value.uint64(SUMMARY_COUNT, (long) count);
+		this.value.float64(SUMMARY_SUM, sum);
+		for (int i = 0; i < quantiles.length; i++) {
+			this.element.reset();
+			this.element.float64(QUANTILE_QUANTILE, quantiles[i]);
+			this.element.float64(QUANTILE_VALUE, values[i]);
+			this.value.message(SUMMARY_QUANTILE, this.element);
+		}
+		this.metric(labelNames, labelValues, METRIC_SUMMARY);
+	}
+
+	/**
+	 * Bucket exemplars aren't encoded, they're dropped.
+	 */
+	@Override
+	public void histogram(List<String> labelNames, List<String> labelValues, double[] upperBounds,
+			double[] cumulativeCounts, double sum, Exemplar[] exemplars) throws IOException {
+		double count = cumulativeCounts.length == 0 ? 0 : cumulativeCounts[cumulativeCounts.length - 1];
+
+		this.value.reset();
+		this.value.uint64(HISTOGRAM_COUNT, (long) count);
+		this.value.float64(HISTOGRAM_SUM, sum);
+		for (int i = 0; i < upperBounds.length; i++) {
+			this.element.reset();
+			this.element.uint64(BUCKET_COUNT, (long) cumulativeCounts[i]);
+			this.element.float64(BUCKET_UPPER_BOUND, upperBounds[i]);
+			this.value.message(HISTOGRAM_BUCKET, this.element);
+		}
+		this.metric(labelNames, labelValues, METRIC_HISTOGRAM);
+	}
+
+	/**
+	 * Writes the sparse buckets as spans of consecutive populated buckets and
+	 * the delta of every bucket count to the previous one. The classic buckets
+	 * are written as well, for servers that don't ingest native histograms.
+	 * Exemplars are dropped like those of the classic buckets.
+	 */
+	@Override
+	public void nativeHistogram(List<String> labelNames, List<String> labelValues, long[] counts, double sum,
+			Exemplar[] exemplars) throws IOException {
+		double[] cumulativeCounts = LogHistogram.classicCounts(counts);
+
+		this.value.reset();
+		this.value.uint64(HISTOGRAM_COUNT, (long) cumulativeCounts[cumulativeCounts.length - 1]);
+		this.value.float64(HISTOGRAM_SUM, sum);
+		for (int i = 0; i < LogHistogram.CLASSIC_BOUNDS.length; i++) {
+			this.element.reset();
+			this.element.uint64(BUCKET_COUNT, (long) cumulativeCounts[i]);
+			this.element.float64(BUCKET_UPPER_BOUND, LogHistogram.CLASSIC_BOUNDS[i]);
+			this.value.message(HISTOGRAM_BUCKET, this.element);
+		}
+
+		this.value.sint(HISTOGRAM_SCHEMA, LogHistogram.SCHEMA);
+		this.value.float64(HISTOGRAM_ZERO_THRESHOLD, LogHistogram.ZERO_THRESHOLD);
+		this.value.uint64(HISTOGRAM_ZERO_COUNT, counts[0]);
+
+		// spans first, the deltas follow in a second pass
+		int spans = 0;
+		int previousEnd = 0;
+		for (int i = 1; i < counts.length;) {
+			if (counts[i] == 0) {
+				i++;
+				continue;
+			}
+
+			int start = i;
+			while (i < counts.length && counts[i] != 0) {
+				i++;
+			}
+
+			int index = start - 1 + LogHistogram.MIN_INDEX;
+			this.element.reset();
+			this.element.sint(SPAN_OFFSET, spans == 0 ? index : index - previousEnd);
+			this.element.uint64(SPAN_LENGTH, i - start);
+			this.value.message(HISTOGRAM_POSITIVE_SPAN, this.element);
+			previousEnd = index + (i - start);
+			spans++;
+		}
+
+		if (spans == 0) {
+			// an empty span tells the server this is a native histogram
+			this.element.reset();
+			this.value.message(HISTOGRAM_POSITIVE_SPAN, this.element);
+		}
+
+		long previous = 0;
+		for (int i = 1; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				this.value.sint(HISTOGRAM_POSITIVE_DELTA, counts[i] - previous);
+				previous = counts[i];
+			}
+		}
+
+		this.metric(labelNames, labelValues, METRIC_HISTOGRAM);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#endFamily()
+	 */
+	@Override
+	public void endFamily() throws IOException {
+		this.family.writeDelimitedTo(this.out);
+		this.family.reset();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#finish()
+	 */
+	@Override
+	public void finish() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * Wrap the encoded value with the labels into a Metric and append it to
+	 * the current family.
+	 */
+	private void metric(List<String> labelNames, List<String> labelValues, int valueField) {
+		this.metric.reset();
+		for (int i = 0; i < labelNames.size(); i++) {
+			this.element.reset();
+			this.element.string(LABEL_NAME, labelNames.get(i));
+			this.element.string(LABEL_VALUE, labelValues.get(i));
+			this.metric.message(METRIC_LABEL, this.element);
+		}
+		this.metric.message(valueField, this.value);
+		this.family.message(FAMILY_METRIC, this.metric);
+	}
+
+	private static int typeNumber(Collector.Type type) {
+		switch (type) {
+		case COUNTER:
+			return TYPE_COUNTER;
+		case GAUGE:
+			return TYPE_GAUGE;
+		case SUMMARY:
+			return TYPE_SUMMARY;
+		case HISTOGRAM:
+			return TYPE_HISTOGRAM;
+		default:
+			return TYPE_UNTYPED;
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.github.johrstrom.exposition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.johrstrom.collector.ExemplarSource;
+import com.github.johrstrom.collector.MetricWriter;
+import com.github.johrstrom.collector.StreamingCollector;
+
+/**
+ * Keeps the encoded exposition of every format for a short while, so scrapers
+ * that arrive together (an HA pair of Prometheus servers, an agent next to
+ * them) share a single collection pass instead of each computing every
+ * quantile and serializing the registry again.
+ *
+ * Scrapes are single-flight: the first scraper that finds the cached scrape
+ * of its format expired encodes a new one and every scraper arriving in the
+ * meantime waits for that one instead of starting its own. A scrape expires
+ * its time to live after it was encoded, so with a time to live of 0 only
+ * scrapers that arrive while one is in flight share it.
+ *
+ * With a parallelism above 1, the {@link ExpositionRegistry#parts()} are
+ * encoded into separate buffers on a pool of that many threads and stitched
+ * together in order. The pool is the only place scrapes run concurrently, so
+ * a scrape never takes more cores than that from the sampler threads.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ScrapeCache {
+
+	private final ExpositionRegistry registry;
+	private final ExemplarSource exemplars;
+	private final long ttlNanos;
+	private final ForkJoinPool pool;
+
+	// filled in the constructor and only read afterwards
+	private final Map<ExpositionFormat, AtomicReference<Scrape>> scrapes = new EnumMap<>(ExpositionFormat.class);
+
+	/**
+	 * @param registry
+	 *            - the registry to encode
+	 * @param exemplars
+	 *            - where to look exemplars up
+	 * @param ttlMillis
+	 *            - how long an encoded scrape is served, in milliseconds
+	 * @param parallelism
+	 *            - the number of threads encoding a scrape, 1 to encode on the
+	 *            scraping thread
+	 */
+	public ScrapeCache(ExpositionRegistry registry, ExemplarSource exemplars, long ttlMillis, int parallelism) {
+		this.registry = registry;
+		this.exemplars = exemplars;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis));
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("prometheus-scrape-" + t.getPoolIndex());
+			return t;
+		}, null, false) : null;
+
+		for (ExpositionFormat format : ExpositionFormat.values()) {
+			this.scrapes.put(format, new AtomicReference<>());
+		}
+	}
+
+	/**
+	 * Get a scrape of the registry in a format, either one that is cached or
+	 * in flight, or a new one encoded on the calling thread.
+	 *
+	 * @param format
+	 *            - the exposition format
+	 * @return the encoded scrape
+	 * @throws IOException
+	 *             if encoding the scrape failed
+	 */
+	public Scrape get(ExpositionFormat format) throws IOException {
+		AtomicReference<Scrape> ref = this.scrapes.get(format);
+
+		while (true) {
+			Scrape current = ref.get();
+			if (current != null && !current.isExpired(System.nanoTime())) {
+				return current.await();
+			}
+
+			Scrape next = new Scrape();
+			if (ref.compareAndSet(current, next)) {
+				next.encode(format);
+				return next.await();
+			}
+			// another scraper won, wait for its scrape on the next turn
+		}
+	}
+
+	/**
+	 * Stop the threads encoding scrapes in parallel, if any.
+	 */
+	public void close() {
+		if (this.pool != null) {
+			this.pool.shutdownNow();
+		}
+	}
+
+	private void encode(ExpositionFormat format, OutputStream out) throws IOException {
+		if (this.pool == null) {
+			MetricWriter writer = format.newWriter(out);
+			this.registry.write(writer, this.exemplars);
+			writer.finish();
+			return;
+		}
+
+		List<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+		for (StreamingCollector part : this.registry.parts()) {
+			tasks.add(this.pool.submit(() -> {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+				MetricWriter writer = format.newWriter(buffer);
+				part.write(writer, this.exemplars);
+				writer.flush();
+				return buffer.toByteArray();
+			}));
+		}
+
+		try {
+			for (ForkJoinTask<byte[]> task : tasks) {
+				out.write(task.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while encoding a scrape");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IOException("Couldn't encode a scrape", e.getCause());
+		} finally {
+			for (ForkJoinTask<byte[]> task : tasks) {
+				task.cancel(false);
+			}
+		}
+
+		// whatever the format needs after the last family
+		format.newWriter(out).finish();
+	}
+
+	/**
+	 * One encoded exposition, possibly still in flight.
+	 */
+	public class Scrape {
+
+		private final CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+
+		// an in flight scrape never expires
+		private volatile long expiresAt = Long.MAX_VALUE;
+		private volatile byte[] gzipped;
+
+		private void encode(ExpositionFormat format) {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+				ScrapeCache.this.encode(format, out);
+
+				this.expiresAt = System.nanoTime() + ScrapeCache.this.ttlNanos;
+				this.bytes.complete(out.toByteArray());
+			} catch (Throwable e) {
+				// don't serve the failure to later scrapers, and don't leave
+				// the ones waiting for it blocked even on an Error
+				this.expiresAt = System.nanoTime();
+				this.bytes.completeExceptionally(e);
+				if (e instanceof Error) {
+					throw (Error) e;
+				}
+			}
+		}
+
+		private boolean isExpired(long now) {
+			return now - this.expiresAt >= 0;
+		}
+
+		private Scrape await() throws IOException {
+			try {
+				this.bytes.join();
+				return this;
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the encoded exposition
+		 */
+		public byte[] getBytes() {
+			return this.bytes.join();
+		}
+
+		/**
+		 * @return the encoded exposition compressed with gzip, compressed once
+		 *         by the first scraper that asks for it
+		 */
+		public byte[] getGzipped() {
+			byte[] compressed = this.gzipped;
+			if (compressed == null) {
+				synchronized (this) {
+					compressed = this.gzipped;
+					if (compressed == null) {
+						compressed = gzip(this.getBytes());
+						this.gzipped = compressed;
+					}
+				}
+			}
+			return compressed;
+		}
+
+	}
+
+	private static byte[] gzip(byte[] bytes) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		} catch (IOException e) {
+			// a ByteArrayOutputStream doesn't throw
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+}
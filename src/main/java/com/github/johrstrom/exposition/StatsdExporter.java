@@ -0,0 +1,307 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.johrstrom.collector.LogHistogram;
+import com.github.johrstrom.collector.SeriesStore;
+import com.github.johrstrom.collector.SeriesView;
+import com.github.johrstrom.collector.Timing;
+
+/**
+ * Sends the series the sampler collector aggregates to a StatsD server, so a
+ * StatsD backend doesn't need a second listener that extracts the labels of
+ * every sample again. Once per interval, a background thread sends for every
+ * series that saw samples since the last flush:
+ * <ul>
+ * <li><code>jmeter.samples.count</code>, <code>.errors</code> and
+ * <code>.bytes</code> as counters of the interval.</li>
+ * <li><code>jmeter.samples.duration.avg</code>, <code>.p50</code> and
+ * <code>.p99</code> in milliseconds as gauges, from the difference of the
+ * duration histogram since the last flush.</li>
+ * </ul>
+ *
+ * Labels are DogStatsD tags, or appended to the metric name for plain StatsD,
+ * sanitized the same way either way. An empty label value is sent as
+ * {@value #EMPTY_LABEL_VALUE} in the metric name, so it can't leave an empty
+ * segment.
+ * Lines are batched into datagrams of at most {@link #DEFAULT_PACKET_SIZE}
+ * bytes in a single direct buffer that is reused for every datagram.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class StatsdExporter {
+
+	private static final Logger log = LoggerFactory.getLogger(StatsdExporter.class);
+
+	/** fits into the payload of an ethernet frame along with the headers */
+	public static final int DEFAULT_PACKET_SIZE = 1432;
+
+	/** stands in for an empty label value in the metric name */
+	public static final String EMPTY_LABEL_VALUE = "none";
+
+	private static final String PREFIX = "jmeter.samples.";
+	private static final double[] QUANTILES = new double[] { 0.5, 0.99 };
+	private static final String[] QUANTILE_NAMES = new String[] { "p50", "p99" };
+
+	private final SeriesStore store;
+	private final List<String> labelNames;
+	private final InetSocketAddress address;
+	private final long intervalMillis;
+	private final boolean tags;
+
+	// only touched by the flushing thread
+	private final Map<List<String>, Flushed> flushed = new HashMap<>();
+	private final ByteBuffer packet;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final StringBuilder line = new StringBuilder(256);
+	private final long[] counts = LogHistogram.newCounts();
+	private DatagramChannel channel;
+
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * @param store
+	 *            - the series to send
+	 * @param labelNames
+	 *            - the label names of the series
+	 * @param host
+	 *            - the host of the StatsD server
+	 * @param port
+	 *            - the port of the StatsD server
+	 * @param intervalMillis
+	 *            - how often to flush, in milliseconds
+	 * @param tags
+	 *            - whether to send labels as DogStatsD tags
+	 */
+	public StatsdExporter(SeriesStore store, String[] labelNames, String host, int port, long intervalMillis,
+			boolean tags) {
+		this.store = store;
+		this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+		this.address = new InetSocketAddress(host, port);
+		this.intervalMillis = Math.max(1, intervalMillis);
+		this.tags = tags;
+		this.packet = ByteBuffer.allocateDirect(DEFAULT_PACKET_SIZE);
+	}
+
+	/**
+	 * Open the channel and start flushing.
+	 *
+	 * @throws IOException
+	 *             if the channel can't be opened
+	 */
+	public synchronized void start() throws IOException {
+		if (this.flusher != null) {
+			return;
+		}
+
+		this.channel = DatagramChannel.open();
+		this.channel.connect(this.address);
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-statsd");
+			t.setDaemon(true);
+			return t;
+		});
+		this.flusher.scheduleWithFixedDelay(() -> {
+			try {
+				this.flush();
+			} catch (Exception e) {
+				log.error("Couldn't flush to StatsD at " + this.address, e);
+			}
+		}, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop flushing after a final flush and close the channel.
+	 */
+	public void stop() {
+		ScheduledExecutorService flusher;
+		synchronized (this) {
+			flusher = this.flusher;
+			this.flusher = null;
+		}
+		if (flusher == null) {
+			return;
+		}
+
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(this.intervalMillis + 1000, TimeUnit.MILLISECONDS);
+			this.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.error("Couldn't flush to StatsD at " + this.address, e);
+		}
+
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			log.warn("Couldn't close the StatsD channel.", e);
+		}
+	}
+
+	/**
+	 * Send what every series saw since the last flush.
+	 */
+	synchronized void flush() throws IOException {
+		for (SeriesView s : this.store.snapshot()) {
+			Flushed last = this.flushed.get(s.getLabelValues());
+			if (last == null) {
+				last = new Flushed();
+				this.flushed.put(s.getLabelValues(), last);
+			}
+
+			long count = s.getCount();
+			if (count == last.count) {
+				continue;
+			}
+
+			long sum = s.getSumMillis(Timing.DURATION);
+			this.counter("count", s, count - last.count);
+			this.counter("errors", s, s.getErrors() - last.errors);
+			this.counter("bytes", s, s.getBytes() - last.bytes);
+			this.gauge("duration.avg", s, (sum - last.sum) / (double) (count - last.count));
+
+			Arrays.fill(this.counts, 0);
+			s.addTo(Timing.DURATION, this.counts);
+			long[] delta = last.counts;
+			for (int i = 0; i < delta.length; i++) {
+				long current = this.counts[i];
+				this.counts[i] -= delta[i];
+				delta[i] = current;
+			}
+
+			// sampled histograms may not have seen any of the new samples
+			if (LogHistogram.count(this.counts) > 0) {
+				for (int q = 0; q < QUANTILES.length; q++) {
+					this.gauge("duration." + QUANTILE_NAMES[q], s, LogHistogram.quantile(this.counts, QUANTILES[q]) * 1000);
+				}
+			}
+
+			last.count = count;
+			last.errors = s.getErrors();
+			last.bytes = s.getBytes();
+			last.sum = sum;
+		}
+
+		this.send();
+	}
+
+	private void counter(String name, SeriesView s, long value) throws IOException {
+		this.startLine(name, s).append(value);
+		this.write(s, "c");
+	}
+
+	private void gauge(String name, SeriesView s, double value) throws IOException {
+		this.startLine(name, s).append(Math.round(value * 1000) / 1000.0);
+		this.write(s, "g");
+	}
+
+	/**
+	 * Start a line with the metric name, up to the value.
+	 */
+	private StringBuilder startLine(String name, SeriesView s) {
+		this.line.setLength(0);
+		this.line.append(PREFIX).append(name);
+		if (!this.tags) {
+			for (String labelValue : s.getLabelValues()) {
+				sanitize(this.line.append('.'), labelValue.isEmpty() ? EMPTY_LABEL_VALUE : labelValue);
+			}
+		}
+		return this.line.append(':');
+	}
+
+	/**
+	 * Complete the line holding the value and append it to the packet,
+	 * sending the packet first if the line doesn't fit anymore.
+	 */
+	private void write(SeriesView s, String type) throws IOException {
+		this.line.append('|').append(type);
+		if (this.tags && !this.labelNames.isEmpty()) {
+			this.line.append("|#");
+			for (int i = 0; i < this.labelNames.size(); i++) {
+				this.line.append(i == 0 ? "" : ",").append(this.labelNames.get(i)).append(':');
+				sanitize(this.line, s.getLabelValues().get(i));
+			}
+		}
+
+		int mark = this.packet.position();
+		CoderResult result = CoderResult.OVERFLOW;
+		if (mark == 0 || this.packet.hasRemaining()) {
+			if (mark > 0) {
+				this.packet.put((byte) '\n');
+			}
+			result = this.encoder.reset().encode(CharBuffer.wrap(this.line), this.packet, true);
+		}
+		if (result.isOverflow() && mark > 0) {
+			// drop the separator and whatever of the line was encoded
+			this.packet.position(mark);
+			this.send();
+			result = this.encoder.reset().encode(CharBuffer.wrap(this.line), this.packet, true);
+		}
+
+		if (result.isOverflow()) {
+			log.warn("Dropping a StatsD line that doesn't fit into a packet: {}", this.line);
+			this.packet.clear();
+		}
+	}
+
+	private void send() throws IOException {
+		if (this.packet.position() == 0) {
+			return;
+		}
+
+		this.packet.flip();
+		try {
+			this.channel.write(this.packet);
+		} catch (IOException e) {
+			// StatsD is fire and forget, e.g. nobody listening yet
+			log.debug("Couldn't send a StatsD packet: {}", e.getMessage());
+		}
+		this.packet.clear();
+	}
+
+	/**
+	 * Append a label value with everything but letters, digits, dashes and
+	 * underscores replaced, so it can't break the line, e.g. with a new line
+	 * or one of the separators.
+	 */
+	private static StringBuilder sanitize(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+		}
+		return sb;
+	}
+
+	/**
+	 * What was sent for a series at the last flush.
+	 */
+	private static class Flushed {
+
+		long count, errors, bytes, sum;
+		final long[] counts = LogHistogram.newCounts();
+
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.github.johrstrom.exposition;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import io.prometheus.client.Collector;
+
+/**
+ * Writes the Prometheus text format 0.0.4, the same format
+ * {@link io.prometheus.client.exporter.common.TextFormat} writes.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class TextFormatWriter extends AbstractTextWriter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	public TextFormatWriter(Writer writer) {
+		super(writer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.github.johrstrom.collector.MetricWriter#startFamily(java.lang.
+	 * String, io.prometheus.client.Collector.Type, java.lang.String)
+	 */
+	@Override
+	public void startFamily(String name, Collector.Type type, String help) throws IOException {
+		this.familyName = name;
+
+		this.writer.write("# HELP ");
+		this.writer.write(name);
+		this.writer.write(' ');
+		this.escape(help, false);
+		this.writer.write('\n');
+
+		this.writer.write("# TYPE ");
+		this.writer.write(name);
+		this.writer.write(' ');
+		this.writer.write(typeName(type));
+		this.writer.write('\n');
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.github.johrstrom.listener;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.jmeter.samplers.SampleEvent;
+
+/**
+ * What changed between the configuration the listener's collectors were built
+ * from and a new one, so {@link PrometheusListener} only rebuilds the parts
+ * that are affected and keeps the series of the others.
+ *
+ * Every {@link Part} has a key, the values of the configuration it is built
+ * from. A part changed if its key did, or if a part it depends on changed,
+ * e.g. new sampler labels change the label names of every sampler family.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class ConfigDiff {
+
+	/**
+	 * The parts of the listener that are built from the configuration.
+	 */
+	public enum Part {
+		/**
+		 * the normalization rules and the failure classifier, shared by the
+		 * sampler and assertion labels
+		 */
+		NORMALIZERS,
+		/** the sampler label names and how their values are normalized */
+		LABELS,
+		/** the sampler collector and its series */
+		SAMPLER,
+		EXEMPLARS,
+		STATSD,
+		WINDOW,
+		APDEX,
+		/** the comparison of the sampler series with a baseline */
+		BASELINE,
+		ASSERTIONS,
+		THREADS,
+		FILTER
+	}
+
+	private final Map<Part, List<Object>> keys;
+	private final Set<Part> changed;
+
+	private ConfigDiff(Map<Part, List<Object>> keys, Set<Part> changed) {
+		this.keys = keys;
+		this.changed = changed;
+	}
+
+	/**
+	 * Compare a configuration to the one of a previous diff.
+	 *
+	 * @param previous
+	 *            - the diff the current collectors were built from, null if
+	 *            there are none yet
+	 * @param config
+	 *            - the new configuration
+	 * @return the diff, with every part changed if there was no previous one
+	 */
+	public static ConfigDiff between(ConfigDiff previous, PrometheusSaveConfig config) {
+		Map<Part, List<Object>> keys = keys(config);
+		Set<Part> changed = EnumSet.noneOf(Part.class);
+
+		for (Part part : Part.values()) {
+			if (previous == null || !Objects.equals(previous.keys.get(part), keys.get(part))) {
+				changed.add(part);
+			}
+		}
+
+		// both label configurations refer to the shared normalizers
+		if (changed.contains(Part.NORMALIZERS)) {
+			changed.addAll(EnumSet.of(Part.LABELS, Part.ASSERTIONS));
+		}
+		// the label names are part of every sampler family
+		if (changed.contains(Part.LABELS)) {
+			changed.addAll(EnumSet.of(Part.SAMPLER, Part.EXEMPLARS, Part.STATSD, Part.WINDOW, Part.APDEX,
+					Part.BASELINE));
+		}
+		// StatsD and the baseline read the series of the sampler collector
+		if (changed.contains(Part.SAMPLER)) {
+			changed.addAll(EnumSet.of(Part.STATSD, Part.BASELINE));
+		}
+
+		return new ConfigDiff(keys, changed);
+	}
+
+	private static Map<Part, List<Object>> keys(PrometheusSaveConfig c) {
+		Map<Part, List<Object>> keys = new EnumMap<>(Part.class);
+		int vars = SampleEvent.getVarCount();
+
+		keys.put(Part.NORMALIZERS, Arrays.<Object> asList(c.codeClasses(), c.getCodeRules(), c.getLabelRules(),
+				c.getFailureReasonClasses()));
+		keys.put(Part.LABELS, Arrays.asList(c.saveLabel(), c.saveCode(), c.saveSuccess(), c.saveThreadGroup(),
+				c.saveController(), c.saveFailureReasons(), vars));
+		keys.put(Part.SAMPLER, Arrays.asList(c.getEngine(), c.getHiddenFamilies(), c.adaptiveSampling(),
+				c.getAdaptiveBudget(), c.offHeap(), c.correction(), c.learnIntervals(), c.getIntervalRules(),
+				c.saveStatsd(), c.getBaselineFile().isEmpty() && c.getBaselineSaveFile().isEmpty()));
+		keys.put(Part.EXEMPLARS, Arrays.asList(c.saveExemplars(), c.getEngine(), c.getExemplarSize(),
+				c.getExemplarVariable(), c.getExemplarInterval()));
+		keys.put(Part.STATSD, Arrays.asList(c.saveStatsd(), c.getStatsdHost(), c.getStatsdPort(),
+				c.getStatsdInterval(), c.statsdTags()));
+		keys.put(Part.WINDOW, Arrays.asList(c.getWindowSeconds(), c.getWindowBuckets()));
+		keys.put(Part.APDEX, Arrays.asList(c.saveApdex(), c.getApdexThreshold(), c.getSloThresholds()));
+		keys.put(Part.BASELINE, Arrays.<Object> asList(c.getBaselineFile(), c.getBaselineInterval()));
+		keys.put(Part.ASSERTIONS, Arrays.asList(c.saveAssertions(), c.getAssertionClass(), c.getEngine(),
+				c.saveFailureReasons(), vars));
+		keys.put(Part.THREADS, Arrays.<Object> asList(c.saveThreads()));
+		keys.put(Part.FILTER, Arrays.<Object> asList(c.getFilterRules()));
+
+		return keys;
+	}
+
+	/**
+	 * @param part
+	 *            - a part of the listener
+	 * @return true if the part has to be rebuilt
+	 */
+	public boolean changed(Part part) {
+		return this.changed.contains(part);
+	}
+
+	/**
+	 * @return true if nothing has to be rebuilt
+	 */
+	public boolean isEmpty() {
+		return this.changed.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{changed: " + this.changed + "}";
+	}
+
+}
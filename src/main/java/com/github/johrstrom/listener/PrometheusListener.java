@@ -18,9 +18,17 @@
  */
 package com.github.johrstrom.listener;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jmeter.assertions.AssertionResult;
 import org.apache.jmeter.engine.util.NoThreadClone;
@@ -36,14 +44,42 @@ import org.eclipse.jetty.servlet.ServletHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.johrstrom.collector.ApdexCollector;
+import com.github.johrstrom.collector.Baseline;
+import com.github.johrstrom.collector.BaselineCollector;
+import com.github.johrstrom.collector.Engine;
+import com.github.johrstrom.collector.Exemplar;
+import com.github.johrstrom.collector.ExemplarStore;
+import com.github.johrstrom.collector.ExpectedIntervals;
+import com.github.johrstrom.collector.HeapSeriesStore;
+import com.github.johrstrom.collector.LogHistogram;
+import com.github.johrstrom.collector.OffHeapSeriesStore;
+import com.github.johrstrom.collector.SamplerCollector;
+import com.github.johrstrom.collector.SeriesCollector;
+import com.github.johrstrom.collector.SeriesHistogramCollector;
+import com.github.johrstrom.collector.SeriesStore;
+import com.github.johrstrom.collector.SeriesSummaryCollector;
+import com.github.johrstrom.collector.StreamingCollector;
+import com.github.johrstrom.collector.SummarySamplerCollector;
+import com.github.johrstrom.collector.WindowedDurationCollector;
+import com.github.johrstrom.exposition.ExpositionRegistry;
+import com.github.johrstrom.exposition.ExpositionServlet;
+import com.github.johrstrom.exposition.MappedFileExporter;
+import com.github.johrstrom.exposition.StatsdExporter;
+import com.github.johrstrom.listener.ConfigDiff.Part;
 import com.github.johrstrom.util.CollectorConfig;
+import com.github.johrstrom.util.FailureClassifier;
+import com.github.johrstrom.util.LabelNormalizer;
+import com.github.johrstrom.util.SampleFilter;
+import com.github.johrstrom.util.SamplerContext;
+import com.github.johrstrom.util.SamplerContextResolver;
 
 import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import io.prometheus.client.Summary;
-import io.prometheus.client.exporter.MetricsServlet;
 
 /**
  * The main test element listener class of this library. Jmeter updates this
@@ -65,11 +101,25 @@ public class PrometheusListener extends AbstractListenerElement
 
 	private static final Logger log = LoggerFactory.getLogger(PrometheusListener.class);
 
+	// the copies of the listeners JMeter runs the test with, the GUI only
+	// edits their originals
+	private static final List<PrometheusListener> running = new CopyOnWriteArrayList<>();
+
+	// the element of the test plan this one was cloned from, if any
+	private transient PrometheusListener original;
+
 	private transient Server server;
+	private transient MappedFileExporter mappedFileExporter;
 
 	// Samplers
-	private transient Summary samplerCollector;
-	private transient Summary samplerElaspedTimeCollector, samplerLatencyCollector, samplerIdleTimeCollector, samplerConnectTimeCollector;
+	private transient SamplerCollector samplerCollector;
+	private transient volatile SeriesStore seriesStore;
+	private transient volatile ExemplarStore exemplarStore;
+	private transient StatsdExporter statsdExporter;
+	private transient ApdexCollector apdexCollector;
+	private transient WindowedDurationCollector windowCollector;
+	private transient BaselineCollector baselineCollector;
+	private transient long testStartMillis;
 	private CollectorConfig samplerConfig = new CollectorConfig();
 	private boolean collectSamples = true;
 
@@ -82,6 +132,28 @@ public class PrometheusListener extends AbstractListenerElement
 	private CollectorConfig assertionConfig = new CollectorConfig();
 	private boolean collectAssertions = true;
 
+	// Label value normalization
+	private transient LabelNormalizer codeNormalizer = LabelNormalizer.IDENTITY;
+	private transient LabelNormalizer labelNormalizer = LabelNormalizer.IDENTITY;
+	private transient FailureClassifier failureClassifier;
+	private transient SamplerContextResolver contextResolver = new SamplerContextResolver();
+
+	// what the collectors were last built from
+	private transient ConfigDiff appliedConfig;
+
+	// whether parts rebuilt by reconfigure() have to be started
+	private transient volatile boolean testRunning;
+
+	// Samples to account for at all
+	private transient SampleFilter sampleFilter = SampleFilter.ALL;
+
+	// what samples are observed with, the fields above are only touched by
+	// reconfigure() and the test state callbacks
+	private transient volatile Observers observers = Observers.NONE;
+
+	// samples an exception kept from being observed
+	private final transient LongAdder failedSamples = new LongAdder();
+
 	/**
 	 * Default Constructor.
 	 */
@@ -108,40 +180,57 @@ public class PrometheusListener extends AbstractListenerElement
 	 * jmeter.samplers.SampleEvent)
 	 */
 	public void sampleOccurred(SampleEvent event) {
+		// read once, reconfigure() replaces them all at once meanwhile
+		Observers o = this.observers;
 
 		try {
 
+			// filtered samples are dropped before any label work
+			if (!o.sampleFilter.includes(event)) {
+				return;
+			}
+
 			// build the label values from the event and observe the sampler
 			// metrics
-			String[] samplerLabelValues = this.labelValues(event);
-			if (collectSamples) {
-				samplerCollector.labels(samplerLabelValues).observe(event.getResult().getTime());
-				// Prometheus metrics naming, base unit is Seconds
-				samplerElaspedTimeCollector.labels(samplerLabelValues).observe(event.getResult().getTime() / 1000.0);
-				samplerLatencyCollector.labels(samplerLabelValues).observe(event.getResult().getLatency() / 1000.0);
-				samplerIdleTimeCollector.labels(samplerLabelValues).observe(event.getResult().getIdleTime() / 1000.0);
-				samplerConnectTimeCollector.labels(samplerLabelValues).observe(event.getResult().getConnectTime() / 1000.0);
+			String[] samplerLabelValues = this.labelValues(o, event);
+			if (o.samplerCollector != null) {
+				o.samplerCollector.observe(samplerLabelValues, event.getResult());
+			}
+
+			if (o.windowCollector != null) {
+				o.windowCollector.observe(samplerLabelValues, event.getResult());
+			}
+
+			if (o.apdexCollector != null) {
+				o.apdexCollector.observe(samplerLabelValues, event.getResult());
+			}
+
+			if (o.exemplarStore != null) {
+				o.exemplarStore.offer(samplerLabelValues, event.getResult());
 			}
 
-			if (collectThreads) {
-				threadCollector.set(JMeterContextService.getContext().getThreadGroup().getNumberOfThreads());
+			if (o.threadCollector != null) {
+				o.threadCollector.set(JMeterContextService.getContext().getThreadGroup().getNumberOfThreads());
 			}
 
 			// if there are any assertions to
-			if (collectAssertions) {
+			if (o.assertionsCollector != null) {
 				if (event.getResult().getAssertionResults().length > 0) {
 					for (AssertionResult assertionResult : event.getResult().getAssertionResults()) {
-						String[] assertionsLabelValues = this.labelValues(event, assertionResult);
+						String[] assertionsLabelValues = this.labelValues(o, event, assertionResult);
 						
-						if(assertionsCollector instanceof Summary)
-							((Summary) assertionsCollector).labels(assertionsLabelValues).observe(event.getResult().getTime());
-						else if (assertionsCollector instanceof Counter)
-							((Counter) assertionsCollector).labels(assertionsLabelValues).inc();
+						if(o.assertionsCollector instanceof Summary)
+							((Summary) o.assertionsCollector).labels(assertionsLabelValues).observe(event.getResult().getTime());
+						else if (o.assertionsCollector instanceof Histogram)
+							((Histogram) o.assertionsCollector).labels(assertionsLabelValues).observe(event.getResult().getTime());
+						else if (o.assertionsCollector instanceof Counter)
+							((Counter) o.assertionsCollector).labels(assertionsLabelValues).inc();
 					}
 				}
 			}
 
 		} catch (Exception e) {
+			this.failedSamples.increment();
 			log.error("Didn't update metric because of exception. Message was: {}", e.getMessage());
 		}
 	}
@@ -173,11 +262,39 @@ public class PrometheusListener extends AbstractListenerElement
 	 * 
 	 * @see org.apache.jmeter.testelement.TestStateListener#testEnded()
 	 */
-	public void testEnded() {
-		try {
-			this.server.stop();
-		} catch (Exception e) {
-			log.error("Couldn't stop http server", e);
+	public synchronized void testEnded() {
+		running.removeIf(listener -> listener == this);
+		this.testRunning = false;
+
+		if (this.samplerCollector != null) {
+			this.samplerCollector.stop();
+		}
+		if (this.exemplarStore != null) {
+			this.exemplarStore.stop();
+		}
+		if (this.statsdExporter != null) {
+			this.statsdExporter.stop();
+		}
+		if (this.windowCollector != null) {
+			this.windowCollector.stop();
+		}
+		if (this.baselineCollector != null) {
+			this.baselineCollector.stop();
+		}
+		this.saveBaseline();
+
+		if (this.mappedFileExporter != null) {
+			this.mappedFileExporter.stop();
+			this.mappedFileExporter = null;
+		}
+
+		if (this.server != null) {
+			try {
+				this.server.stop();
+			} catch (Exception e) {
+				log.error("Couldn't stop http server", e);
+			}
+			this.server = null;
 		}
 	}
 
@@ -196,22 +313,48 @@ public class PrometheusListener extends AbstractListenerElement
 	 * 
 	 * @see org.apache.jmeter.testelement.TestStateListener#testStarted()
 	 */
-	public void testStarted() {
+	public synchronized void testStarted() {
 		// update the configuration
 		this.reconfigure();
-		this.server = new Server(this.getSaveConfig().getPort());
+		this.testStartMillis = System.currentTimeMillis();
+		for (Part part : Part.values()) {
+			this.startPart(part);
+		}
+		this.testRunning = true;
 
-		ServletContextHandler context = new ServletContextHandler();
-		context.setContextPath("/");
-		server.setHandler(context);
-		context.addServlet(new ServletHolder(new MetricsServlet()), "/metrics");
+		// port 0 leaves the http server out, e.g. for the mapped file only
+		if (this.getSaveConfig().getPort() > 0) {
+			this.server = new Server(this.getSaveConfig().getPort());
 
-		try {
-			server.start();
-		} catch (Exception e) {
-			log.error("Couldn't start http server", e);
+			ServletContextHandler context = new ServletContextHandler();
+			context.setContextPath("/");
+			server.setHandler(context);
+			context.addServlet(new ServletHolder(new ExpositionServlet(ExpositionRegistry.defaultRegistry, (family, labels) -> {
+				ExemplarStore store = this.exemplarStore;
+				return store == null ? Exemplar.NONE : store.exemplars(family, labels);
+			}, this.getSaveConfig().getScrapeCacheMillis(), this.getSaveConfig().getScrapeParallelism())), "/metrics");
+
+			try {
+				server.start();
+			} catch (Exception e) {
+				log.error("Couldn't start http server", e);
+			}
 		}
 
+		if (!this.getSaveConfig().getMappedFile().isEmpty()) {
+			this.mappedFileExporter = new MappedFileExporter(Paths.get(this.getSaveConfig().getMappedFile()),
+					ExpositionRegistry.defaultRegistry, this.getSaveConfig().getMappedFileInterval(),
+					MappedFileExporter.DEFAULT_CAPACITY);
+			try {
+				this.mappedFileExporter.start();
+			} catch (IOException e) {
+				log.error("Couldn't map " + this.getSaveConfig().getMappedFile(), e);
+				this.mappedFileExporter = null;
+			}
+		}
+
+		running.add(this);
+
 	}
 
 	/**
@@ -228,6 +371,57 @@ public class PrometheusListener extends AbstractListenerElement
 		this.reconfigure();
 	}
 
+	/**
+	 * Get the series the sampler collector aggregates, for views that show
+	 * them without processing every sample again.
+	 * 
+	 * @return the series, or null if the engine doesn't keep any
+	 */
+	public SeriesStore getSeriesStore() {
+		return this.seriesStore;
+	}
+
+	/**
+	 * @return the number of samples an exception kept from being observed
+	 */
+	long getFailedSamples() {
+		return this.failedSamples.sum();
+	}
+
+	/**
+	 * Get the listener the running test samples into in place of an element of
+	 * the test plan. The GUI clones the test tree before it starts a test, so
+	 * that's not the element the GUI edits.
+	 * 
+	 * @param element
+	 *            - the element of the test plan
+	 * @return the running listener, or null if the element isn't part of a
+	 *         running test
+	 */
+	public static PrometheusListener getRunning(PrometheusListener element) {
+		if (element == null) {
+			return null;
+		}
+		for (PrometheusListener listener : running) {
+			if (listener == element || listener.original == element) {
+				return listener;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.jmeter.testelement.AbstractTestElement#clone()
+	 */
+	@Override
+	public Object clone() {
+		PrometheusListener clone = (PrometheusListener) super.clone();
+		clone.original = this.original != null ? this.original : this;
+		return clone;
+	}
+
 	/**
 	 * Get the current Save configuration
 	 * 
@@ -262,17 +456,32 @@ public class PrometheusListener extends AbstractListenerElement
 	 */
 	protected String[] labelValues(SampleEvent event)
 			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return this.labelValues(this.observers, event);
+	}
+
+	private String[] labelValues(Observers o, SampleEvent event)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
 		
 		String[] sampleVarArr = this.sampleVariableValues(event);
-		int configLabelLength = this.samplerConfig.getLabels().length;
+		int configLabelLength = o.samplerConfig.getLabels().length;
 		int totalLength = configLabelLength + sampleVarArr.length;
 		
 		String[] values = new String[totalLength];
 		int valuesIndex = -1;	//start at -1 so you can ++ when referencing it
+		SamplerContext context = null;
 
 		for (int i = 0; i < configLabelLength; i++) {
-			Method m = this.samplerConfig.getMethods()[i];
-			values[++valuesIndex] = m.invoke(event.getResult()).toString();
+			Method m = o.samplerConfig.getMethods()[i];
+			Object source = event.getResult();
+			if (m.getDeclaringClass() == SamplerContext.class) {
+				// resolved once per sample at most, and cached per thread
+				context = (context == null) ? o.contextResolver.resolve() : context;
+				source = context;
+			}
+			
+			Object raw = m.invoke(source);
+			values[++valuesIndex] = o.samplerConfig.getNormalizers()[i].normalize(source,
+					raw == null ? "" : raw.toString());
 		}
 		
 		System.arraycopy(sampleVarArr, 0, values, configLabelLength, sampleVarArr.length);
@@ -298,25 +507,30 @@ public class PrometheusListener extends AbstractListenerElement
 	 */
 	protected String[] labelValues(SampleEvent event, AssertionResult assertionResult)
 			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return this.labelValues(this.observers, event, assertionResult);
+	}
+
+	private String[] labelValues(Observers o, SampleEvent event, AssertionResult assertionResult)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
 
 		String[] sampleVarArr = this.sampleVariableValues(event);
-		int assertionLabelLength = this.assertionConfig.getLabels().length;
+		int assertionLabelLength = o.assertionConfig.getLabels().length;
 		int sampleVariableLength = sampleVarArr.length;
 		int combinedLength = assertionLabelLength + sampleVariableLength;
 		
 		String[] values = new String[combinedLength];
 
 		for (int i = 0; i < assertionLabelLength; i++) {
-			Method m = this.assertionConfig.getMethods()[i];
-			if (m.getDeclaringClass().equals(AssertionResult.class))
-				values[i] = m.invoke(assertionResult).toString();
-			else
-				values[i] = m.invoke(event.getResult()).toString();
+			Method m = o.assertionConfig.getMethods()[i];
+			Object source = m.getDeclaringClass().equals(AssertionResult.class) ? assertionResult : event.getResult();
+			Object raw = m.invoke(source);
+			
+			values[i] = o.assertionConfig.getNormalizers()[i].normalize(source, raw == null ? "" : raw.toString());
 		}
 		
 		System.arraycopy(sampleVarArr, 0, values, assertionLabelLength, sampleVariableLength);
 
-		log.info("assertion values: {}", (Object) values);
+		log.debug("assertion values: {}", (Object) values);
 		
 		return values;
 
@@ -336,46 +550,142 @@ public class PrometheusListener extends AbstractListenerElement
 
 	/**
 	 * Helper function to modify private member collectors and collector
-	 * configurations. Any invocation of this method will modify them, even if
-	 * configuration fails due to reflection errors, default configurations are
-	 * applied and new collectors created.
+	 * configurations. Only the parts whose configuration changed since the
+	 * last invocation are rebuilt, see {@link ConfigDiff}, the others keep
+	 * their series. Any rebuilt part is modified even if configuration fails
+	 * due to reflection errors, default configurations are applied and new
+	 * collectors created.
+	 * 
+	 * Samples may keep coming in meanwhile, so the new parts are built first
+	 * and published along with their label configurations in one
+	 * {@link Observers} snapshot. Only then are the old parts stopped and
+	 * unregistered, and the new ones registered in their place.
 	 */
-	protected void reconfigure() {
-
-		CollectorConfig tmpAssertConfig = new CollectorConfig();
-		CollectorConfig tmpSamplerConfig = new CollectorConfig();
+	protected synchronized void reconfigure() {
+		ConfigDiff diff = ConfigDiff.between(this.appliedConfig, this.getSaveConfig());
+		if (diff.isEmpty()) {
+			log.debug("Configuration unchanged, keeping the collectors.");
+			return;
+		}
 
 		// activate collections
 		collectSamples = this.getSaveConfig().saveSuccess() || this.getSaveConfig().saveCode()
-				|| this.getSaveConfig().saveLabel();
+				|| this.getSaveConfig().saveLabel() || this.getSaveConfig().saveFailureReasons()
+				|| this.getSaveConfig().saveThreadGroup() || this.getSaveConfig().saveController();
 		collectThreads = this.getSaveConfig().saveThreads();
 		collectAssertions = this.getSaveConfig().saveAssertions();
 
-		try {
-			// try to build new config objects
-			tmpAssertConfig = this.newAssertionCollectorConfig();
-			tmpSamplerConfig = this.newSamplerCollectorConfig();
+		if (this.appliedConfig == null) {
+			// the first configuration of this element, drop whatever an
+			// earlier one left in the registries
+			CollectorRegistry.defaultRegistry.clear();
+			ExpositionRegistry.defaultRegistry.clear();
+		}
+
+		// compile the normalization rules once, they're shared by both configs,
+		// which are rebuilt along with them
+		if (diff.changed(Part.NORMALIZERS)) {
+			this.codeNormalizer = LabelNormalizer.compile(this.getSaveConfig().getCodeRules(),
+					this.getSaveConfig().codeClasses(), LabelNormalizer.DEFAULT_CACHE_SIZE);
+			this.labelNormalizer = LabelNormalizer.compile(this.getSaveConfig().getLabelRules(), false,
+					LabelNormalizer.DEFAULT_CACHE_SIZE);
+			this.failureClassifier = new FailureClassifier(this.getSaveConfig().getFailureReasonClasses(),
+					FailureClassifier.DEFAULT_DICTIONARY_SIZE);
+		}
+		if (diff.changed(Part.LABELS)) {
+			this.contextResolver = new SamplerContextResolver();
+		}
+		if (diff.changed(Part.FILTER)) {
+			this.sampleFilter = SampleFilter.compile(this.getSaveConfig().getFilterRules(),
+					SampleFilter.DEFAULT_CACHE_SIZE);
+		}
 
-		} catch (NoSuchMethodException | SecurityException e) {
-			log.error("Only partial reconfigure due to exception.", e);
+		if (diff.changed(Part.LABELS)) {
+			CollectorConfig tmpSamplerConfig = new CollectorConfig();
+			try {
+				tmpSamplerConfig = this.newSamplerCollectorConfig();
+			} catch (NoSuchMethodException | SecurityException e) {
+				log.error("Only partial reconfigure due to exception.", e);
+			}
+			this.samplerConfig = tmpSamplerConfig;
+		}
+		if (diff.changed(Part.ASSERTIONS)) {
+			CollectorConfig tmpAssertConfig = new CollectorConfig();
+			try {
+				tmpAssertConfig = this.newAssertionCollectorConfig();
+			} catch (NoSuchMethodException | SecurityException e) {
+				log.error("Only partial reconfigure due to exception.", e);
+			}
+			this.assertionConfig = tmpAssertConfig;
 		}
 
-		// remove old collectors and reassign member variables
-		CollectorRegistry.defaultRegistry.clear();
-		this.assertionConfig = tmpAssertConfig;
-		this.samplerConfig = tmpSamplerConfig;
+		// take the old parts that changed out, they keep observing samples
+		// until the new ones are published, the others keep their series
+		List<Runnable> retired = new ArrayList<>();
+		for (Part part : Part.values()) {
+			if (diff.changed(part)) {
+				retired.add(this.retirePart(part));
+			}
+		}
+
+		// build the new ones
+		if (collectSamples) {
+			String[] labelNames = this.samplerLabelNames();
+			if (diff.changed(Part.EXEMPLARS)) {
+				this.createExemplarStore();
+			}
+			if (diff.changed(Part.SAMPLER)) {
+				this.createSamplerCollector(labelNames);
+			}
+			if (diff.changed(Part.STATSD)) {
+				this.createStatsdExporter(labelNames);
+			}
+			if (diff.changed(Part.WINDOW)) {
+				this.createWindowCollector(labelNames);
+			}
+			if (diff.changed(Part.APDEX)) {
+				this.createApdexCollector(labelNames);
+			}
+			if (diff.changed(Part.BASELINE)) {
+				this.createBaselineCollector(labelNames);
+			}
+		}
 
-		// register new collectors
-		this.createSamplerCollector();
-		this.createAssertionCollector();
+		if (diff.changed(Part.ASSERTIONS)) {
+			this.createAssertionCollector();
+		}
 
-		if (collectThreads)
+		if (diff.changed(Part.THREADS) && collectThreads)
 			this.threadCollector = Gauge.build().name("jmeter_running_threads").help("Counter for running threds")
-					.create().register(CollectorRegistry.defaultRegistry);
+					.create();
 
-		
+		this.observers = new Observers(this.sampleFilter, this.samplerConfig, this.contextResolver,
+				this.samplerCollector, this.windowCollector, this.apdexCollector, this.exemplarStore,
+				this.assertionConfig, this.assertionsCollector, this.threadCollector);
+
+		// the new parts have the names of the old ones, so they can only be
+		// registered once those are gone
+		for (Runnable retire : retired) {
+			retire.run();
+		}
+		for (Part part : Part.values()) {
+			if (diff.changed(part)) {
+				this.registerPart(part);
+			}
+		}
+
+		// parts rebuilt while a test runs don't get another testStarted()
+		if (this.testRunning) {
+			for (Part part : Part.values()) {
+				if (diff.changed(part)) {
+					this.startPart(part);
+				}
+			}
+		}
+
+		this.appliedConfig = diff;
 
-		log.info("Reconfigure complete.");
+		log.info("Reconfigure complete: {}", diff);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Assertion Configuration: " + this.assertionConfig.toString());
@@ -384,6 +694,197 @@ public class PrometheusListener extends AbstractListenerElement
 
 	}
 
+	/**
+	 * Take the current instance of a part out of the listener.
+	 * 
+	 * @return what stops and unregisters it, once its replacement is published
+	 */
+	private Runnable retirePart(Part part) {
+		switch (part) {
+		case SAMPLER:
+			SamplerCollector sampler = this.samplerCollector;
+			this.samplerCollector = null;
+			this.seriesStore = null;
+			return () -> {
+				if (sampler != null) {
+					sampler.stop();
+				}
+				if (sampler instanceof StreamingCollector) {
+					ExpositionRegistry.defaultRegistry.unregister((StreamingCollector) sampler);
+				} else if (sampler instanceof SummarySamplerCollector) {
+					((SummarySamplerCollector) sampler).unregister(CollectorRegistry.defaultRegistry);
+				}
+			};
+		case EXEMPLARS:
+			ExemplarStore exemplars = this.exemplarStore;
+			this.exemplarStore = null;
+			return () -> {
+				if (exemplars != null) {
+					exemplars.stop();
+				}
+			};
+		case STATSD:
+			StatsdExporter statsd = this.statsdExporter;
+			this.statsdExporter = null;
+			return () -> {
+				if (statsd != null) {
+					statsd.stop();
+				}
+			};
+		case WINDOW:
+			WindowedDurationCollector window = this.windowCollector;
+			this.windowCollector = null;
+			return () -> {
+				if (window != null) {
+					window.stop();
+					ExpositionRegistry.defaultRegistry.unregister(window);
+				}
+			};
+		case APDEX:
+			ApdexCollector apdex = this.apdexCollector;
+			this.apdexCollector = null;
+			return () -> {
+				if (apdex != null) {
+					ExpositionRegistry.defaultRegistry.unregister(apdex);
+				}
+			};
+		case BASELINE:
+			BaselineCollector baseline = this.baselineCollector;
+			this.baselineCollector = null;
+			return () -> {
+				if (baseline != null) {
+					baseline.stop();
+					ExpositionRegistry.defaultRegistry.unregister(baseline);
+				}
+			};
+		case ASSERTIONS:
+			Collector assertions = this.assertionsCollector;
+			this.assertionsCollector = null;
+			return () -> {
+				if (assertions != null) {
+					CollectorRegistry.defaultRegistry.unregister(assertions);
+				}
+			};
+		case THREADS:
+			Gauge threads = this.threadCollector;
+			this.threadCollector = null;
+			return () -> {
+				if (threads != null) {
+					CollectorRegistry.defaultRegistry.unregister(threads);
+				}
+			};
+		default:
+			// nothing to take out
+			return () -> {
+			};
+		}
+	}
+
+	/**
+	 * Register the new instance of a part, if it has any collectors.
+	 */
+	private void registerPart(Part part) {
+		switch (part) {
+		case SAMPLER:
+			if (this.samplerCollector instanceof StreamingCollector) {
+				ExpositionRegistry.defaultRegistry.register((StreamingCollector) this.samplerCollector);
+			} else if (this.samplerCollector instanceof SummarySamplerCollector) {
+				((SummarySamplerCollector) this.samplerCollector).register(CollectorRegistry.defaultRegistry);
+			}
+			break;
+		case WINDOW:
+			if (this.windowCollector != null) {
+				ExpositionRegistry.defaultRegistry.register(this.windowCollector);
+			}
+			break;
+		case APDEX:
+			if (this.apdexCollector != null) {
+				ExpositionRegistry.defaultRegistry.register(this.apdexCollector);
+			}
+			break;
+		case BASELINE:
+			if (this.baselineCollector != null) {
+				ExpositionRegistry.defaultRegistry.register(this.baselineCollector);
+			}
+			break;
+		case ASSERTIONS:
+			if (this.assertionsCollector != null) {
+				this.assertionsCollector.register(CollectorRegistry.defaultRegistry);
+			}
+			break;
+		case THREADS:
+			if (this.threadCollector != null) {
+				this.threadCollector.register(CollectorRegistry.defaultRegistry);
+			}
+			break;
+		default:
+			// exposed through the others, if at all
+			break;
+		}
+	}
+
+	/**
+	 * Start the timers and channels of a part, if it has any.
+	 */
+	private void startPart(Part part) {
+		switch (part) {
+		case SAMPLER:
+			if (this.samplerCollector != null) {
+				this.samplerCollector.start();
+			}
+			break;
+		case EXEMPLARS:
+			if (this.exemplarStore != null) {
+				this.exemplarStore.start();
+			}
+			break;
+		case WINDOW:
+			if (this.windowCollector != null) {
+				this.windowCollector.start();
+			}
+			break;
+		case BASELINE:
+			if (this.baselineCollector != null) {
+				this.baselineCollector.start(this.testStartMillis);
+			}
+			break;
+		case STATSD:
+			if (this.statsdExporter != null) {
+				try {
+					this.statsdExporter.start();
+				} catch (IOException e) {
+					log.error("Couldn't open the StatsD channel", e);
+				}
+			}
+			break;
+		default:
+			// nothing runs in the background
+			break;
+		}
+	}
+
+	/**
+	 * Save the sampler series of the test that just ended as the baseline of
+	 * later runs, if configured.
+	 */
+	private void saveBaseline() {
+		String file = this.getSaveConfig().getBaselineSaveFile();
+		SeriesStore store = this.seriesStore;
+		if (file.isEmpty() || store == null) {
+			return;
+		}
+
+		Path path = Paths.get(file);
+		long runMillis = System.currentTimeMillis() - this.testStartMillis;
+		try {
+			Baseline baseline = Baseline.of(this.samplerLabelNames(), store.snapshot(), runMillis);
+			baseline.save(path);
+			log.info("Saved the baseline {}: {}", path, baseline);
+		} catch (IOException e) {
+			log.error("Couldn't save the baseline " + path, e);
+		}
+	}
+
 	/**
 	 * Create a new CollectorConfig for Samplers. Due to reflection this throws
 	 * errors based on security and absence of method definitions.
@@ -397,17 +898,29 @@ public class PrometheusListener extends AbstractListenerElement
 		CollectorConfig collectorConfig = new CollectorConfig();
 
 		if (saveConfig.saveLabel()) {
-			collectorConfig.saveSamplerLabel();
+			collectorConfig.saveSamplerLabel(this.labelNormalizer);
 		}
 
 		if (saveConfig.saveCode()) {
-			collectorConfig.saveSamlerCode();
+			collectorConfig.saveSamlerCode(this.codeNormalizer);
 		}
 
 		if (saveConfig.saveSuccess()) {
 			collectorConfig.saveSamplerSuccess();
 		}
 
+		if (saveConfig.saveThreadGroup()) {
+			collectorConfig.saveSamplerThreadGroup();
+		}
+
+		if (saveConfig.saveController()) {
+			collectorConfig.saveSamplerController();
+		}
+
+		if (saveConfig.saveFailureReasons()) {
+			collectorConfig.saveSamplerFailureReason(this.failureClassifier);
+		}
+
 		return collectorConfig;
 	}
 
@@ -425,9 +938,13 @@ public class PrometheusListener extends AbstractListenerElement
 
 		if (saveConfig.saveAssertions()) {
 			// TODO configure assertions more granularly
-			collectorConfig.saveSamplerLabel();
+			collectorConfig.saveSamplerLabel(this.labelNormalizer);
 			collectorConfig.saveAssertionFailure();
 			collectorConfig.saveAssertionName();
+			
+			if (saveConfig.saveFailureReasons()) {
+				collectorConfig.saveAssertionFailureReason(this.failureClassifier);
+			}
 		}
 
 		return collectorConfig;
@@ -447,75 +964,134 @@ public class PrometheusListener extends AbstractListenerElement
 			labelNames = this.assertionConfig.getLabels();
 		}
 		
-		if(this.getSaveConfig().getAssertionClass().equals(Summary.class))
+		if(this.getSaveConfig().getAssertionClass().equals(Summary.class)
+				&& this.getSaveConfig().getEngine() == Engine.NATIVE_HISTOGRAM)
+			this.assertionsCollector = Histogram.build().name("jmeter_assertions_total").help("Histogram for assertions")
+				.labelNames(labelNames).buckets(assertionBuckets())
+				.create();
+		
+		else if(this.getSaveConfig().getAssertionClass().equals(Summary.class))
 			this.assertionsCollector = Summary.build().name("jmeter_assertions_total").help("Counter for assertions")
 				.labelNames(labelNames).quantile(0.5, 0.1).quantile(0.99, 0.1)
-				.create().register(CollectorRegistry.defaultRegistry);
+				.create();
 		
 		else if(this.getSaveConfig().getAssertionClass().equals(Counter.class))
 			this.assertionsCollector = Counter.build().name("jmeter_assertions_total").help("Counter for assertions")
-			.labelNames(labelNames).create().register(CollectorRegistry.defaultRegistry);
+			.labelNames(labelNames).create();
 			
 	}
 
 	
-	protected void createSamplerCollector(){
-		if (collectSamples) {
-			String[] labelNames = new String[]{};
-			
-			if (SampleEvent.getVarCount() > 0) {
-				labelNames = this.combineConfigLabelsWithSampleVars();
-			} else {
-				labelNames = this.samplerConfig.getLabels();
+	/**
+	 * @return the label names of every sampler family
+	 */
+	private String[] samplerLabelNames() {
+		if (SampleEvent.getVarCount() > 0) {
+			return this.combineConfigLabelsWithSampleVars();
+		} else {
+			return this.samplerConfig.getLabels();
+		}
+	}
+
+	protected void createExemplarStore(){
+		if (this.getSaveConfig().saveExemplars() && this.getSaveConfig().getEngine() != Engine.NATIVE_HISTOGRAM) {
+			// OpenMetrics only has exemplars on histogram buckets, don't keep them for nothing
+			log.warn("Exemplars are only exposed by the {} engine, not keeping any.", Engine.NATIVE_HISTOGRAM);
+		} else if (this.getSaveConfig().saveExemplars()) {
+			this.exemplarStore = new ExemplarStore(this.getSaveConfig().getExemplarSize(),
+					this.getSaveConfig().getExemplarVariable(), this.getSaveConfig().getExemplarInterval() * 1000);
+		}
+	}
+	
+	protected void createSamplerCollector(String[] labelNames){
+		boolean offHeap = this.getSaveConfig().offHeap();
+		long budget = this.getSaveConfig().adaptiveSampling() ? this.getSaveConfig().getAdaptiveBudget() : 0;
+		if (offHeap && budget > 0) {
+			log.warn("The off heap series store records every sample, ignoring adaptive sampling.");
+			budget = 0;
+		}
+		
+		ExpectedIntervals intervals = this.getSaveConfig().correction() ? ExpectedIntervals
+				.compile(this.getSaveConfig().getIntervalRules(), this.getSaveConfig().learnIntervals()) : null;
+		Set<String> hiddenFamilies = this.getSaveConfig().getHiddenFamilies();
+		// adaptive sampling, the off heap store, correction, StatsD and baselines need the series collector
+		boolean useSimpleclient = this.getSaveConfig().getEngine() == Engine.SIMPLECLIENT && budget == 0 && !offHeap
+				&& intervals == null && !this.getSaveConfig().saveStatsd()
+				&& this.getSaveConfig().getBaselineFile().isEmpty()
+				&& this.getSaveConfig().getBaselineSaveFile().isEmpty();
+		
+		if (useSimpleclient) {
+			this.samplerCollector = new SummarySamplerCollector(labelNames, hiddenFamilies);
+			return;
+		}
+		
+		SeriesCollector series;
+		if (this.getSaveConfig().getEngine() == Engine.NATIVE_HISTOGRAM) {
+			series = new SeriesHistogramCollector(labelNames, budget, this.newSeriesStore(labelNames, intervals));
+		} else {
+			// one timing record per label tuple for all the families
+			series = new SeriesSummaryCollector(labelNames, budget, this.newSeriesStore(labelNames, intervals));
+		}
+		
+		series.setHiddenFamilies(hiddenFamilies);
+		this.samplerCollector = series;
+		this.seriesStore = series.getStore();
+	}
+	
+	protected void createStatsdExporter(String[] labelNames){
+		if (this.seriesStore != null && this.getSaveConfig().saveStatsd()) {
+			// the same series, so labels are extracted once per sample for both outputs
+			this.statsdExporter = new StatsdExporter(this.seriesStore, labelNames,
+					this.getSaveConfig().getStatsdHost(), this.getSaveConfig().getStatsdPort(),
+					this.getSaveConfig().getStatsdInterval(), this.getSaveConfig().statsdTags());
+		}
+	}
+	
+	protected void createWindowCollector(String[] labelNames){
+		if (this.getSaveConfig().getWindowSeconds() > 0) {
+			this.windowCollector = new WindowedDurationCollector(labelNames,
+					this.getSaveConfig().getWindowSeconds() * 1000, this.getSaveConfig().getWindowBuckets());
+		}
+	}
+	
+	protected void createApdexCollector(String[] labelNames){
+		if (this.getSaveConfig().saveApdex()) {
+			// the thresholds are parsed once here, classification is a binary search
+			long[] thresholds = ApdexCollector.parseThresholds(this.getSaveConfig().getSloThresholds());
+			long apdexThreshold = this.getSaveConfig().getApdexThreshold();
+			if (apdexThreshold > 0 || thresholds.length > 0) {
+				this.apdexCollector = new ApdexCollector(labelNames, apdexThreshold, thresholds);
 			}
-			
-			this.samplerCollector = Summary.build()
-					.name("jmeter_samples_latency")
-					.help("Summary for Sample Latency")
-					.labelNames(labelNames)
-					.quantile(0.5, 0.1)
-					.quantile(0.99, 0.1)
-					.create()
-					.register(CollectorRegistry.defaultRegistry);
-
-			// @TODO: This metrics is not same as 'jmeter_samples_latency', need to discuss this.
-			// Metric name is confusing, current 'jmeter_samples_latency' metrics is returning 'elapsed time' instead of actual 'latency' value
-			// In jmeter terms 'latency' is time to first byte(TTFB)
-			this.samplerLatencyCollector = Summary.build()
-					.name("jmeter_samples_ttfb_seconds")
-					.help("Summary for sample latency(TTFB) in seconds")
-					.labelNames(labelNames)
-					.quantile(0.5, 0.1)
-					.quantile(0.99, 0.1)
-					.create()
-					.register(CollectorRegistry.defaultRegistry);
-			this.samplerElaspedTimeCollector = Summary.build()
-					.name("jmeter_samples_duration_seconds")
-					.help("Summary for sample duration in seconds")
-					.labelNames(labelNames)
-					.quantile(0.5, 0.1)
-					.quantile(0.99, 0.1)
-					.create()
-					.register(CollectorRegistry.defaultRegistry);
-			this.samplerIdleTimeCollector = Summary.build()
-					.name("jmeter_samples_idle_time_seconds")
-					.help("Summary for sample idle time in seconds")
-					.labelNames(labelNames)
-					.quantile(0.5, 0.1)
-					.quantile(0.99, 0.1)
-					.create()
-					.register(CollectorRegistry.defaultRegistry);
-			this.samplerConnectTimeCollector = Summary.build()
-					.name("jmeter_samples_connect_time_seconds")
-					.help("Summary for sample connect time in seconds")
-					.labelNames(labelNames)
-					.quantile(0.5, 0.1)
-					.quantile(0.99, 0.1)
-					.create()
-					.register(CollectorRegistry.defaultRegistry);
 		}
 	}
 	
+	protected void createBaselineCollector(String[] labelNames){
+		if (this.seriesStore != null && !this.getSaveConfig().getBaselineFile().isEmpty()) {
+			// compared on a timer from the aggregated series, never per sample
+			this.baselineCollector = new BaselineCollector(Paths.get(this.getSaveConfig().getBaselineFile()),
+					this.seriesStore, labelNames, this.getSaveConfig().getBaselineInterval());
+		}
+	}
+	
+	private SeriesStore newSeriesStore(String[] labelNames, ExpectedIntervals intervals) {
+		Set<String> hiddenFamilies = this.getSaveConfig().getHiddenFamilies();
+		return this.getSaveConfig().offHeap() ? new OffHeapSeriesStore(labelNames.length, intervals, hiddenFamilies)
+				: new HeapSeriesStore(intervals, hiddenFamilies);
+	}
+	
+	/**
+	 * The buckets of the assertion histogram, in milliseconds like the
+	 * assertion summary.
+	 */
+	private static double[] assertionBuckets() {
+		// the last classic bound is +Inf which simpleclient adds on its own
+		double[] buckets = new double[LogHistogram.CLASSIC_BOUNDS.length - 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = LogHistogram.CLASSIC_BOUNDS[i] * 1000;
+		}
+		return buckets;
+	}
+	
 	private String[] combineAssertionLabelsWithSampleVars() {
 		int assertionLabelLength = this.assertionConfig.getLabels().length;
 		int sampleVariableLength = SampleEvent.getVarCount();
@@ -560,4 +1136,44 @@ public class PrometheusListener extends AbstractListenerElement
 		return returnArray;
 	}
 	
+	/**
+	 * Everything a sample is observed with, replaced as a whole by
+	 * reconfigure() so a sample never sees the label configuration of one
+	 * configuration and the collectors of another. Parts that aren't
+	 * collected are null.
+	 */
+	private static final class Observers {
+
+		static final Observers NONE = new Observers(SampleFilter.ALL, new CollectorConfig(),
+				new SamplerContextResolver(), null, null, null, null, new CollectorConfig(), null, null);
+
+		final SampleFilter sampleFilter;
+		final CollectorConfig samplerConfig;
+		final SamplerContextResolver contextResolver;
+		final SamplerCollector samplerCollector;
+		final WindowedDurationCollector windowCollector;
+		final ApdexCollector apdexCollector;
+		final ExemplarStore exemplarStore;
+		final CollectorConfig assertionConfig;
+		final Collector assertionsCollector;
+		final Gauge threadCollector;
+
+		Observers(SampleFilter sampleFilter, CollectorConfig samplerConfig, SamplerContextResolver contextResolver,
+				SamplerCollector samplerCollector, WindowedDurationCollector windowCollector,
+				ApdexCollector apdexCollector, ExemplarStore exemplarStore, CollectorConfig assertionConfig,
+				Collector assertionsCollector, Gauge threadCollector) {
+			this.sampleFilter = sampleFilter;
+			this.samplerConfig = samplerConfig;
+			this.contextResolver = contextResolver;
+			this.samplerCollector = samplerCollector;
+			this.windowCollector = windowCollector;
+			this.apdexCollector = apdexCollector;
+			this.exemplarStore = exemplarStore;
+			this.assertionConfig = assertionConfig;
+			this.assertionsCollector = assertionsCollector;
+			this.threadCollector = threadCollector;
+		}
+
+	}
+
 }
@@ -2,11 +2,17 @@ package com.github.johrstrom.listener;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.LoggerFactory;
 
+import com.github.johrstrom.collector.Engine;
+import com.github.johrstrom.util.FailureClassifier;
+
 import io.prometheus.client.Collector;
 import io.prometheus.client.Counter;
 
@@ -25,8 +31,84 @@ public class PrometheusSaveConfig implements Serializable {
 
 	private boolean label, code, success, assertions, threads;
 	private int port;
+
+	// how long a scrape is served to other scrapers
+	public static final long DEFAULT_SCRAPE_CACHE_MILLIS = 1000;
+	private long scrapeCacheMillis;
+
+	// the number of threads encoding a scrape
+	private int scrapeParallelism;
+
+	// a memory mapped file the metrics are published to
+	public static final long DEFAULT_MAPPED_FILE_INTERVAL = 1000;
+	private String mappedFile;
+	private long mappedFileInterval;
 	private Class<? extends Collector> assertionClass;
 
+	// normalization rules for label values
+	private boolean codeClasses;
+	private String codeRules, labelRules;
+
+	// where in the test plan samples were taken
+	private boolean threadGroup, controller;
+
+	// failure messages classified into a capped set of reasons
+	private boolean failureReasons;
+	private int failureReasonClasses;
+
+	// samples left out before any label work
+	private String filterRules;
+
+	// the engine the collectors are built on
+	private Engine engine;
+
+	// sampler families left out of the exposition, comma separated
+	private String hiddenFamilies;
+
+	// adaptive sampling of the timing distributions
+	public static final long DEFAULT_ADAPTIVE_BUDGET = 10000;
+	private boolean adaptiveSampling;
+	private long adaptiveBudget;
+
+	// keep the series outside of the heap
+	private boolean offHeap;
+
+	// coordinated omission correction of the durations
+	private boolean correction, learnIntervals;
+	private String intervalRules;
+
+	// quantiles of a sliding window of durations
+	public static final int DEFAULT_WINDOW_BUCKETS = 6;
+	private long windowSeconds;
+	private int windowBuckets;
+
+	// apdex and slo counters per sampler series
+	public static final long DEFAULT_APDEX_THRESHOLD = 500;
+	private boolean apdex;
+	private long apdexThreshold;
+	private String sloThresholds;
+
+	// the sampler series sent to StatsD as well
+	public static final int DEFAULT_STATSD_PORT = 8125;
+	public static final long DEFAULT_STATSD_INTERVAL = 10000;
+	private boolean statsd, statsdTags;
+	private String statsdHost;
+	private int statsdPort;
+	private long statsdInterval;
+
+	// exemplars of the slowest samples
+	public static final int DEFAULT_EXEMPLAR_SIZE = 4;
+	public static final long DEFAULT_EXEMPLAR_INTERVAL = 60;
+	private boolean exemplars;
+	private int exemplarSize;
+	private long exemplarInterval;
+	private String exemplarVariable;
+
+	// comparison with the sampler series of an earlier run
+	public static final long DEFAULT_BASELINE_INTERVAL = 5000;
+	private String baselineFile, baselineSaveFile;
+	private long baselineInterval;
+
 	public PrometheusSaveConfig() {
 		this(true);
 	}
@@ -39,6 +121,43 @@ public class PrometheusSaveConfig implements Serializable {
 		this.setSaveAssertions(save);
 		this.setAssertionClass(Counter.class);
 		this.setPort(9270);
+		this.setScrapeCacheMillis(DEFAULT_SCRAPE_CACHE_MILLIS);
+		this.setScrapeParallelism(1);
+		this.setMappedFile("");
+		this.setMappedFileInterval(DEFAULT_MAPPED_FILE_INTERVAL);
+		this.setCodeClasses(false);
+		this.setCodeRules("");
+		this.setLabelRules("");
+		this.setSaveThreadGroup(false);
+		this.setSaveController(false);
+		this.setSaveFailureReasons(false);
+		this.setFailureReasonClasses(FailureClassifier.DEFAULT_CLASSES);
+		this.setFilterRules("");
+		this.setEngine(Engine.SUMMARY);
+		this.setHiddenFamilies(Collections.<String> emptySet());
+		this.setAdaptiveSampling(false);
+		this.setAdaptiveBudget(DEFAULT_ADAPTIVE_BUDGET);
+		this.setOffHeap(false);
+		this.setCorrection(false);
+		this.setLearnIntervals(true);
+		this.setIntervalRules("");
+		this.setWindowSeconds(0);
+		this.setWindowBuckets(DEFAULT_WINDOW_BUCKETS);
+		this.setSaveApdex(false);
+		this.setApdexThreshold(DEFAULT_APDEX_THRESHOLD);
+		this.setSloThresholds("");
+		this.setSaveStatsd(false);
+		this.setStatsdHost("localhost");
+		this.setStatsdPort(DEFAULT_STATSD_PORT);
+		this.setStatsdInterval(DEFAULT_STATSD_INTERVAL);
+		this.setStatsdTags(true);
+		this.setSaveExemplars(false);
+		this.setExemplarSize(DEFAULT_EXEMPLAR_SIZE);
+		this.setExemplarInterval(DEFAULT_EXEMPLAR_INTERVAL);
+		this.setExemplarVariable("");
+		this.setBaselineFile("");
+		this.setBaselineSaveFile("");
+		this.setBaselineInterval(DEFAULT_BASELINE_INTERVAL);
 	}
 
 	public boolean saveLabel() {
@@ -102,4 +221,416 @@ public class PrometheusSaveConfig implements Serializable {
 	public void setAssertionClass(Class<? extends Collector> assertionClass) {
 		this.assertionClass = assertionClass;
 	}
+
+	public boolean codeClasses() {
+		return this.codeClasses;
+	}
+
+	public void setCodeClasses(boolean group) {
+		log.debug("Setting code classes to " + group);
+		this.codeClasses = group;
+	}
+
+	public boolean saveThreadGroup() {
+		return this.threadGroup;
+	}
+
+	public void setSaveThreadGroup(boolean save) {
+		log.debug("Setting save thread group to " + save);
+		this.threadGroup = save;
+	}
+
+	public boolean saveController() {
+		return this.controller;
+	}
+
+	public void setSaveController(boolean save) {
+		log.debug("Setting save controller to " + save);
+		this.controller = save;
+	}
+
+	public boolean saveFailureReasons() {
+		return this.failureReasons;
+	}
+
+	public void setSaveFailureReasons(boolean save) {
+		log.debug("Setting save failure reasons to " + save);
+		this.failureReasons = save;
+	}
+
+	/**
+	 * @return the number of reason classes failure messages are mapped to
+	 */
+	public int getFailureReasonClasses() {
+		return this.failureReasonClasses > 0 ? this.failureReasonClasses : FailureClassifier.DEFAULT_CLASSES;
+	}
+
+	public void setFailureReasonClasses(int classes) {
+		log.debug("Setting failure reason classes to " + classes);
+		this.failureReasonClasses = classes;
+	}
+
+	/**
+	 * @return how long a scrape is served to other scrapers in milliseconds,
+	 *         0 to only share scrapes in flight.
+	 */
+	public long getScrapeCacheMillis() {
+		return this.scrapeCacheMillis >= 0 ? this.scrapeCacheMillis : DEFAULT_SCRAPE_CACHE_MILLIS;
+	}
+
+	public void setScrapeCacheMillis(long millis) {
+		log.debug("Setting scrape cache to " + millis);
+		this.scrapeCacheMillis = millis;
+	}
+
+	/**
+	 * @return the number of threads encoding a scrape, 1 to encode on the
+	 *         scraping thread.
+	 */
+	public int getScrapeParallelism() {
+		return Math.max(1, this.scrapeParallelism);
+	}
+
+	public void setScrapeParallelism(int threads) {
+		log.debug("Setting scrape parallelism to " + threads);
+		this.scrapeParallelism = threads;
+	}
+
+	/**
+	 * @return the path of the memory mapped file to publish to, empty for
+	 *         none.
+	 */
+	public String getMappedFile() {
+		return this.mappedFile == null ? "" : this.mappedFile;
+	}
+
+	public void setMappedFile(String path) {
+		log.debug("Setting mapped file to " + path);
+		this.mappedFile = path;
+	}
+
+	/**
+	 * @return how often the mapped file is published to, in milliseconds.
+	 */
+	public long getMappedFileInterval() {
+		return this.mappedFileInterval > 0 ? this.mappedFileInterval : DEFAULT_MAPPED_FILE_INTERVAL;
+	}
+
+	public void setMappedFileInterval(long millis) {
+		log.debug("Setting mapped file interval to " + millis);
+		this.mappedFileInterval = millis;
+	}
+
+	public String getCodeRules() {
+		return this.codeRules == null ? "" : this.codeRules;
+	}
+
+	public void setCodeRules(String rules) {
+		log.debug("Setting code rules to " + rules);
+		this.codeRules = rules;
+	}
+
+	public String getLabelRules() {
+		return this.labelRules == null ? "" : this.labelRules;
+	}
+
+	public void setLabelRules(String rules) {
+		log.debug("Setting label rules to " + rules);
+		this.labelRules = rules;
+	}
+
+	public String getFilterRules() {
+		return this.filterRules == null ? "" : this.filterRules;
+	}
+
+	public void setFilterRules(String rules) {
+		log.debug("Setting filter rules to " + rules);
+		this.filterRules = rules;
+	}
+
+	/**
+	 * @return the engine, plans saved before there was a choice keep the
+	 *         simpleclient Summaries they were built on
+	 */
+	public Engine getEngine() {
+		return this.engine == null ? Engine.SIMPLECLIENT : this.engine;
+	}
+
+	public void setEngine(Engine engine) {
+		log.debug("Setting engine to " + engine);
+		this.engine = engine;
+	}
+
+	/**
+	 * @return the names of the sampler families left out of the exposition
+	 */
+	public Set<String> getHiddenFamilies() {
+		Set<String> families = new LinkedHashSet<>();
+		if (this.hiddenFamilies != null) {
+			for (String family : this.hiddenFamilies.split(",")) {
+				if (!family.trim().isEmpty()) {
+					families.add(family.trim());
+				}
+			}
+		}
+		return families;
+	}
+
+	public void setHiddenFamilies(Collection<String> families) {
+		log.debug("Setting hidden families to " + families);
+		this.hiddenFamilies = String.join(",", families);
+	}
+
+	public boolean adaptiveSampling() {
+		return this.adaptiveSampling;
+	}
+
+	public void setAdaptiveSampling(boolean adaptive) {
+		log.debug("Setting adaptive sampling to " + adaptive);
+		this.adaptiveSampling = adaptive;
+	}
+
+	/**
+	 * @return the number of timing observations per second adaptive sampling
+	 *         aims for.
+	 */
+	public long getAdaptiveBudget() {
+		return this.adaptiveBudget > 0 ? this.adaptiveBudget : DEFAULT_ADAPTIVE_BUDGET;
+	}
+
+	public void setAdaptiveBudget(long budget) {
+		log.debug("Setting adaptive budget to " + budget);
+		this.adaptiveBudget = budget;
+	}
+
+	public boolean offHeap() {
+		return this.offHeap;
+	}
+
+	public void setOffHeap(boolean offHeap) {
+		log.debug("Setting off heap series to " + offHeap);
+		this.offHeap = offHeap;
+	}
+
+	public boolean correction() {
+		return this.correction;
+	}
+
+	public void setCorrection(boolean correction) {
+		log.debug("Setting coordinated omission correction to " + correction);
+		this.correction = correction;
+	}
+
+	public boolean learnIntervals() {
+		return this.learnIntervals;
+	}
+
+	public void setLearnIntervals(boolean learn) {
+		log.debug("Setting learn intervals to " + learn);
+		this.learnIntervals = learn;
+	}
+
+	public String getIntervalRules() {
+		return this.intervalRules == null ? "" : this.intervalRules;
+	}
+
+	public void setIntervalRules(String rules) {
+		log.debug("Setting interval rules to " + rules);
+		this.intervalRules = rules;
+	}
+
+	/**
+	 * @return the length of the window of the windowed quantiles in seconds,
+	 *         0 for none.
+	 */
+	public long getWindowSeconds() {
+		return Math.max(0, this.windowSeconds);
+	}
+
+	public void setWindowSeconds(long seconds) {
+		log.debug("Setting window to " + seconds);
+		this.windowSeconds = seconds;
+	}
+
+	/**
+	 * @return the number of histograms the window is divided into.
+	 */
+	public int getWindowBuckets() {
+		return this.windowBuckets >= 2 ? this.windowBuckets : DEFAULT_WINDOW_BUCKETS;
+	}
+
+	public void setWindowBuckets(int buckets) {
+		log.debug("Setting window buckets to " + buckets);
+		this.windowBuckets = buckets;
+	}
+
+	public boolean saveApdex() {
+		return this.apdex;
+	}
+
+	public void setSaveApdex(boolean save) {
+		log.debug("Setting save apdex to " + save);
+		this.apdex = save;
+	}
+
+	/**
+	 * @return the Apdex threshold T in milliseconds, 0 for SLO counters only.
+	 */
+	public long getApdexThreshold() {
+		return this.apdexThreshold >= 0 ? this.apdexThreshold : DEFAULT_APDEX_THRESHOLD;
+	}
+
+	public void setApdexThreshold(long millis) {
+		log.debug("Setting apdex threshold to " + millis);
+		this.apdexThreshold = millis;
+	}
+
+	/**
+	 * @return the SLO thresholds in milliseconds, separated by commas.
+	 */
+	public String getSloThresholds() {
+		return this.sloThresholds == null ? "" : this.sloThresholds;
+	}
+
+	public void setSloThresholds(String thresholds) {
+		log.debug("Setting slo thresholds to " + thresholds);
+		this.sloThresholds = thresholds;
+	}
+
+	public boolean saveStatsd() {
+		return this.statsd;
+	}
+
+	public void setSaveStatsd(boolean save) {
+		log.debug("Setting save statsd to " + save);
+		this.statsd = save;
+	}
+
+	public String getStatsdHost() {
+		return this.statsdHost == null || this.statsdHost.isEmpty() ? "localhost" : this.statsdHost;
+	}
+
+	public void setStatsdHost(String host) {
+		log.debug("Setting statsd host to " + host);
+		this.statsdHost = host;
+	}
+
+	public int getStatsdPort() {
+		return this.statsdPort > 0 ? this.statsdPort : DEFAULT_STATSD_PORT;
+	}
+
+	public void setStatsdPort(int port) {
+		log.debug("Setting statsd port to " + port);
+		this.statsdPort = port;
+	}
+
+	/**
+	 * @return how often the series are sent to StatsD, in milliseconds.
+	 */
+	public long getStatsdInterval() {
+		return this.statsdInterval > 0 ? this.statsdInterval : DEFAULT_STATSD_INTERVAL;
+	}
+
+	public void setStatsdInterval(long millis) {
+		log.debug("Setting statsd interval to " + millis);
+		this.statsdInterval = millis;
+	}
+
+	/**
+	 * @return true to send labels as DogStatsD tags, else they're appended to
+	 *         the metric names.
+	 */
+	public boolean statsdTags() {
+		return this.statsdTags;
+	}
+
+	public void setStatsdTags(boolean tags) {
+		log.debug("Setting statsd tags to " + tags);
+		this.statsdTags = tags;
+	}
+
+	public boolean saveExemplars() {
+		return this.exemplars;
+	}
+
+	public void setSaveExemplars(boolean save) {
+		log.debug("Setting save exemplars to " + save);
+		this.exemplars = save;
+	}
+
+	/**
+	 * @return the number of slowest samples kept per series and interval.
+	 */
+	public int getExemplarSize() {
+		return this.exemplarSize > 0 ? this.exemplarSize : DEFAULT_EXEMPLAR_SIZE;
+	}
+
+	public void setExemplarSize(int size) {
+		log.debug("Setting exemplar size to " + size);
+		this.exemplarSize = size;
+	}
+
+	/**
+	 * @return the length of an exemplar interval in seconds.
+	 */
+	public long getExemplarInterval() {
+		return this.exemplarInterval > 0 ? this.exemplarInterval : DEFAULT_EXEMPLAR_INTERVAL;
+	}
+
+	public void setExemplarInterval(long seconds) {
+		log.debug("Setting exemplar interval to " + seconds);
+		this.exemplarInterval = seconds;
+	}
+
+	/**
+	 * @return the JMeter variable, e.g. a trace id, recorded with every
+	 *         exemplar.
+	 */
+	public String getExemplarVariable() {
+		return this.exemplarVariable == null ? "" : this.exemplarVariable;
+	}
+
+	public void setExemplarVariable(String variable) {
+		log.debug("Setting exemplar variable to " + variable);
+		this.exemplarVariable = variable;
+	}
+
+	/**
+	 * @return the path of the baseline the sampler series are compared with,
+	 *         empty for none.
+	 */
+	public String getBaselineFile() {
+		return this.baselineFile == null ? "" : this.baselineFile;
+	}
+
+	public void setBaselineFile(String path) {
+		log.debug("Setting baseline file to " + path);
+		this.baselineFile = path;
+	}
+
+	/**
+	 * @return the path the sampler series are saved to as a baseline when the
+	 *         test ends, empty for none.
+	 */
+	public String getBaselineSaveFile() {
+		return this.baselineSaveFile == null ? "" : this.baselineSaveFile;
+	}
+
+	public void setBaselineSaveFile(String path) {
+		log.debug("Setting baseline save file to " + path);
+		this.baselineSaveFile = path;
+	}
+
+	/**
+	 * @return how often the sampler series are compared with the baseline, in
+	 *         milliseconds.
+	 */
+	public long getBaselineInterval() {
+		return this.baselineInterval > 0 ? this.baselineInterval : DEFAULT_BASELINE_INTERVAL;
+	}
+
+	public void setBaselineInterval(long millis) {
+		log.debug("Setting baseline interval to " + millis);
+		this.baselineInterval = millis;
+	}
 }
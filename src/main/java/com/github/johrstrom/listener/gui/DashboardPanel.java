@@ -0,0 +1,335 @@
+package com.github.johrstrom.listener.gui;
+
+import java.awt.BorderLayout;
+import java.awt.CardLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.johrstrom.collector.LogHistogram;
+import com.github.johrstrom.collector.SeriesStore;
+import com.github.johrstrom.collector.SeriesView;
+import com.github.johrstrom.collector.Timing;
+
+/**
+ * A live table of the series the listener aggregates: throughput, error rate
+ * and duration quantiles per label tuple, along with a sparkline of the recent
+ * throughput. It reads snapshots of the listener's own series, so watching a
+ * test doesn't add another listener that processes every sample again.
+ *
+ * Snapshots are taken on a background thread while the panel is showing, only
+ * the finished rows are handed to the EDT. While there are no series, the
+ * panel says why instead of showing an empty table.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class DashboardPanel extends JPanel {
+
+	private static final long serialVersionUID = -2377286318251934718L;
+
+	private static final Logger log = LoggerFactory.getLogger(DashboardPanel.class);
+
+	public static final long REFRESH_MILLIS = 1000;
+	public static final int HISTORY = 60;
+
+	private static final double[] QUANTILES = new double[] { 0.5, 0.95, 0.99 };
+	private static final String[] COLUMNS = new String[] { "Series", "Samples", "Throughput/s", "Error %", "p50 ms",
+			"p95 ms", "p99 ms", "Throughput" };
+
+	private static final String TABLE = "table";
+	private static final String ABSENCE = "absence";
+
+	private final DashboardModel model = new DashboardModel();
+	private final CardLayout cards = new CardLayout();
+	private final JPanel content = new JPanel(this.cards);
+	private final JLabel absenceLabel = new JLabel("", SwingConstants.CENTER);
+	private transient volatile Supplier<SeriesStore> source = () -> null;
+	private transient volatile Supplier<String> absence = () -> "";
+	private transient ScheduledExecutorService refresher;
+
+	// only touched by the refreshing thread
+	private transient SeriesStore lastStore;
+	private transient long lastNanos;
+	private transient Map<List<String>, Row> rows = new HashMap<>();
+	private transient long[] counts = LogHistogram.newCounts();
+
+	public DashboardPanel() {
+		super(new BorderLayout());
+
+		JTable table = new JTable(this.model);
+		table.getColumnModel().getColumn(COLUMNS.length - 1).setCellRenderer(new Sparkline());
+		table.setPreferredScrollableViewportSize(new Dimension(600, 160));
+		this.content.add(new JScrollPane(table), TABLE);
+		this.content.add(this.absenceLabel, ABSENCE);
+		this.add(this.content, BorderLayout.CENTER);
+	}
+
+	/**
+	 * @param source
+	 *            - supplies the series to show, or null while there are none
+	 * @param absence
+	 *            - supplies why there are no series to show, called on the
+	 *            refreshing thread whenever the source supplies null
+	 */
+	public void setSource(Supplier<SeriesStore> source, Supplier<String> absence) {
+		this.source = source;
+		this.absence = absence;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.swing.JComponent#addNotify()
+	 */
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		this.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see javax.swing.JComponent#removeNotify()
+	 */
+	@Override
+	public void removeNotify() {
+		this.stop();
+		super.removeNotify();
+	}
+
+	private synchronized void start() {
+		if (this.refresher != null) {
+			return;
+		}
+
+		this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "prometheus-dashboard");
+			t.setDaemon(true);
+			return t;
+		});
+		this.refresher.scheduleWithFixedDelay(() -> {
+			try {
+				List<Row> snapshot = this.refresh();
+				String absence = snapshot == null ? this.absence.get() : null;
+				SwingUtilities.invokeLater(() -> this.show(snapshot, absence));
+			} catch (Exception e) {
+				log.error("Couldn't refresh the dashboard.", e);
+			}
+		}, 0, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void stop() {
+		if (this.refresher != null) {
+			this.refresher.shutdownNow();
+			this.refresher = null;
+		}
+	}
+
+	/**
+	 * Show the rows, or why there are none if they are null. Only called on
+	 * the EDT.
+	 */
+	private void show(List<Row> snapshot, String absence) {
+		if (snapshot == null) {
+			this.absenceLabel.setText(absence);
+			this.model.setRows(Collections.<Row> emptyList());
+			this.cards.show(this.content, ABSENCE);
+		} else {
+			this.model.setRows(snapshot);
+			this.cards.show(this.content, TABLE);
+		}
+	}
+
+	/**
+	 * Compute the rows from a snapshot of the series.
+	 * 
+	 * @return the rows, or null if there are no series
+	 */
+	private synchronized List<Row> refresh() {
+		SeriesStore store = this.source.get();
+		long now = System.nanoTime();
+		boolean first = store != this.lastStore;
+		if (first) {
+			// a new test, the old throughput history doesn't apply anymore
+			this.rows = new HashMap<>();
+			this.lastStore = store;
+		}
+		if (store == null) {
+			return null;
+		}
+
+		double seconds = (now - this.lastNanos) / 1e9;
+		this.lastNanos = now;
+
+		List<Row> snapshot = new ArrayList<>();
+		for (SeriesView s : store.snapshot()) {
+			Row last = this.rows.get(s.getLabelValues());
+			long count = s.getCount();
+
+			double[] history = new double[HISTORY];
+			// a series that shows up between two refreshes started from 0
+			double throughput = first ? 0 : (count - (last != null ? last.count : 0)) / seconds;
+			if (last != null) {
+				System.arraycopy(last.history, 1, history, 0, HISTORY - 1);
+			}
+			history[HISTORY - 1] = throughput;
+
+			Arrays.fill(this.counts, 0);
+			s.addTo(Timing.DURATION, this.counts);
+			double[] quantiles = new double[QUANTILES.length];
+			for (int i = 0; i < QUANTILES.length; i++) {
+				quantiles[i] = LogHistogram.count(this.counts) > 0
+						? LogHistogram.quantile(this.counts, QUANTILES[i]) * 1000 : Double.NaN;
+			}
+
+			Row row = new Row(String.join(" / ", s.getLabelValues()), count,
+					count > 0 ? s.getErrors() * 100.0 / count : 0, throughput, quantiles, history);
+			this.rows.put(s.getLabelValues(), row);
+			snapshot.add(row);
+		}
+
+		snapshot.sort((a, b) -> a.name.compareTo(b.name));
+		return snapshot;
+	}
+
+	/**
+	 * One immutable line of the table.
+	 */
+	private static class Row {
+
+		final String name;
+		final long count;
+		final double errorPercent;
+		final double throughput;
+		final double[] quantiles;
+		final double[] history;
+
+		Row(String name, long count, double errorPercent, double throughput, double[] quantiles, double[] history) {
+			this.name = name;
+			this.count = count;
+			this.errorPercent = errorPercent;
+			this.throughput = throughput;
+			this.quantiles = quantiles;
+			this.history = history;
+		}
+
+	}
+
+	private static class DashboardModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 3155408376127707593L;
+
+		private List<Row> rows = Collections.emptyList();
+
+		void setRows(List<Row> rows) {
+			this.rows = rows;
+			this.fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return this.rows.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			Row row = this.rows.get(rowIndex);
+			switch (columnIndex) {
+			case 0:
+				return row.name;
+			case 1:
+				return row.count;
+			case 2:
+				return String.format("%.1f", row.throughput);
+			case 3:
+				return String.format("%.2f", row.errorPercent);
+			case 4:
+			case 5:
+			case 6:
+				double value = row.quantiles[columnIndex - 4];
+				return Double.isNaN(value) ? "" : String.format("%.1f", value);
+			default:
+				return row.history;
+			}
+		}
+
+	}
+
+	/**
+	 * Draws the throughput history of a row, scaled to its own maximum.
+	 */
+	private static class Sparkline extends JComponent implements TableCellRenderer {
+
+		private static final long serialVersionUID = -6405427766829604165L;
+
+		private double[] history = new double[0];
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+				boolean hasFocus, int row, int column) {
+			this.history = (double[]) value;
+			this.setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+			return this;
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			g.setColor(this.getBackground());
+			g.fillRect(0, 0, this.getWidth(), this.getHeight());
+
+			double max = 0;
+			for (double v : this.history) {
+				max = Math.max(max, v);
+			}
+			if (max == 0 || this.history.length < 2) {
+				return;
+			}
+
+			g.setColor(new Color(0x1f, 0x77, 0xb4));
+			int h = this.getHeight() - 2;
+			double step = (this.getWidth() - 1) / (double) (this.history.length - 1);
+			for (int i = 1; i < this.history.length; i++) {
+				g.drawLine((int) ((i - 1) * step), 1 + h - (int) (this.history[i - 1] / max * h), (int) (i * step),
+						1 + h - (int) (this.history[i] / max * h));
+			}
+		}
+
+	}
+
+}
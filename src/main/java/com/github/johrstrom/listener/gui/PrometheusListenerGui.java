@@ -19,11 +19,18 @@
 package com.github.johrstrom.listener.gui;
 
 import java.awt.BorderLayout;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
 
 import org.apache.jmeter.gui.util.HorizontalPanel;
@@ -33,6 +40,8 @@ import org.apache.jmeter.visualizers.gui.AbstractListenerGui;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.johrstrom.collector.Engine;
+import com.github.johrstrom.collector.SeriesCollector;
 import com.github.johrstrom.listener.PrometheusListener;
 import com.github.johrstrom.listener.PrometheusSaveConfig;
 
@@ -62,6 +71,12 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 	
 	//Server related configs
 	private JTextField portTextField;
+	private JTextField scrapeCacheTextField;
+	private JTextField scrapeThreadsTextField;
+	
+	//Mapped file configs
+	private JTextField mappedFileTextField;
+	private JTextField mappedFileIntervalTextField;
 	
 	//Assertion related configs
 	private JComboBox<String> assertionComboBox;
@@ -70,6 +85,64 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 	private JCheckBox codeCheckBox;
 	private JCheckBox labelsCheckBox;
 	private JCheckBox successCheckBox;
+	private JCheckBox threadGroupCheckBox;
+	private JCheckBox controllerCheckBox;
+	private JCheckBox reasonCheckBox;
+	private JTextField reasonClassesTextField;
+	
+	//Normalization configs
+	private JCheckBox codeClassesCheckBox;
+	private JTextArea codeRulesTextArea;
+	private JTextArea labelRulesTextArea;
+	
+	//Filter configs
+	private JTextArea filterRulesTextArea;
+	
+	//Sampling configs
+	private JComboBox<Engine> engineComboBox;
+	private JCheckBox adaptiveCheckBox;
+	private JTextField budgetTextField;
+	private JCheckBox offHeapCheckBox;
+	
+	//Coordinated omission configs
+	private JCheckBox correctionCheckBox;
+	private JCheckBox learnIntervalsCheckBox;
+	private JTextArea intervalRulesTextArea;
+	
+	//Sliding window configs
+	private JTextField windowTextField;
+	private JTextField windowBucketsTextField;
+	
+	//Apdex and SLO configs
+	private JCheckBox apdexCheckBox;
+	private JTextField apdexThresholdTextField;
+	private JTextField sloThresholdsTextField;
+	
+	//Family configs, checked families are exposed
+	private Map<String, JCheckBox> familyCheckBoxes = new LinkedHashMap<>();
+	
+	//StatsD configs
+	private JCheckBox statsdCheckBox;
+	private JTextField statsdHostTextField;
+	private JTextField statsdPortTextField;
+	private JTextField statsdIntervalTextField;
+	private JCheckBox statsdTagsCheckBox;
+	
+	//Exemplar configs
+	private JCheckBox exemplarsCheckBox;
+	private JTextField exemplarSizeTextField;
+	private JTextField exemplarIntervalTextField;
+	private JTextField exemplarVariableTextField;
+	
+	//Baseline configs
+	private JTextField baselineFileTextField;
+	private JTextField baselineSaveFileTextField;
+	private JTextField baselineIntervalTextField;
+	
+	//Live view of the running listener's series
+	private DashboardPanel dashboardPanel;
+	// the element the GUI shows, the dashboard shows the series of its running copy
+	private transient volatile PrometheusListener shownListener;
 
 	/**
 	 * Default constructor
@@ -132,6 +205,16 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 
 			this.modifyTestElementForAssertionClass(config);
 			this.modifyTestElementForLabels(config);
+			this.modifyTestElementForNormalization(config);
+			this.modifyTestElementForFilters(config);
+			this.modifyTestElementForSampling(config);
+			this.modifyTestElementForCorrection(config);
+			this.modifyTestElementForWindow(config);
+			this.modifyTestElementForApdex(config);
+			this.modifyTestElementForFamilies(config);
+			this.modifyTestElementForStatsd(config);
+			this.modifyTestElementForExemplars(config);
+			this.modifyTestElementForBaseline(config);
 			
 			listener.setSaveConfig(config);
 		}
@@ -149,6 +232,142 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		config.setSaveCode(this.codeCheckBox.isSelected());
 		config.setSaveLabel(this.labelsCheckBox.isSelected());
 		config.setSaveSuccess(this.successCheckBox.isSelected());
+		config.setSaveThreadGroup(this.threadGroupCheckBox.isSelected());
+		config.setSaveController(this.controllerCheckBox.isSelected());
+		config.setSaveFailureReasons(this.reasonCheckBox.isSelected());
+		
+		int classes = config.getFailureReasonClasses();
+		try {
+			classes = Integer.parseInt(this.reasonClassesTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to int. Using {} reason classes.", 
+					e.getClass(), this.reasonClassesTextField.getText(), classes);
+		}
+		
+		config.setFailureReasonClasses(classes);
+	}
+	
+	private void modifyTestElementForNormalization(PrometheusSaveConfig config){
+		config.setCodeClasses(this.codeClassesCheckBox.isSelected());
+		config.setCodeRules(this.codeRulesTextArea.getText());
+		config.setLabelRules(this.labelRulesTextArea.getText());
+	}
+	
+	private void modifyTestElementForFilters(PrometheusSaveConfig config){
+		config.setFilterRules(this.filterRulesTextArea.getText());
+	}
+	
+	private void modifyTestElementForSampling(PrometheusSaveConfig config){
+		config.setEngine((Engine) this.engineComboBox.getSelectedItem());
+		config.setAdaptiveSampling(this.adaptiveCheckBox.isSelected());
+		
+		long budget = config.getAdaptiveBudget();
+		try {
+			budget = Long.parseLong(this.budgetTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to long. Using {} budget.", 
+					e.getClass(), this.budgetTextField.getText(), budget);
+		}
+		
+		config.setAdaptiveBudget(budget);
+		config.setOffHeap(this.offHeapCheckBox.isSelected());
+	}
+	
+	private void modifyTestElementForCorrection(PrometheusSaveConfig config){
+		config.setCorrection(this.correctionCheckBox.isSelected());
+		config.setLearnIntervals(this.learnIntervalsCheckBox.isSelected());
+		config.setIntervalRules(this.intervalRulesTextArea.getText());
+	}
+	
+	private void modifyTestElementForWindow(PrometheusSaveConfig config){
+		long window = config.getWindowSeconds();
+		int buckets = config.getWindowBuckets();
+		try {
+			window = Long.parseLong(this.windowTextField.getText());
+			buckets = Integer.parseInt(this.windowBucketsTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse window settings. Using window {} and buckets {}.", 
+					e.getClass(), window, buckets);
+		}
+		
+		config.setWindowSeconds(window);
+		config.setWindowBuckets(buckets);
+	}
+	
+	private void modifyTestElementForApdex(PrometheusSaveConfig config){
+		config.setSaveApdex(this.apdexCheckBox.isSelected());
+		config.setSloThresholds(this.sloThresholdsTextField.getText().trim());
+		
+		long threshold = config.getApdexThreshold();
+		try {
+			threshold = Long.parseLong(this.apdexThresholdTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to long. Using {} apdex threshold.", 
+					e.getClass(), this.apdexThresholdTextField.getText(), threshold);
+		}
+		
+		config.setApdexThreshold(threshold);
+	}
+	
+	private void modifyTestElementForFamilies(PrometheusSaveConfig config){
+		Set<String> hidden = new LinkedHashSet<>();
+		for (Map.Entry<String, JCheckBox> entry : this.familyCheckBoxes.entrySet()) {
+			if (!entry.getValue().isSelected()) {
+				hidden.add(entry.getKey());
+			}
+		}
+		config.setHiddenFamilies(hidden);
+	}
+	
+	private void modifyTestElementForStatsd(PrometheusSaveConfig config){
+		config.setSaveStatsd(this.statsdCheckBox.isSelected());
+		config.setStatsdHost(this.statsdHostTextField.getText().trim());
+		config.setStatsdTags(this.statsdTagsCheckBox.isSelected());
+		
+		int port = config.getStatsdPort();
+		long interval = config.getStatsdInterval();
+		try {
+			port = Integer.parseInt(this.statsdPortTextField.getText());
+			interval = Long.parseLong(this.statsdIntervalTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse StatsD settings. Using port {} and interval {}.", 
+					e.getClass(), port, interval);
+		}
+		
+		config.setStatsdPort(port);
+		config.setStatsdInterval(interval);
+	}
+	
+	private void modifyTestElementForBaseline(PrometheusSaveConfig config){
+		config.setBaselineFile(this.baselineFileTextField.getText().trim());
+		config.setBaselineSaveFile(this.baselineSaveFileTextField.getText().trim());
+		
+		long interval = config.getBaselineInterval();
+		try {
+			interval = Long.parseLong(this.baselineIntervalTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse the baseline interval. Using {}.", e.getClass(), interval);
+		}
+		
+		config.setBaselineInterval(interval);
+	}
+	
+	private void modifyTestElementForExemplars(PrometheusSaveConfig config){
+		config.setSaveExemplars(this.exemplarsCheckBox.isSelected());
+		config.setExemplarVariable(this.exemplarVariableTextField.getText().trim());
+		
+		int size = config.getExemplarSize();
+		long interval = config.getExemplarInterval();
+		try {
+			size = Integer.parseInt(this.exemplarSizeTextField.getText());
+			interval = Long.parseLong(this.exemplarIntervalTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse exemplar settings. Using size {} and interval {}.", 
+					e.getClass(), size, interval);
+		}
+		
+		config.setExemplarSize(size);
+		config.setExemplarInterval(interval);
 	}
 
 	/*
@@ -176,12 +395,28 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 	public void configure(TestElement element) {
 		super.configure(element);
 		if (element instanceof PrometheusListener) {
-			PrometheusSaveConfig config = ((PrometheusListener) element).getSaveConfig();
+			PrometheusListener listener = (PrometheusListener) element;
+			this.shownListener = listener;
+			PrometheusSaveConfig config = listener.getSaveConfig();
 			
 			this.portTextField.setText(Integer.toString(config.getPort()));
+			this.scrapeCacheTextField.setText(Long.toString(config.getScrapeCacheMillis()));
+			this.scrapeThreadsTextField.setText(Integer.toString(config.getScrapeParallelism()));
+			this.mappedFileTextField.setText(config.getMappedFile());
+			this.mappedFileIntervalTextField.setText(Long.toString(config.getMappedFileInterval()));
 			
 			this.configureAssertionClass(config);
 			this.configureLabels(config);
+			this.configureNormalization(config);
+			this.configureFilters(config);
+			this.configureSampling(config);
+			this.configureCorrection(config);
+			this.configureWindow(config);
+			this.configureApdex(config);
+			this.configureFamilies(config);
+			this.configureStatsd(config);
+			this.configureExemplars(config);
+			this.configureBaseline(config);
 		}
 	}
 	
@@ -200,6 +435,72 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		this.codeCheckBox.setSelected(config.saveCode());
 		this.successCheckBox.setSelected(config.saveSuccess());
 		this.labelsCheckBox.setSelected(config.saveLabel());
+		this.threadGroupCheckBox.setSelected(config.saveThreadGroup());
+		this.controllerCheckBox.setSelected(config.saveController());
+		this.reasonCheckBox.setSelected(config.saveFailureReasons());
+		this.reasonClassesTextField.setText(Integer.toString(config.getFailureReasonClasses()));
+	}
+	
+	private void configureNormalization(PrometheusSaveConfig config){
+		this.codeClassesCheckBox.setSelected(config.codeClasses());
+		this.codeRulesTextArea.setText(config.getCodeRules());
+		this.labelRulesTextArea.setText(config.getLabelRules());
+	}
+	
+	private void configureFilters(PrometheusSaveConfig config){
+		this.filterRulesTextArea.setText(config.getFilterRules());
+	}
+	
+	private void configureSampling(PrometheusSaveConfig config){
+		this.engineComboBox.setSelectedItem(config.getEngine());
+		this.adaptiveCheckBox.setSelected(config.adaptiveSampling());
+		this.budgetTextField.setText(Long.toString(config.getAdaptiveBudget()));
+		this.offHeapCheckBox.setSelected(config.offHeap());
+	}
+	
+	private void configureCorrection(PrometheusSaveConfig config){
+		this.correctionCheckBox.setSelected(config.correction());
+		this.learnIntervalsCheckBox.setSelected(config.learnIntervals());
+		this.intervalRulesTextArea.setText(config.getIntervalRules());
+	}
+	
+	private void configureWindow(PrometheusSaveConfig config){
+		this.windowTextField.setText(Long.toString(config.getWindowSeconds()));
+		this.windowBucketsTextField.setText(Integer.toString(config.getWindowBuckets()));
+	}
+	
+	private void configureApdex(PrometheusSaveConfig config){
+		this.apdexCheckBox.setSelected(config.saveApdex());
+		this.apdexThresholdTextField.setText(Long.toString(config.getApdexThreshold()));
+		this.sloThresholdsTextField.setText(config.getSloThresholds());
+	}
+	
+	private void configureFamilies(PrometheusSaveConfig config){
+		Set<String> hidden = config.getHiddenFamilies();
+		for (Map.Entry<String, JCheckBox> entry : this.familyCheckBoxes.entrySet()) {
+			entry.getValue().setSelected(!hidden.contains(entry.getKey()));
+		}
+	}
+	
+	private void configureStatsd(PrometheusSaveConfig config){
+		this.statsdCheckBox.setSelected(config.saveStatsd());
+		this.statsdHostTextField.setText(config.getStatsdHost());
+		this.statsdPortTextField.setText(Integer.toString(config.getStatsdPort()));
+		this.statsdIntervalTextField.setText(Long.toString(config.getStatsdInterval()));
+		this.statsdTagsCheckBox.setSelected(config.statsdTags());
+	}
+	
+	private void configureExemplars(PrometheusSaveConfig config){
+		this.exemplarsCheckBox.setSelected(config.saveExemplars());
+		this.exemplarSizeTextField.setText(Integer.toString(config.getExemplarSize()));
+		this.exemplarIntervalTextField.setText(Long.toString(config.getExemplarInterval()));
+		this.exemplarVariableTextField.setText(config.getExemplarVariable());
+	}
+
+	private void configureBaseline(PrometheusSaveConfig config){
+		this.baselineFileTextField.setText(config.getBaselineFile());
+		this.baselineSaveFileTextField.setText(config.getBaselineSaveFile());
+		this.baselineIntervalTextField.setText(Long.toString(config.getBaselineInterval()));
 	}
 
 	/**
@@ -227,12 +528,57 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		VerticalPanel panel = new VerticalPanel();
 		
 		panel.add(this.createServerPanel());
+		panel.add(this.createMappedFilePanel());
 		panel.add(this.createLabelsPanel());
+		panel.add(this.createNormalizationPanel());
+		panel.add(this.createFiltersPanel());
+		panel.add(this.createSamplingPanel());
+		panel.add(this.createCorrectionPanel());
+		panel.add(this.createWindowPanel());
+		panel.add(this.createApdexPanel());
+		panel.add(this.createFamiliesPanel());
+		panel.add(this.createStatsdPanel());
+		panel.add(this.createExemplarsPanel());
+		panel.add(this.createBaselinePanel());
 		panel.add(this.createAssertionsPanel());
+		panel.add(this.createDashboardPanel());
 		
 		return panel;
 	}
 	
+	/**
+	 * Explain why the dashboard has no series to show.
+	 * 
+	 * @return - the explanation
+	 */
+	private String getDashboardAbsence() {
+		PrometheusListener running = PrometheusListener.getRunning(this.shownListener);
+		if (running == null) {
+			return "Not the listener of a running test, its series show up here while it is.";
+		}
+		if (running.getSaveConfig().getEngine() == Engine.SIMPLECLIENT) {
+			return "No series to show, the " + Engine.SIMPLECLIENT + " engine doesn't keep any. Pick another engine to see them here.";
+		}
+		return "No series to show, this listener doesn't keep any.";
+	}
+
+	/**
+	 * Create the panel that shows the series of the listener while a test
+	 * runs.
+	 * 
+	 * @return - the dashboard panel
+	 */
+	protected JPanel createDashboardPanel() {
+		this.dashboardPanel = new DashboardPanel();
+		this.dashboardPanel.setSource(() -> {
+			PrometheusListener running = PrometheusListener.getRunning(this.shownListener);
+			return running == null ? null : running.getSeriesStore();
+		}, this::getDashboardAbsence);
+		this.dashboardPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Dashboard"));
+		
+		return this.dashboardPanel;
+	}
+	
 	protected JPanel createLabelsPanel() {
 		HorizontalPanel panel = new HorizontalPanel();
 		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Labels"));
@@ -246,6 +592,263 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		this.successCheckBox = new JCheckBox("Success");
 		panel.add(this.successCheckBox);
 		
+		this.threadGroupCheckBox = new JCheckBox("Thread group");
+		panel.add(this.threadGroupCheckBox);
+		
+		this.controllerCheckBox = new JCheckBox("Controller");
+		panel.add(this.controllerCheckBox);
+		
+		this.reasonCheckBox = new JCheckBox("Failure reason");
+		panel.add(this.reasonCheckBox);
+		
+		this.reasonClassesTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Reason classes:", this.reasonClassesTextField));
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the normalization rules for response codes
+	 * and sampler labels. Rules are one per line in the form 'regex =&gt; value'.
+	 * 
+	 * @return - the normalization panel
+	 */
+	protected JPanel createNormalizationPanel() {
+		VerticalPanel panel = new VerticalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+				"Normalization (one 'regex => value' rule per line)"));
+		
+		this.codeClassesCheckBox = new JCheckBox("Group codes into classes (2xx, 4xx, 5xx)");
+		panel.add(this.codeClassesCheckBox);
+		
+		this.codeRulesTextArea = new JTextArea(3, 40);
+		panel.add(this.createRulesPanel("Code Rules:", this.codeRulesTextArea));
+		
+		this.labelRulesTextArea = new JTextArea(3, 40);
+		panel.add(this.createRulesPanel("Label Rules:", this.labelRulesTextArea));
+		
+		return panel;
+	}
+	
+	/**
+	 * Create the panel that holds the rules deciding which samples are
+	 * accounted for at all.
+	 * 
+	 * @return - the filters panel
+	 */
+	protected JPanel createFiltersPanel() {
+		VerticalPanel panel = new VerticalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+				"Filters (one 'name|group|class: regex => include|exclude' rule per line)"));
+		
+		this.filterRulesTextArea = new JTextArea(3, 40);
+		panel.add(this.createRulesPanel("Filter Rules:", this.filterRulesTextArea));
+		
+		return panel;
+	}
+	
+	private JPanel createRulesPanel(String title, JTextArea textArea) {
+		JPanel panel = new JPanel(new BorderLayout(5, 0));
+		panel.add(new JLabel(title), BorderLayout.WEST);
+		panel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the engine and adaptive sampling
+	 * configuration.
+	 * 
+	 * @return - the sampling panel
+	 */
+	protected JPanel createSamplingPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Sampling"));
+		
+		JPanel enginePanel = new JPanel(new BorderLayout(5, 0));
+		this.engineComboBox = new JComboBox<>(Engine.values());
+		enginePanel.add(new JLabel("Engine:"), BorderLayout.WEST);
+		enginePanel.add(this.engineComboBox, BorderLayout.CENTER);
+		panel.add(enginePanel);
+		
+		this.adaptiveCheckBox = new JCheckBox("Adaptive sampling");
+		panel.add(this.adaptiveCheckBox);
+		
+		this.budgetTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Observations per second:", this.budgetTextField));
+		
+		this.offHeapCheckBox = new JCheckBox("Off-heap series");
+		panel.add(this.offHeapCheckBox);
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the coordinated omission correction and the
+	 * expected interval of every sampler.
+	 * 
+	 * @return - the correction panel
+	 */
+	protected JPanel createCorrectionPanel() {
+		VerticalPanel panel = new VerticalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+				"Coordinated Omission (one 'regex => milliseconds' rule per line)"));
+		
+		HorizontalPanel checkBoxes = new HorizontalPanel();
+		this.correctionCheckBox = new JCheckBox("Corrected durations");
+		checkBoxes.add(this.correctionCheckBox);
+		this.learnIntervalsCheckBox = new JCheckBox("Learn intervals of other samplers");
+		checkBoxes.add(this.learnIntervalsCheckBox);
+		panel.add(checkBoxes);
+		
+		this.intervalRulesTextArea = new JTextArea(3, 40);
+		panel.add(this.createRulesPanel("Expected Intervals:", this.intervalRulesTextArea));
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the window of the windowed duration
+	 * quantiles, a window of 0 leaves them out.
+	 * 
+	 * @return - the window panel
+	 */
+	protected JPanel createWindowPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Sliding Window"));
+		
+		this.windowTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Window (s):", this.windowTextField));
+		
+		this.windowBucketsTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Buckets:", this.windowBucketsTextField));
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the Apdex threshold and the SLO thresholds,
+	 * all in milliseconds.
+	 * 
+	 * @return - the apdex panel
+	 */
+	protected JPanel createApdexPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Apdex and SLOs"));
+		
+		this.apdexCheckBox = new JCheckBox("Threshold counters");
+		panel.add(this.apdexCheckBox);
+		
+		this.apdexThresholdTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Apdex T (ms):", this.apdexThresholdTextField));
+		
+		this.sloThresholdsTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("SLO thresholds (ms):", this.sloThresholdsTextField));
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that toggles the sampler families, unchecked ones are
+	 * left out of the exposition.
+	 * 
+	 * @return - the families panel
+	 */
+	protected JPanel createFamiliesPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Families"));
+		
+		for (String family : SeriesCollector.FAMILIES) {
+			JCheckBox checkBox = new JCheckBox(family.replaceFirst("^jmeter_samples_", ""));
+			this.familyCheckBoxes.put(family, checkBox);
+			panel.add(checkBox);
+		}
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the StatsD server the sampler series are
+	 * sent to as well.
+	 * 
+	 * @return - the StatsD panel
+	 */
+	protected JPanel createStatsdPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"StatsD"));
+		
+		this.statsdCheckBox = new JCheckBox("Send series");
+		panel.add(this.statsdCheckBox);
+		
+		this.statsdHostTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Host:", this.statsdHostTextField));
+		
+		this.statsdPortTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Port:", this.statsdPortTextField));
+		
+		this.statsdIntervalTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Interval (ms):", this.statsdIntervalTextField));
+		
+		this.statsdTagsCheckBox = new JCheckBox("DogStatsD tags");
+		panel.add(this.statsdTagsCheckBox);
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the baseline the sampler series are
+	 * compared with and the one they're saved to when the test ends.
+	 * 
+	 * @return - the baseline panel
+	 */
+	protected JPanel createBaselinePanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Baseline"));
+		
+		this.baselineFileTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Compare with:", this.baselineFileTextField));
+		
+		this.baselineSaveFileTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Save to:", this.baselineSaveFileTextField));
+		
+		this.baselineIntervalTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Interval (ms):", this.baselineIntervalTextField));
+		
+		return panel;
+	}
+
+	/**
+	 * Create the panel that holds the exemplar configuration. Exemplars are
+	 * only served to scrapers that accept OpenMetrics, on the buckets of the
+	 * native histograms, so they can only be enabled with that engine.
+	 * 
+	 * @return - the exemplars panel
+	 */
+	protected JPanel createExemplarsPanel() {
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Exemplars"));
+		
+		this.exemplarsCheckBox = new JCheckBox("Slowest samples (native histograms only)");
+		this.exemplarsCheckBox.setEnabled(false);
+		this.engineComboBox.addItemListener(e -> this.exemplarsCheckBox
+				.setEnabled(this.engineComboBox.getSelectedItem() == Engine.NATIVE_HISTOGRAM));
+		panel.add(this.exemplarsCheckBox);
+		
+		this.exemplarSizeTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Per series:", this.exemplarSizeTextField));
+		
+		this.exemplarIntervalTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Interval (s):", this.exemplarIntervalTextField));
+		
+		this.exemplarVariableTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Trace variable:", this.exemplarVariableTextField));
+		
+		return panel;
+	}
+	
+	private JPanel createTextFieldPanel(String title, JTextField textField) {
+		JPanel panel = new JPanel(new BorderLayout(5, 0));
+		panel.add(new JLabel(title), BorderLayout.WEST);
+		panel.add(textField, BorderLayout.CENTER);
 		return panel;
 	}
 
@@ -260,10 +863,36 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		
 		panel.add(this.createPortPanel());
 		
+		this.scrapeCacheTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Scrape cache (ms):", this.scrapeCacheTextField));
+		
+		this.scrapeThreadsTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Scrape threads:", this.scrapeThreadsTextField));
+		
 		return panel;
 	}
 	
 	
+	/**
+	 * Create the panel that holds the memory mapped file the metrics are
+	 * published to, for agents that can't scrape the port. Port 0 leaves the
+	 * http server out.
+	 * 
+	 * @return - the mapped file panel
+	 */
+	protected JPanel createMappedFilePanel(){
+		HorizontalPanel panel = new HorizontalPanel();
+		panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),"Mapped File"));
+		
+		this.mappedFileTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Path:", this.mappedFileTextField));
+		
+		this.mappedFileIntervalTextField = new JTextField();
+		panel.add(this.createTextFieldPanel("Interval (ms):", this.mappedFileIntervalTextField));
+		
+		return panel;
+	}
+	
 	/**
 	 * Create the panel that holds the {@link #portTextField} for configuring the servers port.
 	 * 
@@ -298,6 +927,37 @@ public class PrometheusListenerGui extends AbstractListenerGui {
 		}
 		
 		config.setPort(port);
+		
+		long cacheMillis = config.getScrapeCacheMillis();
+		try {
+			cacheMillis = Long.parseLong(this.scrapeCacheTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to long. Using {} scrape cache.", 
+					e.getClass(), this.scrapeCacheTextField.getText(), cacheMillis);
+		}
+		
+		config.setScrapeCacheMillis(cacheMillis);
+		
+		int threads = config.getScrapeParallelism();
+		try {
+			threads = Integer.parseInt(this.scrapeThreadsTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to int. Using {} scrape threads.", 
+					e.getClass(), this.scrapeThreadsTextField.getText(), threads);
+		}
+		
+		config.setScrapeParallelism(threads);
+		
+		config.setMappedFile(this.mappedFileTextField.getText().trim());
+		long interval = config.getMappedFileInterval();
+		try {
+			interval = Long.parseLong(this.mappedFileIntervalTextField.getText());
+		} catch (NumberFormatException e){
+			log.error("Caught {} while trying to parse {} to long. Using {} mapped file interval.", 
+					e.getClass(), this.mappedFileIntervalTextField.getText(), interval);
+		}
+		
+		config.setMappedFileInterval(interval);
 	}
 	
 	
@@ -0,0 +1,147 @@
+package com.github.johrstrom.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent memo of a bounded number of entries that evicts with the
+ * second-chance (clock) policy: a hit only marks its entry as referenced, and
+ * when the cache is full a clock hand sweeps the entries, evicting those that
+ * weren't referenced since its last pass and clearing the mark of the others.
+ *
+ * Values that keep being looked up therefore stay cached however many one-off
+ * keys pass through, while hits remain a lock-free map lookup. Only misses
+ * that have to evict take a lock, and they are the ones that compute a value
+ * anyway.
+ *
+ * @author Jeff Ohrstrom
+ *
+ * @param <K>
+ *            - the type of the keys
+ * @param <V>
+ *            - the type of the values
+ */
+public class BoundedCache<K, V> {
+
+	private final int capacity;
+	private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+	// guarded by this
+	private Iterator<Entry<V>> hand;
+
+	/**
+	 * @param capacity
+	 *            - the maximum number of entries, nothing is cached if it's
+	 *            not positive
+	 */
+	public BoundedCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param key
+	 *            - the key to look up
+	 * @return the cached value or null if there is none
+	 */
+	public V get(K key) {
+		Entry<V> entry = this.entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		// only write when it changes, hits on hot entries stay reads
+		if (!entry.referenced) {
+			entry.referenced = true;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Cache a value, evicting entries first if the cache is full.
+	 *
+	 * @param key
+	 *            - the key of the value
+	 * @param value
+	 *            - the value, not null
+	 */
+	public void put(K key, V value) {
+		if (this.capacity <= 0) {
+			return;
+		}
+		if (this.entries.size() >= this.capacity) {
+			this.evict();
+		}
+		this.entries.put(key, new Entry<>(value));
+	}
+
+	/**
+	 * Cache a value unless there already is one, evicting entries first if
+	 * the cache is full.
+	 *
+	 * @param key
+	 *            - the key of the value
+	 * @param value
+	 *            - the value, not null
+	 * @return the value that was already cached, or null if there was none
+	 */
+	public V putIfAbsent(K key, V value) {
+		if (this.capacity <= 0) {
+			return null;
+		}
+		if (this.entries.size() >= this.capacity) {
+			this.evict();
+		}
+		Entry<V> existing = this.entries.putIfAbsent(key, new Entry<>(value));
+		return existing == null ? null : existing.value;
+	}
+
+	/**
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	private synchronized void evict() {
+		// every entry is either evicted or loses its mark on a pass, so this
+		// ends after two passes at most
+		while (this.entries.size() >= this.capacity) {
+			if (this.hand == null || !this.hand.hasNext()) {
+				this.hand = this.entries.values().iterator();
+				if (!this.hand.hasNext()) {
+					return;
+				}
+			}
+
+			Entry<V> entry = this.hand.next();
+			if (entry.referenced) {
+				entry.referenced = false;
+			} else {
+				this.hand.remove();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{cached: " + this.entries.size() + "/" + this.capacity + "}";
+	}
+
+	private static class Entry<V> {
+
+		final V value;
+		volatile boolean referenced;
+
+		Entry(V value) {
+			this.value = value;
+		}
+
+	}
+
+}
@@ -21,12 +21,16 @@ public class CollectorConfig implements Serializable {
 	
 	private String[] labels = new String[]{};
 	private transient Method[] methods = new Method[]{};
+	private transient LabelValueMapper[] normalizers = new LabelValueMapper[]{};
 	
 	public static final String SAMPLER_NAME_LABEL = "sampler_name";
 	public static final String ASSERTION_NAME_LABEL = "assertion_name";
 	public static final String SUCCESS_LABEL = "success";
 	public static final String FAILURE_LABEL = "failure";
 	public static final String CODE_LABEL = "code";
+	public static final String REASON_LABEL = "reason";
+	public static final String THREAD_GROUP_LABEL = "thread_group";
+	public static final String CONTROLLER_LABEL = "controller";
 	
 	/**
 	 * Get all the labels for this Collector.
@@ -65,6 +69,16 @@ public class CollectorConfig implements Serializable {
 		this.methods = methods;
 	}
 	
+	/**
+	 * Get an array of the normalizers to apply to the value each getter
+	 * method returns, in the same order as {@link #getMethods()}.
+	 * 
+	 * @return - an ordered array of normalizers.
+	 */
+	public LabelValueMapper[] getNormalizers() {
+		return this.normalizers;
+	}
+	
 	/**
 	 * Add a label to the list of labels.
 	 * 
@@ -83,10 +97,25 @@ public class CollectorConfig implements Serializable {
 	 * @param m - the method to add
 	 */
 	public void addGetterMethod(Method m){
+		this.addGetterMethod(m, LabelNormalizer.IDENTITY);
+	}
+	
+	/**
+	 * Add a method to the list of methods whose value is normalized before
+	 * being used as a label value.
+	 * 
+	 * @param m - the method to add
+	 * @param normalizer - the normalizer to apply to the method's value
+	 */
+	public void addGetterMethod(Method m, LabelValueMapper normalizer){
 		int len = this.getMethods().length;
 		Method[] newArr = Arrays.copyOf(this.getMethods(), len+1);
 		newArr[len] = m;
 		this.setMethods(newArr);
+		
+		LabelValueMapper[] newNormalizers = Arrays.copyOf(this.getNormalizers(), len+1);
+		newNormalizers[len] = normalizer;
+		this.normalizers = newNormalizers;
 	}
 	
 	/**
@@ -96,8 +125,20 @@ public class CollectorConfig implements Serializable {
 	 * @throws SecurityException
 	 */
 	public void saveSamplerLabel() throws NoSuchMethodException, SecurityException {
+		this.saveSamplerLabel(LabelNormalizer.IDENTITY);
+	}
+	
+	/**
+	 * Convenience method for exposing sampler labels mapped through 
+	 * normalization rules.
+	 * 
+	 * @param normalizer - the rules to apply to the sampler label
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveSamplerLabel(LabelNormalizer normalizer) throws NoSuchMethodException, SecurityException {
 		this.addLabel(SAMPLER_NAME_LABEL);
-		this.addGetterMethod(SampleResult.class.getMethod("getSampleLabel"));
+		this.addGetterMethod(SampleResult.class.getMethod("getSampleLabel"), normalizer);
 	}
 
 	/**
@@ -118,8 +159,55 @@ public class CollectorConfig implements Serializable {
 	 * @throws SecurityException
 	 */
 	public void saveSamlerCode() throws NoSuchMethodException, SecurityException {
+		this.saveSamlerCode(LabelNormalizer.IDENTITY);
+	}
+	
+	/**
+	 * Convenience method for exposing sampler response code mapped through
+	 * normalization rules.
+	 * 
+	 * @param normalizer - the rules to apply to the response code
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveSamlerCode(LabelNormalizer normalizer) throws NoSuchMethodException, SecurityException {
 		this.addLabel(CODE_LABEL);
-		this.addGetterMethod(SampleResult.class.getMethod("getResponseCode"));
+		this.addGetterMethod(SampleResult.class.getMethod("getResponseCode"), normalizer);
+	}
+	
+	/**
+	 * Convenience method for exposing why samples failed, classified from
+	 * their response message.
+	 * 
+	 * @param classifier - maps the response message to a reason
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveSamplerFailureReason(FailureClassifier classifier) throws NoSuchMethodException, SecurityException {
+		this.addLabel(REASON_LABEL);
+		this.addGetterMethod(SampleResult.class.getMethod("getResponseMessage"), classifier);
+	}
+	
+	/**
+	 * Convenience method for exposing the thread group of samples.
+	 * 
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveSamplerThreadGroup() throws NoSuchMethodException, SecurityException {
+		this.addLabel(THREAD_GROUP_LABEL);
+		this.addGetterMethod(SamplerContext.class.getMethod("getThreadGroup"));
+	}
+	
+	/**
+	 * Convenience method for exposing the controllers that hold the sampler.
+	 * 
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveSamplerController() throws NoSuchMethodException, SecurityException {
+		this.addLabel(CONTROLLER_LABEL);
+		this.addGetterMethod(SamplerContext.class.getMethod("getController"));
 	}
 	
 	/**
@@ -133,6 +221,19 @@ public class CollectorConfig implements Serializable {
 		this.addGetterMethod(AssertionResult.class.getMethod("isFailure"));
 	}
 	
+	/**
+	 * Convenience method for exposing why assertions failed, classified from
+	 * their failure message.
+	 * 
+	 * @param classifier - maps the failure message to a reason
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public void saveAssertionFailureReason(FailureClassifier classifier) throws NoSuchMethodException, SecurityException {
+		this.addLabel(REASON_LABEL);
+		this.addGetterMethod(AssertionResult.class.getMethod("getFailureMessage"), classifier);
+	}
+	
 	/**
 	 * Convenience method for exposing assertion names.
 	 * 
@@ -176,6 +277,13 @@ public class CollectorConfig implements Serializable {
 			sb.append("],");
 		}
 		
+		//print any normalizers that aren't a no-op
+		for(int i = 0; i < this.getNormalizers().length; i++){
+			if(!this.getNormalizers()[i].isIdentity()){
+				sb.append(String.format("%s: %s,", this.getLabels()[i], this.getNormalizers()[i].toString()));
+			}
+		}
+		
 		sb.append("}");
 		return sb.toString();
 	}
@@ -0,0 +1,176 @@
+package com.github.johrstrom.util;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Maps failure messages (the response message of a failed sample, the failure
+ * message of a failed assertion) onto a capped set of reason classes, so why
+ * requests fail shows up as a label without one series per distinct message.
+ *
+ * A message is normalized into a fingerprint by a single scan: tokens of
+ * digits become '#', tokens that mix letters and digits (ids, hashes, uuids)
+ * become '*', whitespace is collapsed and the result is cut at
+ * {@link #MAX_LENGTH}. The fingerprint is the reason class, up to a number of
+ * classes; fingerprints beyond that are all {@link #OTHER}. Classified
+ * messages are kept in a {@link BoundedCache}, so a message that keeps failing
+ * is only scanned once and looked up without a lock afterwards.
+ *
+ * The sampler and assertion labels share one classifier, so both count
+ * against the same classes and a message gets the same reason in both.
+ *
+ * Successful samples and assertions have no reason and are classified as the
+ * empty string without any lookup.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class FailureClassifier implements LabelValueMapper {
+
+	public static final String NONE = "";
+	public static final String OTHER = "other";
+	public static final String UNKNOWN = "unknown";
+
+	public static final int MAX_LENGTH = 64;
+	public static final int DEFAULT_CLASSES = 20;
+	public static final int DEFAULT_DICTIONARY_SIZE = 1024;
+
+	private final int maxClasses;
+	private final Set<String> classes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	private final BoundedCache<String, String> dictionary;
+
+	/**
+	 * @param maxClasses
+	 *            - the number of reason classes, beyond that messages are
+	 *            {@link #OTHER}
+	 * @param dictionarySize
+	 *            - the number of classified messages to remember
+	 */
+	public FailureClassifier(int maxClasses, int dictionarySize) {
+		this.maxClasses = Math.max(0, maxClasses);
+		this.dictionary = new BoundedCache<>(dictionarySize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.johrstrom.util.LabelValueMapper#normalize(java.lang.Object,
+	 * java.lang.String)
+	 */
+	@Override
+	public String normalize(Object source, String raw) {
+		if (source instanceof SampleResult && ((SampleResult) source).isSuccessful()) {
+			return NONE;
+		} else if (source instanceof AssertionResult && !((AssertionResult) source).isFailure()
+				&& !((AssertionResult) source).isError()) {
+			return NONE;
+		}
+
+		return this.normalize(raw);
+	}
+
+	/**
+	 * Get the reason class of a failure message.
+	 *
+	 * @param raw
+	 *            - the failure message
+	 * @return the reason class
+	 */
+	public String normalize(String raw) {
+		if (raw == null || raw.isEmpty()) {
+			return UNKNOWN;
+		}
+
+		String reason = this.dictionary.get(raw);
+		if (reason == null) {
+			reason = this.classify(raw);
+			this.dictionary.put(raw, reason);
+		}
+		return reason;
+	}
+
+	private String classify(String raw) {
+		String fingerprint = fingerprint(raw);
+		if (fingerprint.isEmpty()) {
+			return UNKNOWN;
+		} else if (this.classes.contains(fingerprint)) {
+			return fingerprint;
+		}
+
+		synchronized (this.classes) {
+			if (this.classes.size() < this.maxClasses) {
+				this.classes.add(fingerprint);
+				return fingerprint;
+			}
+		}
+		return this.classes.contains(fingerprint) ? fingerprint : OTHER;
+	}
+
+	/**
+	 * Strip the parts of a message that differ between occurrences of the
+	 * same failure.
+	 *
+	 * @param message
+	 *            - the raw failure message
+	 * @return the fingerprint of the message
+	 */
+	public static String fingerprint(String message) {
+		StringBuilder sb = new StringBuilder(Math.min(message.length(), MAX_LENGTH));
+		int i = 0;
+		while (i < message.length() && sb.length() < MAX_LENGTH) {
+			char c = message.charAt(i);
+
+			if (Character.isLetterOrDigit(c)) {
+				int start = i;
+				boolean digits = false, letters = false;
+				while (i < message.length() && isTokenChar(message.charAt(i))) {
+					digits |= Character.isDigit(message.charAt(i));
+					letters |= Character.isLetter(message.charAt(i));
+					i++;
+				}
+
+				if (digits && letters) {
+					sb.append('*');
+				} else if (digits) {
+					sb.append('#');
+				} else {
+					sb.append(message, start, i);
+				}
+			} else if (Character.isWhitespace(c)) {
+				while (i < message.length() && Character.isWhitespace(message.charAt(i))) {
+					i++;
+				}
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+
+		if (sb.length() > MAX_LENGTH) {
+			sb.setLength(MAX_LENGTH);
+		}
+		return sb.toString().trim();
+	}
+
+	private static boolean isTokenChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{failure reasons: " + this.classes.size() + "/" + this.maxClasses + "}";
+	}
+
+}
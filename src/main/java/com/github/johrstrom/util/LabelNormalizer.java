@@ -0,0 +1,229 @@
+package com.github.johrstrom.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps raw label values (response codes, sampler names) onto a smaller set of
+ * canonical values before they are used to look up a Prometheus child.
+ *
+ * Rules are compiled once from a simple text format, one rule per line:
+ *
+ * <pre>
+ * regex =&gt; canonical value
+ * </pre>
+ *
+ * A rule applies when its regex matches the whole raw value and the canonical
+ * value may refer to capture groups ($1, $2, ...). The first matching rule
+ * wins. Optionally, three digit status codes that no rule matched are grouped
+ * into their class (2xx, 4xx, ...). Results are memoized in a
+ * {@link BoundedCache} so the rules are evaluated once per distinct raw value
+ * and not once per sample, and frequent values stay memoized however many
+ * one-off values there are.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class LabelNormalizer implements LabelValueMapper {
+
+	private static final Logger log = LoggerFactory.getLogger(LabelNormalizer.class);
+
+	public static final String RULE_SEPARATOR = "=>";
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	/**
+	 * A normalizer with no rules that returns every value as is.
+	 */
+	public static final LabelNormalizer IDENTITY = new LabelNormalizer(new Pattern[] {}, new String[] {}, false, 0);
+
+	private final Pattern[] patterns;
+	private final String[] replacements;
+	private final boolean statusClasses;
+	private final BoundedCache<String, String> cache;
+
+	private LabelNormalizer(Pattern[] patterns, String[] replacements, boolean statusClasses, int cacheSize) {
+		this.patterns = patterns;
+		this.replacements = replacements;
+		this.statusClasses = statusClasses;
+		this.cache = new BoundedCache<>(cacheSize);
+	}
+
+	/**
+	 * Compile a set of rules into a normalizer. Lines that are empty, start
+	 * with '#' or can't be compiled are skipped (the latter with an error
+	 * logged) so one bad rule doesn't disable the others. A rule whose value
+	 * refers to a group its regex doesn't have, or has a stray '$' or '\',
+	 * can't be compiled either.
+	 *
+	 * @param rules
+	 *            - the rules, one per line. May be null.
+	 * @param statusClasses
+	 *            - whether to group unmatched three digit codes into classes.
+	 * @param cacheSize
+	 *            - the maximum number of memoized raw values.
+	 * @return the compiled normalizer
+	 */
+	public static LabelNormalizer compile(String rules, boolean statusClasses, int cacheSize) {
+		List<Pattern> patterns = new ArrayList<>();
+		List<String> replacements = new ArrayList<>();
+
+		if (rules != null) {
+			for (String line : rules.split("\\r?\\n")) {
+				String rule = line.trim();
+				int separator = rule.lastIndexOf(RULE_SEPARATOR);
+
+				if (rule.isEmpty() || rule.startsWith("#")) {
+					continue;
+				} else if (separator < 0) {
+					log.error("Skipping normalization rule '{}' because it has no '{}'.", rule, RULE_SEPARATOR);
+					continue;
+				}
+
+				try {
+					Pattern pattern = Pattern.compile(rule.substring(0, separator).trim());
+					String replacement = rule.substring(separator + RULE_SEPARATOR.length()).trim();
+					String invalid = checkReplacement(pattern, replacement);
+					if (invalid != null) {
+						log.error("Skipping normalization rule '{}' because its value is invalid: {}", rule, invalid);
+						continue;
+					}
+
+					patterns.add(pattern);
+					replacements.add(replacement);
+				} catch (PatternSyntaxException e) {
+					log.error("Skipping normalization rule '{}' because it doesn't compile: {}", rule, e.getMessage());
+				}
+			}
+		}
+
+		if (patterns.isEmpty() && !statusClasses) {
+			return IDENTITY;
+		}
+
+		return new LabelNormalizer(patterns.toArray(new Pattern[patterns.size()]),
+				replacements.toArray(new String[replacements.size()]), statusClasses, cacheSize);
+	}
+
+	/**
+	 * Check a replacement by letting {@link Matcher#appendReplacement} read
+	 * it once, so it can't throw for every sample it matches. The regex gets
+	 * an empty alternative so it matches without an example value, with the
+	 * same groups.
+	 *
+	 * @param pattern
+	 *            - the regex of the rule
+	 * @param replacement
+	 *            - the canonical value of the rule
+	 * @return why the replacement is invalid, null if it is valid
+	 */
+	static String checkReplacement(Pattern pattern, String replacement) {
+		Matcher matcher;
+		try {
+			matcher = Pattern.compile("(?:" + pattern.pattern() + ")|", pattern.flags()).matcher("");
+		} catch (PatternSyntaxException e) {
+			// e.g. ends in a comment, evaluate() falls back to the raw value
+			return null;
+		}
+
+		try {
+			if (matcher.matches()) {
+				matcher.appendReplacement(new StringBuffer(), replacement);
+			}
+			return null;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			return e.getMessage();
+		}
+	}
+
+	/**
+	 * Get the canonical value for a raw label value.
+	 *
+	 * @param raw
+	 *            - the raw value as reported by the sample
+	 * @return the canonical value
+	 */
+	public String normalize(String raw) {
+		if (this == IDENTITY) {
+			return raw;
+		}
+
+		String normalized = this.cache.get(raw);
+		if (normalized == null) {
+			normalized = this.evaluate(raw);
+			this.cache.put(raw, normalized);
+		}
+
+		return normalized;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.johrstrom.util.LabelValueMapper#normalize(java.lang.Object,
+	 * java.lang.String)
+	 */
+	@Override
+	public String normalize(Object source, String raw) {
+		return this.normalize(raw);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.github.johrstrom.util.LabelValueMapper#isIdentity()
+	 */
+	@Override
+	public boolean isIdentity() {
+		return this == IDENTITY;
+	}
+
+	private String evaluate(String raw) {
+		for (int i = 0; i < this.patterns.length; i++) {
+			Matcher matcher = this.patterns[i].matcher(raw);
+			if (matcher.matches()) {
+				StringBuffer sb = new StringBuffer();
+				try {
+					matcher.appendReplacement(sb, this.replacements[i]);
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					// only for values checkReplacement() couldn't check
+					return raw;
+				}
+				return sb.toString();
+			}
+		}
+
+		if (this.statusClasses && isStatusCode(raw)) {
+			return raw.charAt(0) + "xx";
+		}
+
+		return raw;
+	}
+
+	private static boolean isStatusCode(String raw) {
+		return raw.length() == 3 && raw.charAt(0) >= '1' && raw.charAt(0) <= '5' && Character.isDigit(raw.charAt(1))
+				&& Character.isDigit(raw.charAt(2));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{rules: [");
+		for (int i = 0; i < this.patterns.length; i++) {
+			sb.append(String.format("%s %s %s,", this.patterns[i].pattern(), RULE_SEPARATOR, this.replacements[i]));
+		}
+		sb.append("], statusClasses: ").append(this.statusClasses).append("}");
+		return sb.toString();
+	}
+
+}
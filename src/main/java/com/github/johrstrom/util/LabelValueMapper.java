@@ -0,0 +1,32 @@
+package com.github.johrstrom.util;
+
+/**
+ * Maps the raw value a label reads from a sample or an assertion onto the
+ * value it is exposed with, e.g. through normalization rules, see
+ * {@link LabelNormalizer}, or into a capped set of failure reasons, see
+ * {@link FailureClassifier}.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public interface LabelValueMapper {
+
+	/**
+	 * Get the value to expose for a raw label value.
+	 *
+	 * @param source
+	 *            - the result the value was read from
+	 * @param raw
+	 *            - the raw value
+	 * @return the value to expose
+	 */
+	String normalize(Object source, String raw);
+
+	/**
+	 * @return - true if every value is exposed as is.
+	 */
+	default boolean isIdentity() {
+		return false;
+	}
+
+}
@@ -0,0 +1,222 @@
+package com.github.johrstrom.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.Sampler;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which samples the listener accounts for at all, so helper samplers
+ * (setUp/tearDown groups, Debug Samplers, JSR223 utilities) are dropped before
+ * any label values are built.
+ *
+ * Rules are compiled once from a simple text format, one rule per line:
+ *
+ * <pre>
+ * name|group|class: regex =&gt; include|exclude
+ * </pre>
+ *
+ * The regex is matched against the whole sample label, thread group name or
+ * fully qualified sampler class, the sample label when the dimension is left
+ * out. The first matching rule wins. Samples no rule matches are excluded if
+ * there is any include rule, else included.
+ *
+ * Decisions are memoized per thread and sample label: the thread group of a
+ * thread never changes and a label practically always belongs to the same
+ * sampler, so after the first sample of a label the decision is a single
+ * lookup in an unsynchronized map. The maps evict their least recently used
+ * label when they're full, so frequent labels stay memoized.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SampleFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(SampleFilter.class);
+
+	public static final String RULE_SEPARATOR = "=>";
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	/**
+	 * A filter with no rules that includes every sample.
+	 */
+	public static final SampleFilter ALL = new SampleFilter(new Dimension[] {}, new Pattern[] {}, new boolean[] {}, false,
+			0);
+
+	private enum Dimension {
+		NAME, GROUP, CLASS
+	}
+
+	private final Dimension[] dimensions;
+	private final Pattern[] patterns;
+	private final boolean[] includes;
+	private final boolean includeByDefault;
+	private final ThreadLocal<Map<String, Boolean>> decisions;
+
+	private SampleFilter(Dimension[] dimensions, Pattern[] patterns, boolean[] includes, boolean includeByDefault,
+			int cacheSize) {
+		this.dimensions = dimensions;
+		this.patterns = patterns;
+		this.includes = includes;
+		this.includeByDefault = includeByDefault;
+		this.decisions = ThreadLocal.withInitial(() -> new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 6305618893371740457L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return this.size() > cacheSize;
+			}
+
+		});
+	}
+
+	/**
+	 * Compile a set of rules into a filter. Lines that are empty, start with
+	 * '#' or can't be compiled are skipped (the latter with an error logged)
+	 * so one bad rule doesn't disable the others.
+	 *
+	 * @param rules
+	 *            - the rules, one per line. May be null.
+	 * @param cacheSize
+	 *            - the maximum number of memoized labels per thread.
+	 * @return the compiled filter
+	 */
+	public static SampleFilter compile(String rules, int cacheSize) {
+		List<Dimension> dimensions = new ArrayList<>();
+		List<Pattern> patterns = new ArrayList<>();
+		List<Boolean> includes = new ArrayList<>();
+
+		if (rules != null) {
+			for (String line : rules.split("\\r?\\n")) {
+				String rule = line.trim();
+				int separator = rule.lastIndexOf(RULE_SEPARATOR);
+
+				if (rule.isEmpty() || rule.startsWith("#")) {
+					continue;
+				} else if (separator < 0) {
+					log.error("Skipping filter rule '{}' because it has no '{}'.", rule, RULE_SEPARATOR);
+					continue;
+				}
+
+				String action = rule.substring(separator + RULE_SEPARATOR.length()).trim();
+				if (!action.equals("include") && !action.equals("exclude")) {
+					log.error("Skipping filter rule '{}' because '{}' is neither include nor exclude.", rule, action);
+					continue;
+				}
+
+				String regex = rule.substring(0, separator).trim();
+				Dimension dimension = Dimension.NAME;
+				int colon = regex.indexOf(':');
+				if (colon > 0) {
+					try {
+						dimension = Dimension.valueOf(regex.substring(0, colon).trim().toUpperCase());
+						regex = regex.substring(colon + 1).trim();
+					} catch (IllegalArgumentException e) {
+						// not a dimension, the colon is part of the regex
+					}
+				}
+
+				try {
+					patterns.add(Pattern.compile(regex));
+					dimensions.add(dimension);
+					includes.add(action.equals("include"));
+				} catch (PatternSyntaxException e) {
+					log.error("Skipping filter rule '{}' because it doesn't compile: {}", rule, e.getMessage());
+				}
+			}
+		}
+
+		if (patterns.isEmpty()) {
+			return ALL;
+		}
+
+		boolean[] include = new boolean[includes.size()];
+		for (int i = 0; i < include.length; i++) {
+			include[i] = includes.get(i);
+		}
+
+		return new SampleFilter(dimensions.toArray(new Dimension[dimensions.size()]),
+				patterns.toArray(new Pattern[patterns.size()]), include, !includes.contains(Boolean.TRUE), cacheSize);
+	}
+
+	/**
+	 * Decide whether to account for a sample. Must be called on the thread
+	 * that ran the sampler, like listeners are.
+	 *
+	 * @param event
+	 *            - the event of the sample
+	 * @return true if the sample should be accounted for
+	 */
+	public boolean includes(SampleEvent event) {
+		if (this == ALL) {
+			return true;
+		}
+
+		String label = event.getResult().getSampleLabel();
+		Map<String, Boolean> decisions = this.decisions.get();
+		Boolean included = decisions.get(label);
+		if (included == null) {
+			included = this.evaluate(label, event);
+			decisions.put(label, included);
+		}
+
+		return included;
+	}
+
+	/**
+	 * @return - true if this filter has no rules and includes every sample.
+	 */
+	public boolean isAll() {
+		return this == ALL;
+	}
+
+	protected boolean evaluate(String label, SampleEvent event) {
+		for (int i = 0; i < this.patterns.length; i++) {
+			String value = this.valueOf(this.dimensions[i], label, event);
+			if (value != null && this.patterns[i].matcher(value).matches()) {
+				return this.includes[i];
+			}
+		}
+
+		return this.includeByDefault;
+	}
+
+	private String valueOf(Dimension dimension, String label, SampleEvent event) {
+		switch (dimension) {
+		case GROUP:
+			return event.getThreadGroup();
+		case CLASS:
+			Sampler sampler = JMeterContextService.getContext().getCurrentSampler();
+			return sampler == null ? null : sampler.getClass().getName();
+		default:
+			return label;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{rules: [");
+		for (int i = 0; i < this.patterns.length; i++) {
+			sb.append(String.format("%s: %s %s %s,", this.dimensions[i].name().toLowerCase(),
+					this.patterns[i].pattern(), RULE_SEPARATOR, this.includes[i] ? "include" : "exclude"));
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.github.johrstrom.util;
+
+/**
+ * Where in the test plan a sample was taken: the thread group of the thread
+ * and the controllers the sampler is nested in. Instances are resolved once
+ * per thread and sampler by a {@link SamplerContextResolver}, the getters are
+ * what {@link CollectorConfig} reads label values from.
+ * 
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SamplerContext {
+
+	/**
+	 * The context of samples taken outside of a JMeter thread.
+	 */
+	public static final SamplerContext NONE = new SamplerContext("", "");
+
+	private final String threadGroup;
+	private final String controller;
+
+	public SamplerContext(String threadGroup, String controller) {
+		this.threadGroup = threadGroup;
+		this.controller = controller;
+	}
+
+	/**
+	 * @return the name of the thread group
+	 */
+	public String getThreadGroup() {
+		return this.threadGroup;
+	}
+
+	/**
+	 * @return the names of the controllers below the thread group that hold
+	 *         the sampler, outermost first and separated by '/'
+	 */
+	public String getController() {
+		return this.controller;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{threadGroup: " + this.threadGroup + ", controller: " + this.controller + "}";
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.github.johrstrom.util;
+
+import java.lang.reflect.Field;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jmeter.control.Controller;
+import org.apache.jmeter.samplers.Sampler;
+import org.apache.jmeter.threads.AbstractThreadGroup;
+import org.apache.jmeter.threads.FindTestElementsUpToRootTraverser;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterThread;
+import org.apache.jorphan.collections.HashTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the {@link SamplerContext} of the sample the current thread just
+ * took, without looking anything up per sample once a thread has warmed up.
+ *
+ * The first sample of a thread caches its JMeter context, the thread group
+ * and the thread's copy of the test tree. Every sampler instance of the thread
+ * is then resolved once into a context by walking the tree up from the
+ * sampler; later samples of the same sampler get the cached context with an
+ * identity lookup. The cache is dropped when the thread's context moves to
+ * another thread group.
+ *
+ * JMeter doesn't expose a thread's test tree, so it is read reflectively from
+ * the thread. If that fails the controllers are empty, the thread group is
+ * still resolved.
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class SamplerContextResolver {
+
+	private static final Logger log = LoggerFactory.getLogger(SamplerContextResolver.class);
+
+	public static final String CONTROLLER_SEPARATOR = "/";
+
+	private static final Field TEST_TREE = testTreeField();
+
+	private final ThreadLocal<ThreadCache> threads = new ThreadLocal<>();
+
+	/**
+	 * @return the context of the sampler the current thread is running
+	 */
+	public SamplerContext resolve() {
+		ThreadCache cache = this.threads.get();
+		if (cache == null || cache.context.getThreadGroup() != cache.group) {
+			JMeterContext context = JMeterContextService.getContext();
+			if (context == null || context.getThreadGroup() == null) {
+				return SamplerContext.NONE;
+			}
+
+			cache = new ThreadCache(context);
+			this.threads.set(cache);
+		}
+
+		Sampler sampler = cache.context.getCurrentSampler();
+		SamplerContext resolved = cache.samplers.get(sampler);
+		if (resolved == null) {
+			resolved = new SamplerContext(cache.groupName, controllers(cache.tree, sampler));
+			cache.samplers.put(sampler, resolved);
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * The names of the controllers holding a sampler, from below the thread
+	 * group down to the sampler.
+	 */
+	private static String controllers(HashTree tree, Sampler sampler) {
+		if (tree == null || sampler == null) {
+			return "";
+		}
+
+		FindTestElementsUpToRootTraverser traverser = new FindTestElementsUpToRootTraverser(sampler);
+		tree.traverse(traverser);
+
+		// innermost first
+		List<Controller> controllers = traverser.getControllersToRoot();
+		StringBuilder sb = new StringBuilder();
+		for (int i = controllers.size() - 1; i >= 0; i--) {
+			Controller controller = controllers.get(i);
+			if (controller instanceof AbstractThreadGroup) {
+				continue;
+			}
+			sb.append(sb.length() > 0 ? CONTROLLER_SEPARATOR : "").append(controller.getName());
+		}
+
+		return sb.toString();
+	}
+
+	private static Field testTreeField() {
+		try {
+			Field field = JMeterThread.class.getDeclaredField("testTree");
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException | RuntimeException e) {
+			log.warn("Can't read the test tree of JMeter threads, controller labels will be empty: {}", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * What one thread resolved so far.
+	 */
+	private static class ThreadCache {
+
+		final JMeterContext context;
+		final AbstractThreadGroup group;
+		final String groupName;
+		final HashTree tree;
+		final Map<Sampler, SamplerContext> samplers = new IdentityHashMap<>();
+
+		ThreadCache(JMeterContext context) {
+			this.context = context;
+			this.group = context.getThreadGroup();
+			this.groupName = this.group.getName() == null ? "" : this.group.getName();
+			this.tree = testTree(context.getThread());
+		}
+
+		private static HashTree testTree(JMeterThread thread) {
+			if (TEST_TREE == null || thread == null) {
+				return null;
+			}
+
+			try {
+				return (HashTree) TEST_TREE.get(thread);
+			} catch (IllegalAccessException | RuntimeException e) {
+				log.debug("Couldn't read the test tree of {}: {}", thread.getThreadName(), e.toString());
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.github.johrstrom.collector;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ApdexCollectorTest {
+
+	@Test
+	public void bucketsIncludeTheirBound() {
+		long[] bounds = new long[] { 100, 400, 1000 };
+
+		assertEquals(0, ApdexCollector.bucket(bounds, 0));
+		assertEquals(0, ApdexCollector.bucket(bounds, 100));
+		assertEquals(1, ApdexCollector.bucket(bounds, 101));
+		assertEquals(1, ApdexCollector.bucket(bounds, 400));
+		assertEquals(2, ApdexCollector.bucket(bounds, 999));
+		assertEquals(2, ApdexCollector.bucket(bounds, 1000));
+		assertEquals(3, ApdexCollector.bucket(bounds, 1001));
+	}
+
+	@Test
+	public void noBounds() {
+		assertEquals(0, ApdexCollector.bucket(new long[] {}, 500));
+	}
+
+}
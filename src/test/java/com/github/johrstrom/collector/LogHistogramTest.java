@@ -0,0 +1,96 @@
+package com.github.johrstrom.collector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LogHistogramTest {
+
+	@Test
+	public void bucketsIncludeTheirUpperBound() {
+		assertEquals(0, LogHistogram.index(1.0));
+		assertEquals(1, LogHistogram.index(Math.nextUp(1.0)));
+		assertEquals(1, LogHistogram.index(Math.pow(2, 1 / 8.0)));
+		assertEquals(LogHistogram.SUB_BUCKETS, LogHistogram.index(2.0));
+		assertEquals(-LogHistogram.SUB_BUCKETS, LogHistogram.index(0.5));
+
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			// from about 1.5ms to 11 minutes, within the buckets
+			double value = Math.exp(random.nextDouble() * 13 - 6.5);
+			int index = LogHistogram.index(value);
+			assertTrue(value + " above " + index, value <= LogHistogram.upperBound(index) * (1 + 1e-12));
+			assertTrue(value + " below " + index, value > LogHistogram.upperBound(index - 1) * (1 - 1e-12));
+		}
+	}
+
+	@Test
+	public void indexesAreClamped() {
+		assertEquals(LogHistogram.MAX_INDEX, LogHistogram.index(1e9));
+		assertEquals(LogHistogram.MIN_INDEX, LogHistogram.index(Math.nextUp(LogHistogram.ZERO_THRESHOLD)));
+		assertEquals(0, LogHistogram.countsIndex(0));
+		assertEquals(0, LogHistogram.countsIndex(LogHistogram.ZERO_THRESHOLD));
+		assertEquals(1, LogHistogram.countsIndex(Math.nextUp(LogHistogram.ZERO_THRESHOLD)));
+	}
+
+	@Test
+	public void quantilesAreWithinTheBucketError() {
+		assertTrue(Double.isNaN(LogHistogram.quantile(LogHistogram.newCounts(), 0.5)));
+
+		LogHistogram histogram = new LogHistogram();
+		for (int millis = 1; millis <= 1000; millis++) {
+			histogram.record(millis / 1000.0);
+		}
+		long[] counts = counts(histogram);
+
+		assertEquals(1000, LogHistogram.count(counts));
+		assertEquals(0.5, LogHistogram.quantile(counts, 0.5), 0.5 * 0.05);
+		assertEquals(0.99, LogHistogram.quantile(counts, 0.99), 0.99 * 0.05);
+		assertEquals(1.0, LogHistogram.quantile(counts, 1.0), 1.0 * 0.05);
+	}
+
+	@Test
+	public void weightedAndZeroObservations() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.record(0, 3);
+		histogram.record(0.2, 1);
+		long[] counts = counts(histogram);
+
+		assertEquals(4, LogHistogram.count(counts));
+		assertEquals(3, counts[0]);
+		assertEquals(0.0, LogHistogram.quantile(counts, 0.75), 0.0);
+		assertEquals(0.2, LogHistogram.quantile(counts, 1.0), 0.2 * 0.1);
+
+		histogram.reset();
+		assertEquals(0, LogHistogram.count(counts(histogram)));
+	}
+
+	@Test
+	public void classicCountsAreCumulativeAndExact() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.record(0);
+		histogram.record(0.005);
+		histogram.record(1.0 / 128);
+		histogram.record(0.01);
+		histogram.record(1.0);
+		histogram.record(100);
+
+		double[] classic = LogHistogram.classicCounts(counts(histogram));
+		assertEquals(LogHistogram.CLASSIC_BOUNDS.length, classic.length);
+
+		// bounds 2^-7 .. 2^5 and +Inf, a value on a bound is counted in it
+		double[] expected = new double[] { 3, 4, 4, 4, 4, 4, 4, 5, 5, 5, 5, 5, 5, 6 };
+		assertArrayEquals(expected, classic, 0.0);
+	}
+
+	private static long[] counts(LogHistogram histogram) {
+		long[] counts = LogHistogram.newCounts();
+		histogram.addTo(counts);
+		return counts;
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.github.johrstrom.collector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TimingRecordTest {
+
+	// where the histogram starts in the test's fields
+	private static final int HISTOGRAM = TimingRecord.SUMS;
+
+	@Test
+	public void correctionMatchesEveryMissingSample() {
+		long[][] cases = new long[][] {
+				// value, weight, interval
+				{ 100, 1, 0 }, { 100, 1, 200 }, { 100, 1, 100 }, { 1000, 1, 100 }, { 60_000, 4, 7 },
+				{ 3_000_000, 1, 1 }, { 999, 2, 1000 }, { 5, 1, 1 } };
+
+		for (long[] c : cases) {
+			long value = c[0], weight = c[1], interval = c[2];
+			long[] actual = new long[HISTOGRAM + TimingRecord.HISTOGRAM_LONGS];
+			TimingRecord.correct((field, v) -> actual[field] += v, HISTOGRAM, value, weight, interval);
+
+			// what recording every missing sample one by one gives
+			long[] expected = new long[actual.length];
+			long missing = interval > 0 ? Math.max(0, value / interval - 1) : 0;
+			for (long k = 0; k <= missing; k++) {
+				long millis = value - k * interval;
+				expected[TimingRecord.CORRECTED_COUNT]++;
+				expected[TimingRecord.CORRECTED_SUM] += millis;
+				expected[HISTOGRAM + LogHistogram.countsIndex(millis / 1000.0)] += weight;
+			}
+
+			assertArrayEquals(value + "ms every " + interval + "ms", expected, actual);
+		}
+	}
+
+	@Test
+	public void unsampledCorrectionOnlyAddsTheSums() {
+		long[] actual = new long[HISTOGRAM + TimingRecord.HISTOGRAM_LONGS];
+		TimingRecord.correct((field, v) -> actual[field] += v, HISTOGRAM, 1000, 0, 250);
+
+		assertEquals(4, actual[TimingRecord.CORRECTED_COUNT]);
+		assertEquals(1000 + 750 + 500 + 250, actual[TimingRecord.CORRECTED_SUM]);
+		assertEquals(0, LogHistogram.count(Arrays.copyOfRange(actual, HISTOGRAM, actual.length)));
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.github.johrstrom.exposition;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExpositionFormatTest {
+
+	private static final String PROMETHEUS_ACCEPT = "application/vnd.google.protobuf;"
+			+ "proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7,"
+			+ "text/plain;version=0.0.4;q=0.3,*/*;q=0.1";
+
+	@Test
+	public void textByDefault() {
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate(null));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate(""));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("application/json"));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("*/*"));
+	}
+
+	@Test
+	public void highestQualityWins() {
+		assertEquals(ExpositionFormat.PROTOBUF, ExpositionFormat.negotiate(PROMETHEUS_ACCEPT));
+		assertEquals(ExpositionFormat.OPENMETRICS,
+				ExpositionFormat.negotiate("text/plain;q=0.5, application/openmetrics-text; version=1.0.0;q=0.9"));
+		assertEquals(ExpositionFormat.TEXT,
+				ExpositionFormat.negotiate("application/openmetrics-text;q=0.2,text/plain;q=0.8"));
+	}
+
+	@Test
+	public void firstOfEqualQualityWins() {
+		assertEquals(ExpositionFormat.OPENMETRICS,
+				ExpositionFormat.negotiate("application/openmetrics-text,text/plain"));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("text/plain,application/openmetrics-text"));
+	}
+
+	@Test
+	public void unacceptableRangesAreSkipped() {
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("application/openmetrics-text;q=0"));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("application/openmetrics-text;q=high"));
+		// protobuf has to be the delimited MetricFamily stream
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate(
+				"application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=text"));
+		assertEquals(ExpositionFormat.TEXT, ExpositionFormat.negotiate("application/vnd.google.protobuf"));
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.github.johrstrom.exposition;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.johrstrom.collector.Exemplar;
+import com.github.johrstrom.collector.LogHistogram;
+
+import io.prometheus.client.Collector;
+
+public class ProtobufWriterTest {
+
+	@Test
+	public void populatedBucketsAreSpansAndDeltas() throws IOException {
+		long[] counts = LogHistogram.newCounts();
+		counts[0] = 4;
+		bucket(counts, LogHistogram.MIN_INDEX + 2, 5);
+		bucket(counts, LogHistogram.MIN_INDEX + 3, 7);
+		bucket(counts, LogHistogram.MIN_INDEX + 10, 2);
+		bucket(counts, 0, 2);
+
+		Histogram histogram = write(counts);
+
+		assertEquals(LogHistogram.SCHEMA, histogram.schema);
+		assertEquals(4, histogram.zeroCount);
+		// the first offset is the index of the first bucket, the others the
+		// gap to the end of the previous span
+		assertEquals(Arrays.asList(
+				Arrays.asList((long) LogHistogram.MIN_INDEX + 2, 2L),
+				Arrays.asList(6L, 1L),
+				Arrays.asList((long) -LogHistogram.MIN_INDEX - 11, 1L)), histogram.spans);
+		assertEquals(Arrays.asList(5L, 2L, -5L, 0L), histogram.deltas);
+	}
+
+	@Test
+	public void emptyHistogramsHaveAnEmptySpan() throws IOException {
+		Histogram histogram = write(LogHistogram.newCounts());
+
+		assertEquals(Arrays.asList(Arrays.asList(0L, 0L)), histogram.spans);
+		assertEquals(Collections.emptyList(), histogram.deltas);
+	}
+
+	private static void bucket(long[] counts, int index, long count) {
+		counts[index - LogHistogram.MIN_INDEX + 1] = count;
+	}
+
+	private static Histogram write(long[] counts) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtobufWriter writer = new ProtobufWriter(out);
+		writer.startFamily("jmeter_samples_duration_seconds", Collector.Type.HISTOGRAM, "help");
+		writer.nativeHistogram(Collections.<String> emptyList(), Collections.<String> emptyList(), counts, 1.0,
+				Exemplar.NONE);
+		writer.endFamily();
+		writer.finish();
+
+		Reader stream = new Reader(out.toByteArray());
+		Reader family = stream.message(stream.varint());
+		Reader metric = family.field(4);
+		return new Histogram(metric.field(7));
+	}
+
+	/**
+	 * The native fields of a decoded Histogram message.
+	 */
+	private static class Histogram {
+
+		long schema, zeroCount;
+		final List<List<Long>> spans = new ArrayList<>();
+		final List<Long> deltas = new ArrayList<>();
+
+		Histogram(Reader reader) {
+			while (reader.hasMore()) {
+				int tag = (int) reader.varint();
+				int field = tag >>> 3;
+				if (field == 5) {
+					this.schema = zigzag(reader.varint());
+				} else if (field == 7) {
+					this.zeroCount = reader.varint();
+				} else if (field == 12) {
+					Reader span = reader.message(reader.varint());
+					long offset = 0, length = 0;
+					while (span.hasMore()) {
+						int spanField = (int) span.varint() >>> 3;
+						if (spanField == 1) {
+							offset = zigzag(span.varint());
+						} else {
+							length = span.varint();
+						}
+					}
+					this.spans.add(Arrays.asList(offset, length));
+				} else if (field == 13) {
+					this.deltas.add(zigzag(reader.varint()));
+				} else {
+					reader.skip(tag & 7);
+				}
+			}
+		}
+
+		private static long zigzag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+	}
+
+	/**
+	 * Just enough of a protocol buffer decoder to walk the messages.
+	 */
+	private static class Reader {
+
+		private final byte[] bytes;
+		private int position;
+		private final int end;
+
+		Reader(byte[] bytes) {
+			this(bytes, 0, bytes.length);
+		}
+
+		private Reader(byte[] bytes, int position, int end) {
+			this.bytes = bytes;
+			this.position = position;
+			this.end = end;
+		}
+
+		boolean hasMore() {
+			return this.position < this.end;
+		}
+
+		long varint() {
+			long value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = this.bytes[this.position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		Reader message(long length) {
+			Reader message = new Reader(this.bytes, this.position, this.position + (int) length);
+			this.position += (int) length;
+			return message;
+		}
+
+		/**
+		 * @return the first length delimited field of a number
+		 */
+		Reader field(int number) {
+			while (this.hasMore()) {
+				int tag = (int) this.varint();
+				if (tag >>> 3 == number && (tag & 7) == 2) {
+					return this.message(this.varint());
+				}
+				this.skip(tag & 7);
+			}
+			throw new AssertionError("no field " + number);
+		}
+
+		void skip(int wireType) {
+			if (wireType == 0) {
+				this.varint();
+			} else if (wireType == 1) {
+				this.position += 8;
+			} else if (wireType == 2) {
+				long length = this.varint();
+				this.position += (int) length;
+			} else {
+				throw new AssertionError("wire type " + wireType);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.github.johrstrom.exposition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.johrstrom.collector.HeapSeriesStore;
+
+public class StatsdExporterTest {
+
+	private DatagramChannel server;
+	private HeapSeriesStore store;
+	private StatsdExporter exporter;
+
+	@Before
+	public void bind() throws IOException {
+		this.server = DatagramChannel.open();
+		this.server.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+		this.server.bind(new InetSocketAddress("127.0.0.1", 0));
+		this.server.configureBlocking(false);
+		this.store = new HeapSeriesStore();
+	}
+
+	@After
+	public void close() throws IOException {
+		if (this.exporter != null) {
+			this.exporter.stop();
+		}
+		this.server.close();
+	}
+
+	@Test
+	public void linesOfAPlainStatsdFlush() throws Exception {
+		StatsdExporter exporter = this.start(false, "label", "code");
+		this.observe(100, true, "home page", "200");
+		this.observe(300, false, "home page", "200");
+
+		exporter.flush();
+		List<String> lines = lines(this.receive());
+
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.count.home_page.200:2|c"));
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.errors.home_page.200:1|c"));
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.bytes.home_page.200:0|c"));
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.duration.avg.home_page.200:200.0|g"));
+		assertTrue(lines.toString(), lines.stream().anyMatch(l -> l.matches("jmeter\\.samples\\.duration\\.p50\\.home_page\\.200:[0-9.]+\\|g")));
+		assertTrue(lines.toString(), lines.stream().anyMatch(l -> l.matches("jmeter\\.samples\\.duration\\.p99\\.home_page\\.200:[0-9.]+\\|g")));
+		assertEquals(lines.toString(), 6, lines.size());
+	}
+
+	@Test
+	public void countersAreDeltasOfTheInterval() throws Exception {
+		StatsdExporter exporter = this.start(false, "label");
+		this.observe(10, true, "a");
+		this.observe(10, true, "a");
+		exporter.flush();
+		assertTrue(lines(this.receive()).contains("jmeter.samples.count.a:2|c"));
+
+		for (int i = 0; i < 3; i++) {
+			this.observe(20, i > 0, "a");
+		}
+		exporter.flush();
+		List<String> lines = lines(this.receive());
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.count.a:3|c"));
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.errors.a:1|c"));
+		assertTrue(lines.toString(), lines.contains("jmeter.samples.duration.avg.a:20.0|g"));
+
+		// nothing new, nothing sent
+		exporter.flush();
+		assertTrue(this.receive().isEmpty());
+	}
+
+	@Test
+	public void labelValuesAreSanitized() throws Exception {
+		StatsdExporter exporter = this.start(true, "label", "code");
+		this.observe(10, true, "a|b:c,d\n#e", "");
+		exporter.flush();
+		assertTrue(lines(this.receive()).contains("jmeter.samples.count:1|c|#label:a_b_c_d__e,code:"));
+	}
+
+	@Test
+	public void emptyLabelValuesGetAPlaceholder() throws Exception {
+		StatsdExporter exporter = this.start(false, "label", "code");
+		this.observe(10, true, "", "a.b");
+		exporter.flush();
+		assertTrue(lines(this.receive()).contains("jmeter.samples.count." + StatsdExporter.EMPTY_LABEL_VALUE + ".a_b:1|c"));
+	}
+
+	@Test
+	public void datagramsFitIntoAPacket() throws Exception {
+		StatsdExporter exporter = this.start(true, "label");
+		// few enough that the datagrams all fit into the receive buffer
+		int series = 100;
+		char[] padding = new char[100];
+		Arrays.fill(padding, 'x');
+		for (int i = 0; i < series; i++) {
+			this.observe(10, true, "sampler-" + i + "-" + new String(padding));
+		}
+
+		exporter.flush();
+		List<String> datagrams = this.receive();
+		assertTrue(datagrams.size() > 1);
+
+		int lines = 0;
+		for (String datagram : datagrams) {
+			assertTrue(datagram.length() + " bytes",
+					datagram.getBytes(StandardCharsets.UTF_8).length <= StatsdExporter.DEFAULT_PACKET_SIZE);
+			lines += lines(Arrays.asList(datagram)).size();
+		}
+		assertEquals(series * 6, lines);
+	}
+
+	private StatsdExporter start(boolean tags, String... labelNames) throws IOException {
+		InetSocketAddress address = (InetSocketAddress) this.server.getLocalAddress();
+		// flushed by the tests only
+		this.exporter = new StatsdExporter(this.store, labelNames, address.getHostString(), address.getPort(),
+				3_600_000, tags);
+		this.exporter.start();
+		return this.exporter;
+	}
+
+	private void observe(long elapsed, boolean successful, String... labelValues) {
+		SampleResult result = new SampleResult(System.currentTimeMillis(), elapsed);
+		result.setSuccessful(successful);
+		this.store.observe(labelValues, result);
+	}
+
+	/**
+	 * The datagrams that arrived, waiting a little for the first one.
+	 */
+	private List<String> receive() throws Exception {
+		List<String> datagrams = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long deadline = System.currentTimeMillis() + 500;
+
+		while (true) {
+			buffer.clear();
+			if (this.server.receive(buffer) != null) {
+				buffer.flip();
+				datagrams.add(StandardCharsets.UTF_8.decode(buffer).toString());
+			} else if (!datagrams.isEmpty() || System.currentTimeMillis() > deadline) {
+				return datagrams;
+			} else {
+				Thread.sleep(5);
+			}
+		}
+	}
+
+	private static List<String> lines(List<String> datagrams) {
+		List<String> lines = new ArrayList<>();
+		for (String datagram : datagrams) {
+			lines.addAll(Arrays.asList(datagram.split("\n")));
+		}
+		return lines;
+	}
+
+}
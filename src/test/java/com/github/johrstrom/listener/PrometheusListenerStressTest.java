@@ -0,0 +1,298 @@
+package com.github.johrstrom.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.ThreadGroup;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.johrstrom.collector.Engine;
+import com.github.johrstrom.collector.SeriesCollector;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Summary;
+
+/**
+ * Drives {@link PrometheusListener#sampleOccurred(SampleEvent)} from hundreds
+ * of threads while /metrics is scraped and the listener is reconfigured
+ * concurrently, for every collector mode. Every mode has to account for every
+ * sample exactly, and reports its sustained samples per second, the p99
+ * latency of a listener call and the bytes allocated per sample.
+ *
+ * The rebuild modes keep rebuilding the sampler collector, the label
+ * configuration, the thread gauge and the assertion collector instead, which
+ * loses the series of the replaced collectors but must never fail a sample.
+ *
+ * Excluded from the default build, run it with -Pstress. The load can be
+ * scaled with -Dstress.threads and -Dstress.samples (per thread).
+ *
+ * @author Jeff Ohrstrom
+ *
+ */
+public class PrometheusListenerStressTest {
+
+	private static final Logger log = LoggerFactory.getLogger(PrometheusListenerStressTest.class);
+
+	private static final int THREADS = Integer.getInteger("stress.threads", 200);
+	private static final int SAMPLES = Integer.getInteger("stress.samples", 2000);
+
+	private static final String DURATION_COUNT = "jmeter_samples_duration_seconds_count";
+	private static final String ASSERTIONS = "jmeter_assertions_total";
+	private static final int SAMPLERS = 10;
+	private static final int EVENTS_PER_THREAD = 32;
+
+	@Test
+	public void summaries() throws Exception {
+		this.stress("summaries", Engine.SUMMARY, false, false);
+	}
+
+	@Test
+	public void nativeHistograms() throws Exception {
+		this.stress("native histograms", Engine.NATIVE_HISTOGRAM, false, false);
+	}
+
+	@Test
+	public void simpleclient() throws Exception {
+		this.stress("simpleclient", Engine.SIMPLECLIENT, false, false);
+	}
+
+	@Test
+	public void offHeap() throws Exception {
+		this.stress("off heap", Engine.SUMMARY, true, false);
+	}
+
+	@Test
+	public void summaryRebuilds() throws Exception {
+		this.stress("summary rebuilds", Engine.SUMMARY, false, true);
+	}
+
+	@Test
+	public void simpleclientRebuilds() throws Exception {
+		this.stress("simpleclient rebuilds", Engine.SIMPLECLIENT, false, true);
+	}
+
+	private void stress(String mode, Engine engine, boolean offHeap, boolean rebuild) throws Exception {
+		int port = freePort();
+		PrometheusListener listener = new PrometheusListener(config(engine, offHeap, port, 0));
+		listener.testStarted();
+
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicLong scrapes = new AtomicLong();
+		AtomicLong reconfigures = new AtomicLong();
+
+		// scrapes and reconfigures race the samples until they're all in
+		Thread scraper = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					scrape(port);
+					scrapes.incrementAndGet();
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+		}, "stress-scraper");
+
+		Thread reconfigurer = new Thread(() -> {
+			try {
+				// unless rebuilding, only the window changes and the sampler
+				// series have to survive
+				for (long i = 1; !done.get(); i++) {
+					listener.setSaveConfig(rebuild ? rebuilt(engine, offHeap, port, i)
+							: config(engine, offHeap, port, i % 2 == 0 ? 0 : 60));
+					reconfigures.incrementAndGet();
+					Thread.sleep(20);
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+		}, "stress-reconfigurer");
+
+		CountDownLatch start = new CountDownLatch(1);
+		long[][] latencies = new long[THREADS][];
+		long[] allocated = new long[THREADS];
+		Thread[] workers = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			int worker = t;
+			workers[t] = new Thread(() -> {
+				try {
+					SampleEvent[] events = events(worker);
+					long[] nanos = new long[SAMPLES];
+					// what the thread gauge reads
+					JMeterContextService.getContext().setThreadGroup(new ThreadGroup());
+					start.await();
+
+					long before = allocatedBytes();
+					for (int i = 0; i < SAMPLES; i++) {
+						SampleEvent event = events[i % events.length];
+						long t0 = System.nanoTime();
+						listener.sampleOccurred(event);
+						nanos[i] = System.nanoTime() - t0;
+					}
+					allocated[worker] = allocatedBytes() - before;
+					latencies[worker] = nanos;
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "stress-sampler-" + t);
+			workers[t].start();
+		}
+
+		scraper.start();
+		reconfigurer.start();
+
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+
+		done.set(true);
+		scraper.join();
+		reconfigurer.join();
+
+		try {
+			assertNull("a thread failed", failure.get());
+			assertEquals(mode + ": failed samples", 0, listener.getFailedSamples());
+
+			String metrics = scrape(port);
+			long expected = (long) THREADS * SAMPLES;
+			if (rebuild) {
+				// the last collectors are registered and only saw the last samples
+				assertTrue(mode + ": samples", sum(metrics, DURATION_COUNT) > 0);
+				assertTrue(mode + ": assertions", sum(metrics, ASSERTIONS) > 0);
+			} else {
+				assertEquals(mode + ": samples", expected, (long) sum(metrics, DURATION_COUNT));
+				assertEquals(mode + ": assertions", expected, (long) sum(metrics, ASSERTIONS));
+			}
+
+			long[] all = new long[THREADS * SAMPLES];
+			for (int t = 0; t < THREADS; t++) {
+				System.arraycopy(latencies[t], 0, all, t * SAMPLES, SAMPLES);
+			}
+			Arrays.sort(all);
+
+			log.info(String.format(
+					"%-18s %,12.0f samples/s  p99 %,8d ns  %,8.1f B/sample  %,6d scrapes  %,5d reconfigures", mode,
+					expected / (elapsed / 1e9), all[(int) (all.length * 0.99)],
+					allocated[0] < 0 ? Double.NaN : Arrays.stream(allocated).sum() / (double) expected,
+					scrapes.get(), reconfigures.get()));
+		} finally {
+			listener.testEnded();
+		}
+	}
+
+	private static PrometheusSaveConfig config(Engine engine, boolean offHeap, int port, long window) {
+		PrometheusSaveConfig config = new PrometheusSaveConfig();
+		config.setPort(port);
+		config.setScrapeCacheMillis(0);
+		config.setEngine(engine);
+		config.setOffHeap(offHeap);
+		config.setWindowSeconds(window);
+		config.setSaveThreads(false);
+		return config;
+	}
+
+	/**
+	 * A configuration that rebuilds the labels and assertions every time and
+	 * the sampler collector and thread gauge every few times, see
+	 * {@link ConfigDiff}.
+	 */
+	private static PrometheusSaveConfig rebuilt(Engine engine, boolean offHeap, int port, long i) {
+		PrometheusSaveConfig config = config(engine, offHeap, port, 0);
+		config.setSaveCode(i % 2 == 0);
+		config.setAssertionClass(i % 2 == 0 ? Counter.class : Summary.class);
+		config.setHiddenFamilies(i % 3 == 0 ? Collections.singleton(SeriesCollector.LATENCY_FAMILY)
+				: Collections.<String> emptySet());
+		config.setSaveThreads(i % 5 < 2);
+		return config;
+	}
+
+	/**
+	 * A few events per thread, reused so the loop allocates only what the
+	 * listener does.
+	 */
+	private static SampleEvent[] events(int worker) {
+		SampleEvent[] events = new SampleEvent[EVENTS_PER_THREAD];
+		for (int i = 0; i < events.length; i++) {
+			SampleResult result = new SampleResult(System.currentTimeMillis(), (worker + i) % 250);
+			result.setSampleLabel("sampler-" + ((worker + i) % SAMPLERS));
+			result.setResponseCode(i % 10 == 0 ? "500" : "200");
+			result.setSuccessful(i % 10 != 0);
+
+			AssertionResult assertion = new AssertionResult("assertion");
+			assertion.setFailure(i % 10 == 0);
+			result.addAssertionResult(assertion);
+
+			events[i] = new SampleEvent(result, "stress");
+		}
+		return events;
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static String scrape(int port) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/metrics")
+				.openConnection();
+		connection.setRequestProperty("Accept", "text/plain; version=0.0.4");
+		assertEquals("scrape status", 200, connection.getResponseCode());
+
+		try (InputStream in = connection.getInputStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Sum the values of every sample of a name in the text format.
+	 */
+	private static double sum(String metrics, String name) {
+		double sum = 0;
+		for (String line : metrics.split("\n")) {
+			if (line.startsWith(name + "{") || line.startsWith(name + " ")) {
+				sum += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+			}
+		}
+		return sum;
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.github.johrstrom.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class LabelNormalizerTest {
+
+	@Test
+	public void rulesAndStatusClasses() {
+		LabelNormalizer normalizer = LabelNormalizer.compile(
+				"# comment\n/users/\\d+ => /users/{id}\n(/orders)/(?<id>\\d+) => $1/${id}\n418 => teapot", true, 16);
+
+		assertEquals("/users/{id}", normalizer.normalize("/users/42"));
+		assertEquals("/orders/7", normalizer.normalize("/orders/7"));
+		assertEquals("teapot", normalizer.normalize("418"));
+		assertEquals("4xx", normalizer.normalize("404"));
+		assertEquals("Non HTTP response code", normalizer.normalize("Non HTTP response code"));
+	}
+
+	@Test
+	public void invalidReplacementsAreSkipped() {
+		assertNull(LabelNormalizer.checkReplacement(Pattern.compile("(a)(?<b>b)"), "$1 ${b} \\$"));
+		assertNotNull(LabelNormalizer.checkReplacement(Pattern.compile("(a)"), "$2"));
+		assertNotNull(LabelNormalizer.checkReplacement(Pattern.compile("(a)"), "${missing}"));
+		assertNotNull(LabelNormalizer.checkReplacement(Pattern.compile("(a)"), "cost $"));
+		assertNotNull(LabelNormalizer.checkReplacement(Pattern.compile("(a)"), "trailing \\"));
+
+		LabelNormalizer normalizer = LabelNormalizer.compile("a+ => $3\nb+ => b", false, 16);
+		assertEquals("aaa", normalizer.normalize("aaa"));
+		assertEquals("b", normalizer.normalize("bbb"));
+	}
+
+	@Test
+	public void frequentValuesSurviveOneOffValues() {
+		BoundedCache<String, String> cache = new BoundedCache<>(64);
+		cache.put("hot", "HOT");
+
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals("HOT", cache.get("hot"));
+			cache.put("cold-" + i, "COLD");
+			assertTrue(cache.size() <= 64);
+		}
+		assertEquals("HOT", cache.get("hot"));
+	}
+
+}
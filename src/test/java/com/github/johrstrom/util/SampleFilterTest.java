@@ -0,0 +1,63 @@
+package com.github.johrstrom.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+public class SampleFilterTest {
+
+	@Test
+	public void noRulesIncludeEverything() {
+		assertSame(SampleFilter.ALL, SampleFilter.compile(null, 16));
+		assertSame(SampleFilter.ALL, SampleFilter.compile("\n# only a comment\n", 16));
+		assertTrue(SampleFilter.ALL.includes(event("anything", "group")));
+	}
+
+	@Test
+	public void invalidRulesAreSkipped() {
+		assertSame(SampleFilter.ALL, SampleFilter.compile("Debug.*\nDebug.* => maybe\n([ => exclude", 16));
+
+		SampleFilter filter = SampleFilter.compile("([ => exclude\nDebug.* => exclude", 16);
+		assertFalse(filter.includes(event("Debug Sampler", "group")));
+		assertTrue(filter.includes(event("Home", "group")));
+	}
+
+	@Test
+	public void excludeRulesIncludeTheRest() {
+		SampleFilter filter = SampleFilter.compile("Debug.* => exclude\ngroup: setUp.* => exclude", 16);
+
+		assertFalse(filter.isAll());
+		assertFalse(filter.includes(event("Debug Sampler", "Users")));
+		assertFalse(filter.includes(event("Login", "setUp Thread Group")));
+		// decisions are memoized per thread and label, a thread keeps its group
+		assertTrue(filter.includes(event("Logout", "Users")));
+	}
+
+	@Test
+	public void includeRulesExcludeTheRestAndTheFirstMatchWins() {
+		SampleFilter filter = SampleFilter.compile("Login Debug => exclude\nLogin.* => include", 16);
+
+		assertTrue(filter.includes(event("Login Form", "Users")));
+		assertFalse(filter.includes(event("Login Debug", "Users")));
+		assertFalse(filter.includes(event("Home", "Users")));
+	}
+
+	@Test
+	public void aColonThatIsNoDimensionIsPartOfTheRegex() {
+		SampleFilter filter = SampleFilter.compile("http://.* => exclude", 16);
+
+		assertFalse(filter.includes(event("http://example.com/", "Users")));
+		assertTrue(filter.includes(event("Home", "Users")));
+	}
+
+	private static SampleEvent event(String label, String threadGroup) {
+		SampleResult result = new SampleResult();
+		result.setSampleLabel(label);
+		return new SampleEvent(result, threadGroup);
+	}
+
+}